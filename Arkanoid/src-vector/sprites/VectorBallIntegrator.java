@@ -0,0 +1,74 @@
+// Tamar Rosenzweig
+package sprites;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A {@link BallIntegrator} that moves a whole vector of balls (as many as fit in the CPU's widest registers)
+ * in every iteration, with the Vector API. The last balls, that don't fill a vector, are moved one by one
+ * (masked loads and stores are much slower than that on the JVMs that have this API as an incubator).
+ * It needs the jdk.incubator.vector module, so it is kept out of src, compiled on its own with the module, and
+ * only loaded through {@link BallIntegrators#best()}.
+ * It uses the same operations as {@link ScalarBallIntegrator} in the same order, so the results are the same.
+ */
+public class VectorBallIntegrator implements BallIntegrator {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public void advance(double[] x, double[] y, double[] dx, double[] dy, double[] scale, int count) {
+        int bound = SPECIES.loopBound(count);
+        for (int i = 0; i < bound; i += SPECIES.length()) {
+            DoubleVector s = DoubleVector.fromArray(SPECIES, scale, i);
+            DoubleVector.fromArray(SPECIES, x, i).add(DoubleVector.fromArray(SPECIES, dx, i).mul(s))
+                    .intoArray(x, i);
+            DoubleVector.fromArray(SPECIES, y, i).add(DoubleVector.fromArray(SPECIES, dy, i).mul(s))
+                    .intoArray(y, i);
+        }
+        for (int i = bound; i < count; i++) {
+            x[i] += dx[i] * scale[i];
+            y[i] += dy[i] * scale[i];
+        }
+    }
+
+    @Override
+    public void stepInBox(double[] x, double[] y, double[] dx, double[] dy, double[] radius, int count,
+                          double[] box) {
+        int bound = SPECIES.loopBound(count);
+        for (int i = 0; i < bound; i += SPECIES.length()) {
+            DoubleVector r = DoubleVector.fromArray(SPECIES, radius, i);
+            DoubleVector px = DoubleVector.fromArray(SPECIES, x, i);
+            DoubleVector vx = reflect(px, DoubleVector.fromArray(SPECIES, dx, i), r, box[0], box[2]);
+            vx.intoArray(dx, i);
+            px.add(vx).intoArray(x, i);
+            DoubleVector py = DoubleVector.fromArray(SPECIES, y, i);
+            DoubleVector vy = reflect(py, DoubleVector.fromArray(SPECIES, dy, i), r, box[1], box[3]);
+            vy.intoArray(dy, i);
+            py.add(vy).intoArray(y, i);
+        }
+        for (int i = bound; i < count; i++) {
+            ScalarBallIntegrator.stepOneInBox(x, y, dx, dy, radius, i, box);
+        }
+    }
+
+    /**
+     * Reflects one component of the velocities of the balls that would cross a wall, on one axis.
+     *
+     * @param p   the centers on the axis
+     * @param v   the velocities on the axis
+     * @param r   the radii
+     * @param min the wall at the small end of the axis
+     * @param max the wall at the large end of the axis
+     * @return the velocities after the reflection
+     */
+    private static DoubleVector reflect(DoubleVector p, DoubleVector v, DoubleVector r, double min, double max) {
+        DoubleVector next = p.add(v);
+        VectorMask<Double> hitMax = v.compare(VectorOperators.GT, 0)
+                .and(next.add(r).compare(VectorOperators.GT, max));
+        VectorMask<Double> hitMin = v.compare(VectorOperators.LT, 0)
+                .and(next.sub(r).compare(VectorOperators.LT, min));
+        return v.blend(v.neg(), hitMax.or(hitMin));
+    }
+}
@@ -1,6 +1,10 @@
 // Tamar Rosenzweig
 
 import game.Game;
+import game.InputLog;
+import game.Replay;
+
+import java.io.IOException;
 
 /**
  * The main class for running the game.
@@ -9,11 +13,39 @@ public class Main {
     /**
      * The main method that initializes and runs the game.
      *
-     * @param args command-line arguments (not used)
+     * @param args command-line arguments: an optional number of extra balls, for multiball, an optional file
+     *             to record the game to (see game.ReplayDriver for playing it again), and "auto" last for a demo
+     *             that plays itself
      */
     public static void main(String[] args) {
+        boolean auto = args.length > 0 && args[args.length - 1].equals("auto");
+        int argCount = auto ? args.length - 1 : args.length;
+        int extraBalls = 0;
+        if (argCount > 0) {
+            try {
+                extraBalls = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                System.out.println("Command line argument isn't valid, playing without multiball.");
+            }
+        }
         Game game = new Game();
+        if (auto) {
+            game.autoPilot();
+        }
+        InputLog log = argCount > 1 ? game.recordInput() : null;
         game.initialize();
+        if (extraBalls > 0) {
+            game.addMultiball(extraBalls);
+        }
         game.run();
+        if (log != null) {
+            Replay replay = new Replay(game.getTicksPerSecond(), extraBalls, log);
+            replay.setOutcome(game);
+            try {
+                replay.save(args[1]);
+            } catch (IOException e) {
+                System.out.println("Can't save the replay: " + e.getMessage());
+            }
+        }
     }
 }
\ No newline at end of file
@@ -1,8 +1,8 @@
 // Tamar Rosenzweig
 package ass3;
 import geometry_primitives.Point;
-import geometry_primitives.Line;
 import sprites.Ball;
+import sprites.BallSystem;
 import biuoop.DrawSurface;
 import biuoop.GUI;
 /**
@@ -56,15 +56,12 @@ public class BouncingBallAnimation {
         biuoop.Sleeper sleeper = new biuoop.Sleeper();
         Ball ball = new Ball((int) start.getX(), (int) start.getY(), 30, java.awt.Color.BLACK);
         ball.setVelocity(dx, dy);
-        Line[] lines = new Line[4];
-        lines[0] = new Line(200, 0, 200, 200); // right
-        lines[1] = new Line(0, 0, 0, 200); //left
-        lines[2] = new Line(0, 0, 200, 0); // top
-        lines[3] = new Line(0, 200, 200, 200); //bottom
+        BallSystem balls = new BallSystem(1); // moves the ball with SIMD when it can
+        balls.add(ball);
         while (true) {
-            ball.moveOneStep(lines);
+            balls.stepInBox(0, 0, 200, 200);
             DrawSurface d = gui.getDrawSurface();
-            ball.drawOn(d);
+            balls.drawOn(d);
             gui.show(d);
             sleeper.sleepFor(20); // wait for 50 milliseconds.
         }
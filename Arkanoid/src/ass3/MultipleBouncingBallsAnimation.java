@@ -3,6 +3,7 @@ package ass3;
 import geometry_primitives.Point;
 import geometry_primitives.Line;
 import sprites.Ball;
+import sprites.BallSystem;
 import biuoop.GUI;
 import biuoop.DrawSurface;
 
@@ -75,14 +76,16 @@ public class MultipleBouncingBallsAnimation {
             centerPoints[i] = new Point(centerX, centerY);
         }
         ball = initialize(size, ball, centerPoints);
+        BallSystem balls = new BallSystem(size.length); // moves all the balls at once, with SIMD when it can
+        for (Ball b : ball) {
+            balls.add(b);
+        }
         DrawSurface d;
         while (true) {
             d = gui.getDrawSurface();
-            for (int i = 0; i < size.length; i++) {
-                ball[i].moveOneStepInsideRec(lines);
-                ball[i].drawOn(d);
-                sleeper.sleepFor(4); // wait for 4 milliseconds.
-            }
+            balls.stepInBox(0, 0, 200, 200);
+            balls.drawOn(d);
+            sleeper.sleepFor(4L * size.length); // wait for 4 milliseconds per ball.
             gui.show(d);
         }
     }
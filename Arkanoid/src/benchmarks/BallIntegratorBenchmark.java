@@ -0,0 +1,80 @@
+// Tamar Rosenzweig
+package benchmarks;
+
+import sprites.BallIntegrator;
+import sprites.BallIntegrators;
+import sprites.ScalarBallIntegrator;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Measures the scalar ball integrator against the best one this JVM has (the Vector API one when run with
+ * --add-modules jdk.incubator.vector), on balls bouncing in the 800 x 600 screen.
+ * Also checks that both end with exactly the same places and velocities.
+ */
+public class BallIntegratorBenchmark {
+    private static final int[] BALLS = {1000, 10000, 100000, 1000000};
+    private static final int FRAMES = 400;
+    private static final double[] SCREEN = {0, 0, 800, 600};
+
+    /**
+     * Runs the benchmark and prints a table of nanoseconds per ball per step.
+     *
+     * @param args ignored
+     */
+    public static void main(String[] args) {
+        BallIntegrator scalar = new ScalarBallIntegrator();
+        BallIntegrator best = BallIntegrators.best();
+        System.out.println("best integrator: " + best.getClass().getSimpleName());
+        System.out.printf("%10s %14s %14s %10s %12s%n", "balls", "scalar ns/b", "best ns/b", "speedup", "mismatches");
+        for (int count : BALLS) {
+            double[][] a = balls(count);
+            double[][] b = balls(count);
+            long scalarTime = 0;
+            long bestTime = 0;
+            for (int frame = 0; frame < FRAMES; frame++) {
+                long start = System.nanoTime();
+                scalar.stepInBox(a[0], a[1], a[2], a[3], a[4], count, SCREEN);
+                long middle = System.nanoTime();
+                best.stepInBox(b[0], b[1], b[2], b[3], b[4], count, SCREEN);
+                long end = System.nanoTime();
+                if (frame >= FRAMES / 2) { // the first half is a warm-up
+                    scalarTime += middle - start;
+                    bestTime += end - middle;
+                }
+            }
+            int mismatches = 0;
+            for (int k = 0; k < 4; k++) {
+                for (int i = 0; i < count; i++) {
+                    if (a[k][i] != b[k][i]) {
+                        mismatches++;
+                    }
+                }
+            }
+            double perScalar = (double) scalarTime / (FRAMES / 2) / count;
+            double perBest = (double) bestTime / (FRAMES / 2) / count;
+            System.out.printf("%10d %14.2f %14.2f %10.2f %12d%n", count, perScalar, perBest, perScalar / perBest,
+                    mismatches);
+        }
+    }
+
+    /**
+     * Makes random balls inside the screen, always the same ones for the same count.
+     *
+     * @param count the number of balls
+     * @return the arrays of the balls: x, y, dx, dy, radius
+     */
+    private static double[][] balls(int count) {
+        Random rand = new Random(count);
+        double[][] arrays = new double[5][count];
+        Arrays.fill(arrays[4], 5);
+        for (int i = 0; i < count; i++) {
+            arrays[0][i] = 10 + rand.nextDouble() * 780;
+            arrays[1][i] = 10 + rand.nextDouble() * 580;
+            arrays[2][i] = rand.nextDouble() * 16 - 8;
+            arrays[3][i] = rand.nextDouble() * 16 - 8;
+        }
+        return arrays;
+    }
+}
@@ -0,0 +1,74 @@
+// Tamar Rosenzweig
+package benchmarks;
+
+import collision_detection.GameEnvironment;
+import geometry_primitives.Point;
+import geometry_primitives.Rectangle;
+import geometry_primitives.Velocity;
+import sprites.Ball;
+import sprites.BallSystem;
+import sprites.Block;
+
+import java.awt.Color;
+import java.util.Random;
+
+/**
+ * Measures moving many balls on the game board as Ball objects, against moving them in a BallSystem.
+ * Also checks that both end with the balls in exactly the same places.
+ */
+public class BallSystemBenchmark {
+    private static final int[] BALLS = {1000, 10000, 100000};
+    private static final int FRAMES = 120;
+    private static final int RADIUS = 5;
+
+    /**
+     * Runs the benchmark and prints a table of milliseconds per frame.
+     *
+     * @param args ignored
+     */
+    public static void main(String[] args) {
+        GameEnvironment environment = BatchQueryBenchmark.board();
+        System.out.printf("%10s %14s %14s %10s %12s%n", "balls", "Ball ms/frame", "system ms/fr", "speedup",
+                "mismatches");
+        for (int count : BALLS) {
+            Random rand = new Random(count);
+            Ball[] balls = new Ball[count];
+            BallSystem system = new BallSystem(count);
+            system.setGameEnvironment(environment);
+            for (int i = 0; i < count; i++) {
+                double x = 25 + rand.nextDouble() * 750;
+                double y = 55 + rand.nextDouble() * 130; // above the blocks
+                Velocity v = Velocity.fromAngleAndSpeed(rand.nextDouble() * 360, 2 + rand.nextDouble() * 6);
+                balls[i] = new Ball(new Point(x, y), RADIUS, Color.WHITE, v);
+                balls[i].setGameEnvironment(environment);
+                balls[i].setContinuousCollision(true);
+                system.add(balls[i]);
+            }
+            long objectTime = 0;
+            long systemTime = 0;
+            for (int frame = 0; frame < FRAMES; frame++) {
+                long start = System.nanoTime();
+                for (Ball b : balls) {
+                    b.moveOneStep();
+                }
+                long middle = System.nanoTime();
+                system.step();
+                long end = System.nanoTime();
+                if (frame >= FRAMES / 2) { // the first half is a warm-up
+                    objectTime += middle - start;
+                    systemTime += end - middle;
+                }
+            }
+            int mismatches = 0;
+            for (int i = 0; i < count; i++) {
+                if (balls[i].getX() != system.getX(i) || balls[i].getY() != system.getY(i)) {
+                    mismatches++;
+                }
+            }
+            double perObject = objectTime / 1e6 / (FRAMES / 2);
+            double perSystem = systemTime / 1e6 / (FRAMES / 2);
+            System.out.printf("%10d %14.2f %14.2f %10.2f %12d%n", count, perObject, perSystem,
+                    perObject / perSystem, mismatches);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+// Tamar Rosenzweig
+package benchmarks;
+
+import collision_detection.CollisionQuery;
+import collision_detection.GameEnvironment;
+import geometry_primitives.Point;
+import geometry_primitives.Rectangle;
+import geometry_primitives.Velocity;
+import sprites.Block;
+
+import java.util.Random;
+
+/**
+ * Measures answering the continuous collision queries of many balls one by one, against answering them in one
+ * parallel batch, on the game board. Also checks that the batch gives exactly the same answers.
+ */
+public class BatchQueryBenchmark {
+    private static final int[] BALLS = {100, 1000, 10000, 100000};
+    private static final int ROUNDS = 20;
+    private static final int RADIUS = 5;
+
+    /**
+     * Runs the benchmark and prints a table of nanoseconds per ball.
+     *
+     * @param args ignored
+     */
+    public static void main(String[] args) {
+        GameEnvironment environment = board();
+        System.out.printf("%10s %14s %14s %10s %12s%n", "balls", "serial ns/q", "batch ns/q", "speedup", "mismatches");
+        for (int count : BALLS) {
+            Random rand = new Random(count);
+            CollisionQuery[] serial = new CollisionQuery[count];
+            CollisionQuery[] batch = new CollisionQuery[count];
+            for (int i = 0; i < count; i++) {
+                double x = 25 + rand.nextDouble() * 750;
+                double y = 55 + rand.nextDouble() * 520;
+                Velocity v = Velocity.fromAngleAndSpeed(rand.nextDouble() * 360, 2 + rand.nextDouble() * 20);
+                serial[i] = new CollisionQuery();
+                serial[i].set(x, y, v.getDx(), v.getDy(), RADIUS);
+                batch[i] = new CollisionQuery();
+                batch[i].set(x, y, v.getDx(), v.getDy(), RADIUS);
+            }
+            double serialTime = 0;
+            double batchTime = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                for (CollisionQuery q : serial) {
+                    environment.query(q);
+                }
+                long middle = System.nanoTime();
+                environment.queryAll(batch, count);
+                long end = System.nanoTime();
+                if (round >= ROUNDS / 2) { // the first half is a warm-up
+                    serialTime += middle - start;
+                    batchTime += end - middle;
+                }
+            }
+            int mismatches = 0;
+            for (int i = 0; i < count; i++) {
+                if (serial[i].result() != batch[i].result() || serial[i].hit().toi() != batch[i].hit().toi()) {
+                    mismatches++;
+                }
+            }
+            double perSerial = serialTime / (ROUNDS / 2) / count;
+            double perBatch = batchTime / (ROUNDS / 2) / count;
+            System.out.printf("%10d %14.0f %14.0f %10.2f %12d%n", count, perSerial, perBatch, perSerial / perBatch,
+                    mismatches);
+        }
+    }
+
+    /**
+     * Builds an environment with the borders and the blocks of the game.
+     *
+     * @return the environment
+     */
+    static GameEnvironment board() {
+        GameEnvironment environment = new GameEnvironment();
+        environment.addCollidable(new Block(new Rectangle(new Point(0, 0), 20, 600)));
+        environment.addCollidable(new Block(new Rectangle(new Point(780, 0), 20, 600)));
+        environment.addCollidable(new Block(new Rectangle(new Point(0, 0), 800, 50)));
+        environment.addCollidable(new Block(new Rectangle(new Point(0, 600), 800, 20)));
+        for (int row = 0; row < 6; row++) {
+            for (int i = 12 - row; i >= 1; i--) {
+                environment.addCollidable(new Block(new Rectangle(new Point(780 - i * 50, 200 + row * 20), 50, 20)));
+            }
+        }
+        return environment;
+    }
+}
@@ -0,0 +1,157 @@
+// Tamar Rosenzweig
+package benchmarks;
+
+import collision_detection.AabbTree;
+import collision_detection.Collidable;
+import collision_detection.CollidableIndex;
+import collision_detection.GameEnvironment;
+import collision_detection.SpatialGrid;
+import geometry_primitives.Line;
+import geometry_primitives.Point;
+import geometry_primitives.Rectangle;
+import sprites.Block;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Measures the cost of a collision query against 100, 10k and 100k collidables, for the linear scan that
+ * the game environment used to do, the uniform grid and the dynamic AABB tree.
+ * The blocks are spread with the same density as the game board, and the queries are short, ball-like
+ * trajectories. Also measures removing and re-inserting blocks, which happens every time a block is hit.
+ */
+public class CollidableIndexBenchmark {
+    private static final int[] SIZES = {100, 10000, 100000};
+    private static final int QUERIES = 200000;
+    private static final int LINEAR_QUERIES = 50;
+    private static final double BLOCKS_PER_PIXEL = 57.0 / (760 * 100); // the density of the rows in the game
+
+    /**
+     * Runs the benchmark and prints a table of nanoseconds per operation.
+     *
+     * @param args ignored
+     */
+    public static void main(String[] args) {
+        System.out.printf("%10s %14s %14s %14s %14s %14s%n", "objects", "linear ns/q", "grid ns/q", "tree ns/q",
+                "grid ns/rm+add", "tree ns/rm+add");
+        for (int size : SIZES) {
+            Random rand = new Random(size);
+            double side = Math.sqrt(size / BLOCKS_PER_PIXEL);
+            ArrayList<Block> blocks = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                double width = 10 + rand.nextInt(60);
+                double height = 10 + rand.nextInt(20);
+                blocks.add(new Block(new Rectangle(new Point(rand.nextDouble() * side, rand.nextDouble() * side),
+                        width, height)));
+            }
+            Line[] trajectories = new Line[QUERIES];
+            for (int i = 0; i < QUERIES; i++) {
+                Point start = new Point(rand.nextDouble() * side, rand.nextDouble() * side);
+                double angle = rand.nextDouble() * 360;
+                double speed = 2 + rand.nextDouble() * 8;
+                trajectories[i] = new Line(start, new Point(start.getX() + Math.cos(Math.toRadians(angle)) * speed,
+                        start.getY() + Math.sin(Math.toRadians(angle)) * speed));
+            }
+            GameEnvironment grid = fill(new SpatialGrid(), blocks);
+            GameEnvironment tree = fill(new AabbTree(), blocks);
+            double linear = linearQueries(blocks, trajectories);
+            double gridQuery = queries(grid, trajectories);
+            double treeQuery = queries(tree, trajectories);
+            double gridChurn = churn(grid, blocks);
+            double treeChurn = churn(tree, blocks);
+            System.out.printf("%10d %14.0f %14.0f %14.0f %14.0f %14.0f%n", size, linear, gridQuery, treeQuery,
+                    gridChurn, treeChurn);
+        }
+    }
+
+    /**
+     * Creates a game environment with the given index, holding all the blocks.
+     *
+     * @param index  the broadphase index to use
+     * @param blocks the blocks to add
+     * @return the new environment
+     */
+    private static GameEnvironment fill(CollidableIndex index, ArrayList<Block> blocks) {
+        GameEnvironment environment = new GameEnvironment(index);
+        for (Block b : blocks) {
+            environment.addCollidable(b);
+        }
+        return environment;
+    }
+
+    /**
+     * Times the closest collision query over all the trajectories (after a warm-up round).
+     *
+     * @param environment  the environment to query
+     * @param trajectories the trajectories
+     * @return the average nanoseconds per query
+     */
+    private static double queries(GameEnvironment environment, Line[] trajectories) {
+        int hits = 0;
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            for (Line trajectory : trajectories) {
+                if (environment.getClosestCollision(trajectory) != null) {
+                    hits++;
+                }
+            }
+            if (round == 1) {
+                sink(hits);
+                return (System.nanoTime() - start) / (double) trajectories.length;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Times the old linear scan - testing every block - over some of the trajectories.
+     *
+     * @param blocks       the blocks to test
+     * @param trajectories the trajectories
+     * @return the average nanoseconds per query
+     */
+    private static double linearQueries(ArrayList<Block> blocks, Line[] trajectories) {
+        int hits = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < LINEAR_QUERIES; i++) {
+            for (Collidable c : blocks) {
+                if (trajectories[i].closestIntersectionToStartOfLine(new Rectangle(c.getCollisionRectangle()))
+                        != null) {
+                    hits++;
+                    break;
+                }
+            }
+        }
+        sink(hits);
+        return (System.nanoTime() - start) / (double) LINEAR_QUERIES;
+    }
+
+    /**
+     * Times removing a block from the environment and adding it back, for a tenth of the blocks.
+     *
+     * @param environment the environment to change
+     * @param blocks      the blocks in the environment
+     * @return the average nanoseconds per remove + add
+     */
+    private static double churn(GameEnvironment environment, ArrayList<Block> blocks) {
+        int count = Math.max(1, blocks.size() / 10);
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            Block b = blocks.get(i * 10 % blocks.size());
+            environment.removeCollidable(b);
+            environment.addCollidable(b);
+        }
+        return (System.nanoTime() - start) / (double) count;
+    }
+
+    /**
+     * Keeps a result alive, so the measured work can't be optimized away.
+     *
+     * @param value the result
+     */
+    private static void sink(int value) {
+        if (value == Integer.MIN_VALUE) {
+            System.out.println(value);
+        }
+    }
+}
@@ -0,0 +1,578 @@
+// Tamar Rosenzweig
+package collision_detection;
+
+import java.util.Arrays;
+
+/**
+ * A dynamic bounding volume tree of axis-aligned boxes (AABBs).
+ * Every object is a leaf, stored with a "fat" box - its bounds grown by a margin - so an object that moves
+ * a little (like the paddle) doesn't have to be moved in the tree at all. Inner nodes hold the union of their
+ * children, and the tree is kept balanced with rotations, so insert, remove and update take O(log n).
+ * Unlike the {@link SpatialGrid}, the tree doesn't depend on a cell size, which makes it the better choice
+ * for worlds where the sizes of the objects vary a lot.
+ * The nodes are kept in two flat arrays - four doubles of box and four ints of links per node - so the
+ * whole node is read from one place in memory.
+ */
+public class AabbTree implements CollidableIndex {
+    /**
+     * The margin every leaf box is grown by.
+     */
+    static final double FAT_MARGIN = 4;
+    private static final int NULL_NODE = -1;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int STRIDE = 4;
+    private static final int MIN_X = 0;
+    private static final int MIN_Y = 1;
+    private static final int MAX_X = 2;
+    private static final int MAX_Y = 3;
+    private static final int PARENT = 0; // for a free node - the next free node
+    private static final int CHILD1 = 1; // NULL_NODE for a leaf
+    private static final int CHILD2 = 2;
+    private static final int HEIGHT = 3; // a leaf is 0, a free node is -1
+    private double[] boxes = new double[0];
+    private int[] links = new int[0];
+    private int[] ids = new int[0]; // the object of every leaf
+    private int[] leafOf = new int[0]; // the leaf of every object id, NULL_NODE if it's not in the tree
+    private int count;
+    private int root = NULL_NODE;
+    private int freeList = NULL_NODE;
+
+    /**
+     * Inserts the object as a new leaf, with its bounds grown by the fat margin.
+     *
+     * @param id   the id of the object to insert
+     * @param minX the left side of the bounds
+     * @param minY the top side of the bounds
+     * @param maxX the right side of the bounds
+     * @param maxY the bottom side of the bounds
+     */
+    @Override
+    public void insert(int id, double minX, double minY, double maxX, double maxY) {
+        if (leafOf(id) != NULL_NODE) {
+            update(id, minX, minY, maxX, maxY);
+            return;
+        }
+        if (id >= leafOf.length) {
+            int old = leafOf.length;
+            leafOf = Arrays.copyOf(leafOf, Math.max(INITIAL_CAPACITY, Math.max(id + 1, old * 2)));
+            Arrays.fill(leafOf, old, leafOf.length, NULL_NODE);
+        }
+        int leaf = allocateNode();
+        setFatBox(leaf, minX, minY, maxX, maxY);
+        ids[leaf] = id;
+        leafOf[id] = leaf;
+        count++;
+        insertLeaf(leaf);
+    }
+
+    /**
+     * Removes the leaf of the object. Does nothing if it was never inserted.
+     *
+     * @param id the id of the object to remove
+     */
+    @Override
+    public void remove(int id) {
+        int leaf = leafOf(id);
+        if (leaf == NULL_NODE) {
+            return;
+        }
+        leafOf[id] = NULL_NODE;
+        count--;
+        removeLeaf(leaf);
+        freeNode(leaf);
+    }
+
+    /**
+     * Moves the object to new bounds. The tree is changed only if the new bounds leave the fat box.
+     *
+     * @param id   the id of the object that moved
+     * @param minX the left side of the new bounds
+     * @param minY the top side of the new bounds
+     * @param maxX the right side of the new bounds
+     * @param maxY the bottom side of the new bounds
+     */
+    @Override
+    public void update(int id, double minX, double minY, double maxX, double maxY) {
+        int leaf = leafOf(id);
+        if (leaf == NULL_NODE) {
+            insert(id, minX, minY, maxX, maxY);
+            return;
+        }
+        int b = leaf * STRIDE;
+        if (boxes[b + MIN_X] <= minX && boxes[b + MIN_Y] <= minY
+                && maxX <= boxes[b + MAX_X] && maxY <= boxes[b + MAX_Y]) {
+            return; // still inside its fat box
+        }
+        removeLeaf(leaf);
+        setFatBox(leaf, minX, minY, maxX, maxY);
+        insertLeaf(leaf);
+    }
+
+    /**
+     * Returns the number of objects in the tree.
+     *
+     * @return the number of objects in the tree
+     */
+    @Override
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the height of the tree - 0 for a single leaf, -1 for an empty tree.
+     *
+     * @return the height of the tree
+     */
+    public int height() {
+        return root == NULL_NODE ? -1 : height(root);
+    }
+
+    /**
+     * Reports every leaf whose fat box, grown by the radius, is crossed by the segment (x, y) + t * (dx, dy),
+     * 0 &lt;= t &lt;= 1. Subtrees whose box is not crossed before the closest hit so far are skipped.
+     *
+     * @param x        the x value of the start of the segment
+     * @param y        the y value of the start of the segment
+     * @param dx       the change in x along the segment
+     * @param dy       the change in y along the segment
+     * @param radius   the radius of the moving circle, 0 for a plain segment
+     * @param callback the narrowphase test for every candidate
+     */
+    @Override
+    public void raycast(double x, double y, double dx, double dy, double radius, RaycastCallback callback) {
+        if (root == NULL_NODE) {
+            return;
+        }
+        double maxFraction = 1;
+        int[] stack = callback.stack(Math.max(INITIAL_CAPACITY, height(root) + 2));
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+            if (!segmentCrossesBox(node, x, y, dx, dy, radius, maxFraction)) {
+                continue;
+            }
+            if (child1(node) == NULL_NODE) { // a leaf
+                maxFraction = callback.candidate(ids[node], maxFraction);
+                continue;
+            }
+            if (top + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            stack[top++] = child2(node);
+            stack[top++] = child1(node);
+        }
+    }
+
+    /**
+     * Checks whether the segment crosses the box of a node, grown by the radius, before the given fraction
+     * (the slab test).
+     *
+     * @param node        the node whose box is checked
+     * @param x           the x value of the start of the segment
+     * @param y           the y value of the start of the segment
+     * @param dx          the change in x along the segment
+     * @param dy          the change in y along the segment
+     * @param radius      the amount to grow the box by
+     * @param maxFraction the end of the part of the segment to check
+     * @return true if the segment enters the box at some fraction in [0, maxFraction]
+     */
+    private boolean segmentCrossesBox(int node, double x, double y, double dx, double dy, double radius,
+                                      double maxFraction) {
+        int b = node * STRIDE;
+        double minX = boxes[b + MIN_X] - radius;
+        double minY = boxes[b + MIN_Y] - radius;
+        double maxX = boxes[b + MAX_X] + radius;
+        double maxY = boxes[b + MAX_Y] + radius;
+        double enter = 0;
+        double exit = maxFraction;
+        if (dx == 0) {
+            if (x < minX || x > maxX) {
+                return false;
+            }
+        } else {
+            double t1 = (minX - x) / dx;
+            double t2 = (maxX - x) / dx;
+            enter = Math.max(enter, Math.min(t1, t2));
+            exit = Math.min(exit, Math.max(t1, t2));
+        }
+        if (dy == 0) {
+            if (y < minY || y > maxY) {
+                return false;
+            }
+        } else {
+            double t1 = (minY - y) / dy;
+            double t2 = (maxY - y) / dy;
+            enter = Math.max(enter, Math.min(t1, t2));
+            exit = Math.min(exit, Math.max(t1, t2));
+        }
+        return enter <= exit;
+    }
+
+    /**
+     * Sets the box of a leaf to the given bounds, grown by the fat margin.
+     *
+     * @param node the leaf
+     * @param minX the left side of the bounds
+     * @param minY the top side of the bounds
+     * @param maxX the right side of the bounds
+     * @param maxY the bottom side of the bounds
+     */
+    private void setFatBox(int node, double minX, double minY, double maxX, double maxY) {
+        int b = node * STRIDE;
+        boxes[b + MIN_X] = minX - FAT_MARGIN;
+        boxes[b + MIN_Y] = minY - FAT_MARGIN;
+        boxes[b + MAX_X] = maxX + FAT_MARGIN;
+        boxes[b + MAX_Y] = maxY + FAT_MARGIN;
+    }
+
+    /**
+     * Sets the box of a node to the union of the boxes of two other nodes.
+     *
+     * @param node the node to set
+     * @param a    the first node
+     * @param b    the second node
+     */
+    private void setUnion(int node, int a, int b) {
+        int n = node * STRIDE;
+        int i = a * STRIDE;
+        int j = b * STRIDE;
+        boxes[n + MIN_X] = Math.min(boxes[i + MIN_X], boxes[j + MIN_X]);
+        boxes[n + MIN_Y] = Math.min(boxes[i + MIN_Y], boxes[j + MIN_Y]);
+        boxes[n + MAX_X] = Math.max(boxes[i + MAX_X], boxes[j + MAX_X]);
+        boxes[n + MAX_Y] = Math.max(boxes[i + MAX_Y], boxes[j + MAX_Y]);
+    }
+
+    /**
+     * Returns the area of the box of a node - the cost used when choosing where to insert.
+     *
+     * @param node the node
+     * @return the area of its box
+     */
+    private double area(int node) {
+        int n = node * STRIDE;
+        return (boxes[n + MAX_X] - boxes[n + MIN_X]) * (boxes[n + MAX_Y] - boxes[n + MIN_Y]);
+    }
+
+    /**
+     * Returns the area of the union of the boxes of two nodes.
+     *
+     * @param a the first node
+     * @param b the second node
+     * @return the area of the union
+     */
+    private double unionArea(int a, int b) {
+        int i = a * STRIDE;
+        int j = b * STRIDE;
+        double width = Math.max(boxes[i + MAX_X], boxes[j + MAX_X]) - Math.min(boxes[i + MIN_X], boxes[j + MIN_X]);
+        double h = Math.max(boxes[i + MAX_Y], boxes[j + MAX_Y]) - Math.min(boxes[i + MIN_Y], boxes[j + MIN_Y]);
+        return width * h;
+    }
+
+    /**
+     * Inserts a leaf next to the sibling that grows the tree the least, then re-balances up to the root.
+     *
+     * @param leaf the leaf to insert
+     */
+    private void insertLeaf(int leaf) {
+        if (root == NULL_NODE) {
+            root = leaf;
+            setParent(root, NULL_NODE);
+            return;
+        }
+        // find the best sibling for the new leaf
+        int index = root;
+        while (child1(index) != NULL_NODE) {
+            int c1 = child1(index);
+            int c2 = child2(index);
+            double combined = unionArea(index, leaf);
+            double cost = 2 * combined; // the cost of a new parent for this node and the leaf
+            double inheritance = 2 * (combined - area(index)); // the cost of pushing the leaf further down
+            double cost1 = descendCost(c1, leaf) + inheritance;
+            double cost2 = descendCost(c2, leaf) + inheritance;
+            if (cost < cost1 && cost < cost2) {
+                break;
+            }
+            index = cost1 < cost2 ? c1 : c2;
+        }
+        int sibling = index;
+        // create a new parent for the sibling and the leaf
+        int oldParent = parent(sibling);
+        int newParent = allocateNode();
+        setParent(newParent, oldParent);
+        setUnion(newParent, leaf, sibling);
+        setHeight(newParent, height(sibling) + 1);
+        if (oldParent != NULL_NODE) {
+            replaceChild(oldParent, sibling, newParent);
+        } else {
+            root = newParent;
+        }
+        setChild1(newParent, sibling);
+        setChild2(newParent, leaf);
+        setParent(sibling, newParent);
+        setParent(leaf, newParent);
+        refit(newParent);
+    }
+
+    /**
+     * Returns the cost of inserting the leaf below the given child.
+     *
+     * @param child the child node
+     * @param leaf  the leaf being inserted
+     * @return the added area
+     */
+    private double descendCost(int child, int leaf) {
+        if (child1(child) == NULL_NODE) {
+            return unionArea(child, leaf);
+        }
+        return unionArea(child, leaf) - area(child);
+    }
+
+    /**
+     * Removes a leaf from the tree (the node itself is not freed). Its parent is replaced by its sibling.
+     *
+     * @param leaf the leaf to remove
+     */
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NULL_NODE;
+            return;
+        }
+        int p = parent(leaf);
+        int grandParent = parent(p);
+        int sibling = child1(p) == leaf ? child2(p) : child1(p);
+        if (grandParent != NULL_NODE) {
+            replaceChild(grandParent, p, sibling);
+            setParent(sibling, grandParent);
+            freeNode(p);
+            refit(grandParent);
+        } else {
+            root = sibling;
+            setParent(sibling, NULL_NODE);
+            freeNode(p);
+        }
+    }
+
+    /**
+     * Re-balances the given node and every node above it, and recomputes their boxes and heights.
+     *
+     * @param node the lowest node that changed
+     */
+    private void refit(int node) {
+        int index = node;
+        while (index != NULL_NODE) {
+            index = balance(index);
+            int c1 = child1(index);
+            int c2 = child2(index);
+            setHeight(index, 1 + Math.max(height(c1), height(c2)));
+            setUnion(index, c1, c2);
+            index = parent(index);
+        }
+    }
+
+    /**
+     * Performs a left or right rotation if the subtree of the given node is unbalanced.
+     *
+     * @param a the root of the subtree
+     * @return the new root of the subtree
+     */
+    private int balance(int a) {
+        if (child1(a) == NULL_NODE || height(a) < 2) {
+            return a;
+        }
+        int b = child1(a);
+        int c = child2(a);
+        int difference = height(c) - height(b);
+        if (difference > 1) {
+            rotateUp(a, c, b);
+            return c;
+        }
+        if (difference < -1) {
+            rotateUp(a, b, c);
+            return b;
+        }
+        return a;
+    }
+
+    /**
+     * Rotates the higher child of a node up, so it takes the place of the node.
+     *
+     * @param a     the node that is rotated down
+     * @param up    the child of a that is rotated up
+     * @param other the other child of a, which stays under it
+     */
+    private void rotateUp(int a, int up, int other) {
+        int f = child1(up);
+        int g = child2(up);
+        int oldParent = parent(a);
+        setChild1(up, a);
+        setParent(up, oldParent);
+        setParent(a, up);
+        if (oldParent != NULL_NODE) {
+            replaceChild(oldParent, a, up);
+        } else {
+            root = up;
+        }
+        // the higher grandchild stays with the rotated node, the lower one takes its place under a
+        int stays = height(f) > height(g) ? f : g;
+        int moves = stays == f ? g : f;
+        setChild2(up, stays);
+        replaceChild(a, up, moves);
+        setParent(moves, a);
+        setUnion(a, other, moves);
+        setUnion(up, a, stays);
+        setHeight(a, 1 + Math.max(height(other), height(moves)));
+        setHeight(up, 1 + Math.max(height(a), height(stays)));
+    }
+
+    /**
+     * Replaces one child of a node with another node.
+     *
+     * @param node     the parent node
+     * @param oldChild the child to replace
+     * @param newChild the node that takes its place
+     */
+    private void replaceChild(int node, int oldChild, int newChild) {
+        if (child1(node) == oldChild) {
+            setChild1(node, newChild);
+        } else {
+            setChild2(node, newChild);
+        }
+    }
+
+    /**
+     * Takes a node from the free list, growing the node arrays if there is none.
+     *
+     * @return the new node
+     */
+    private int allocateNode() {
+        if (freeList == NULL_NODE) {
+            grow();
+        }
+        int node = freeList;
+        freeList = parent(node);
+        setParent(node, NULL_NODE);
+        setChild1(node, NULL_NODE);
+        setChild2(node, NULL_NODE);
+        setHeight(node, 0);
+        return node;
+    }
+
+    /**
+     * Returns a node to the free list.
+     *
+     * @param node the node to free
+     */
+    private void freeNode(int node) {
+        ids[node] = NULL_NODE;
+        setHeight(node, -1);
+        setParent(node, freeList);
+        freeList = node;
+    }
+
+    /**
+     * Doubles the size of the node arrays, and links the new nodes into the free list.
+     */
+    private void grow() {
+        int oldCapacity = ids.length;
+        int capacity = Math.max(INITIAL_CAPACITY, oldCapacity * 2);
+        boxes = Arrays.copyOf(boxes, capacity * STRIDE);
+        links = Arrays.copyOf(links, capacity * STRIDE);
+        ids = Arrays.copyOf(ids, capacity);
+        for (int i = oldCapacity; i < capacity; i++) {
+            setParent(i, i + 1 < capacity ? i + 1 : freeList);
+            setHeight(i, -1);
+        }
+        freeList = oldCapacity;
+    }
+
+    /**
+     * Returns the leaf of an object.
+     *
+     * @param id the id of the object
+     * @return its leaf, or NULL_NODE if it's not in the tree
+     */
+    private int leafOf(int id) {
+        return id < leafOf.length ? leafOf[id] : NULL_NODE;
+    }
+
+    /**
+     * Returns the parent of a node.
+     *
+     * @param node the node
+     * @return its parent, or NULL_NODE for the root
+     */
+    private int parent(int node) {
+        return links[node * STRIDE + PARENT];
+    }
+
+    /**
+     * Returns the first child of a node.
+     *
+     * @param node the node
+     * @return its first child, or NULL_NODE for a leaf
+     */
+    private int child1(int node) {
+        return links[node * STRIDE + CHILD1];
+    }
+
+    /**
+     * Returns the second child of a node.
+     *
+     * @param node the node
+     * @return its second child, or NULL_NODE for a leaf
+     */
+    private int child2(int node) {
+        return links[node * STRIDE + CHILD2];
+    }
+
+    /**
+     * Returns the height of the subtree of a node.
+     *
+     * @param node the node
+     * @return its height
+     */
+    private int height(int node) {
+        return links[node * STRIDE + HEIGHT];
+    }
+
+    /**
+     * Sets the parent of a node.
+     *
+     * @param node  the node
+     * @param value the new parent
+     */
+    private void setParent(int node, int value) {
+        links[node * STRIDE + PARENT] = value;
+    }
+
+    /**
+     * Sets the first child of a node.
+     *
+     * @param node  the node
+     * @param value the new first child
+     */
+    private void setChild1(int node, int value) {
+        links[node * STRIDE + CHILD1] = value;
+    }
+
+    /**
+     * Sets the second child of a node.
+     *
+     * @param node  the node
+     * @param value the new second child
+     */
+    private void setChild2(int node, int value) {
+        links[node * STRIDE + CHILD2] = value;
+    }
+
+    /**
+     * Sets the height of the subtree of a node.
+     *
+     * @param node  the node
+     * @param value the new height
+     */
+    private void setHeight(int node, int value) {
+        links[node * STRIDE + HEIGHT] = value;
+    }
+}
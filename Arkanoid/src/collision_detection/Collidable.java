@@ -2,7 +2,6 @@
 package collision_detection;
 
 import sprites.Ball;
-import geometry_primitives.Point;
 import geometry_primitives.Rectangle;
 import geometry_primitives.Velocity;
 
@@ -21,13 +20,16 @@ public interface Collidable {
     Rectangle getCollisionRectangle();
 
     /**
-     * Notifies the object that it was collided with at the specified collision point with a given velocity.
+     * Notifies the object that it was collided with, as described by the given collision, with a given velocity.
      * Returns the new velocity expected after the hit.
+     * The collision holds the collision point, the side that was hit and the outward normal of the surface, so
+     * the object doesn't have to work them out again. The collision object may be reused after the call returns,
+     * so it must not be kept.
      *
-     * @param collisionPoint  the point at which the collision occurred
-     * @param currentVelocity the current velocity of the colliding object
      * @param hitter          is the ball that hits the object
+     * @param collision       the collision, as found by the collision test
+     * @param currentVelocity the current velocity of the colliding object
      * @return the new velocity expected after the hit
      */
-    Velocity hit(Ball hitter, Point collisionPoint, Velocity currentVelocity);
+    Velocity hit(Ball hitter, CollisionInfo collision, Velocity currentVelocity);
 }
\ No newline at end of file
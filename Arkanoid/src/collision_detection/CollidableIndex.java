@@ -0,0 +1,64 @@
+// Tamar Rosenzweig
+package collision_detection;
+
+/**
+ * A broadphase index of collidable objects.
+ * The index keeps the bounds of every object it holds, and finds the candidates a segment might hit,
+ * so the exact test only has to run on a few of the objects in the game.
+ * Objects are known to the index by small non-negative int ids that the owner of the index gives them (the
+ * {@link GameEnvironment} uses the slot of the collidable in its table of bounds), so the index keeps only
+ * plain arrays and never looks at the collidables themselves.
+ */
+public interface CollidableIndex {
+
+    /**
+     * Inserts the object into the index, using the given bounds.
+     *
+     * @param id   the id of the object to insert
+     * @param minX the left side of the bounds
+     * @param minY the top side of the bounds
+     * @param maxX the right side of the bounds
+     * @param maxY the bottom side of the bounds
+     */
+    void insert(int id, double minX, double minY, double maxX, double maxY);
+
+    /**
+     * Removes the object from the index. Does nothing if it was never inserted.
+     *
+     * @param id the id of the object to remove
+     */
+    void remove(int id);
+
+    /**
+     * Moves the object to new bounds.
+     *
+     * @param id   the id of the object that moved
+     * @param minX the left side of the new bounds
+     * @param minY the top side of the new bounds
+     * @param maxX the right side of the new bounds
+     * @param maxY the bottom side of the new bounds
+     */
+    void update(int id, double minX, double minY, double maxX, double maxY);
+
+    /**
+     * Returns the number of objects in the index.
+     *
+     * @return the number of objects in the index
+     */
+    int size();
+
+    /**
+     * Reports every object whose bounds might be crossed by the segment (x, y) + t * (dx, dy), 0 &lt;= t &lt;= 1,
+     * or - for a radius above 0 - might be touched by a circle of that radius moving along the segment.
+     * The search limit returned by the callback is used to skip the parts of the index beyond the closest hit.
+     * Queries only read the index, so several of them may run at the same time.
+     *
+     * @param x        the x value of the start of the segment
+     * @param y        the y value of the start of the segment
+     * @param dx       the change in x along the segment
+     * @param dy       the change in y along the segment
+     * @param radius   the radius of the moving circle, 0 for a plain segment
+     * @param callback the narrowphase test for every candidate
+     */
+    void raycast(double x, double y, double dx, double dy, double radius, RaycastCallback callback);
+}
@@ -1,34 +1,91 @@
 // Tamar Rosenzweig
 package collision_detection;
 
+import geometry_primitives.Face;
 import geometry_primitives.Point;
+import geometry_primitives.Velocity;
 
 /**
  * Represents information about a collision, including the point at which the collision occurs
  * and the collidable object involved in the collision.
+ * It also holds what the collision test already found out: the side of the collidable that was hit, the outward
+ * normal of the surface at the collision point, and the time of impact along the motion that was tested.
+ * A ball reuses one object for all of its hits, so the collision data is set in place, see {@link #set}.
  */
 public class CollisionInfo {
-    private Point collisionPoint;
+    private double pointX;
+    private double pointY;
     private Collidable collisionObject;
+    private double normalX;
+    private double normalY;
+    private Face face = Face.NONE;
+    private double toi;
 
     /**
      * Constructs a new CollisionInfo object with the specified collision point and collidable object.
+     * The normal is unknown (zero) and the side is NONE.
      *
      * @param collisionPoint  the point at which the collision occurs
      * @param collisionObject the collidable object involved in the collision
      */
     public CollisionInfo(Point collisionPoint, Collidable collisionObject) {
-        this.collisionPoint = new Point(collisionPoint);
+        this.pointX = collisionPoint.getX();
+        this.pointY = collisionPoint.getY();
         this.collisionObject = collisionObject;
     }
 
+    /**
+     * Constructs an empty CollisionInfo, to be filled with {@link #set}.
+     */
+    CollisionInfo() {
+    }
+
+    /**
+     * Sets all the data of the collision.
+     *
+     * @param x      the x value of the collision point
+     * @param y      the y value of the collision point
+     * @param object the collidable object involved in the collision
+     * @param nx     the x value of the outward normal of the surface at the collision point
+     * @param ny     the y value of the outward normal
+     * @param side   the side of the collidable that was hit
+     * @param t      the time of impact, as a fraction of the motion that was tested
+     */
+    void set(double x, double y, Collidable object, double nx, double ny, Face side, double t) {
+        this.pointX = x;
+        this.pointY = y;
+        this.collisionObject = object;
+        this.normalX = nx;
+        this.normalY = ny;
+        this.face = side;
+        this.toi = t;
+    }
+
     /**
      * Returns the point at which the collision occurs.
      *
-     * @return the point at which the collision occurs
+     * @return a new point at which the collision occurs
      */
     public Point collisionPoint() {
-        return collisionPoint;
+        return new Point(pointX, pointY);
+    }
+
+    /**
+     * Returns the x value of the point at which the collision occurs.
+     *
+     * @return the x value of the collision point
+     */
+    public double pointX() {
+        return pointX;
+    }
+
+    /**
+     * Returns the y value of the point at which the collision occurs.
+     *
+     * @return the y value of the collision point
+     */
+    public double pointY() {
+        return pointY;
     }
 
     /**
@@ -39,4 +96,58 @@ public class CollisionInfo {
     public Collidable collisionObject() {
         return collisionObject;
     }
+
+    /**
+     * Returns the x value of the outward unit normal of the surface at the collision point.
+     *
+     * @return the x value of the normal
+     */
+    public double normalX() {
+        return normalX;
+    }
+
+    /**
+     * Returns the y value of the outward unit normal of the surface at the collision point.
+     *
+     * @return the y value of the normal
+     */
+    public double normalY() {
+        return normalY;
+    }
+
+    /**
+     * Returns the side of the collidable that was hit. A hit on a corner is reported as the side the normal
+     * points to the most.
+     *
+     * @return the side that was hit
+     */
+    public Face face() {
+        return face;
+    }
+
+    /**
+     * Returns the time of impact, as a fraction of the motion that was tested (0 = start, 1 = end).
+     *
+     * @return the time of impact
+     */
+    public double toi() {
+        return toi;
+    }
+
+    /**
+     * Returns the velocity reflected off the surface of the collision.
+     * Only a velocity that goes into the surface is reflected, a velocity that already leaves it is kept as it is,
+     * so a collision can never be "flipped" twice.
+     *
+     * @param currentVelocity the velocity before the collision
+     * @return a new velocity after the collision
+     */
+    public Velocity reflect(Velocity currentVelocity) {
+        double into = currentVelocity.getDx() * normalX + currentVelocity.getDy() * normalY;
+        if (into >= 0) {
+            return new Velocity(currentVelocity);
+        }
+        return new Velocity(currentVelocity.getDx() - 2 * into * normalX,
+                currentVelocity.getDy() - 2 * into * normalY);
+    }
 }
\ No newline at end of file
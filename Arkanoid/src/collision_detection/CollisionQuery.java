@@ -0,0 +1,163 @@
+// Tamar Rosenzweig
+package collision_detection;
+
+import geometry_primitives.SweptCircleTest;
+
+/**
+ * A continuous collision query of a moving circle, together with its answer.
+ * A ball keeps one query and reuses it every step. The query can be answered ahead of time - in a batch with the
+ * queries of all the other balls, see {@link GameEnvironment#queryAll} - and the ball then uses that answer as long
+ * as its motion and the environment haven't changed since.
+ */
+public class CollisionQuery {
+    private final SweptCircleTest hit = new SweptCircleTest();
+    private final CollisionInfo info = new CollisionInfo();
+    private final GameEnvironment.ClosestHit closest = new GameEnvironment.ClosestHit(); // scratch of the search
+    private double x;
+    private double y;
+    private double dx;
+    private double dy;
+    private double radius;
+    private Collidable result;
+    private GameEnvironment answeredBy;
+    private long version;
+
+    /**
+     * Sets the motion to query. If it is exactly the motion of the last query, its answer is kept.
+     *
+     * @param startX the x value of the center at the start
+     * @param startY the y value of the center at the start
+     * @param deltaX the change in x along the motion
+     * @param deltaY the change in y along the motion
+     * @param r      the radius of the circle
+     */
+    public void set(double startX, double startY, double deltaX, double deltaY, double r) {
+        if (startX == x && startY == y && deltaX == dx && deltaY == dy && r == radius) {
+            return;
+        }
+        this.x = startX;
+        this.y = startY;
+        this.dx = deltaX;
+        this.dy = deltaY;
+        this.radius = r;
+        this.result = null;
+        this.answeredBy = null;
+    }
+
+    /**
+     * Stores the answer of the query.
+     *
+     * @param closest     the first collidable the circle touches, or null
+     * @param environment the environment that answered
+     * @param atVersion   the version of the environment when it answered
+     */
+    void answer(Collidable closest, GameEnvironment environment, long atVersion) {
+        this.result = closest;
+        this.answeredBy = environment;
+        this.version = atVersion;
+        if (closest != null) {
+            info.set(hit.contactX(), hit.contactY(), closest, hit.normalX(), hit.normalY(), hit.face(), hit.toi());
+        }
+    }
+
+    /**
+     * Returns the first collidable the circle touches, as of the last answer.
+     *
+     * @return the collidable, or null if the circle doesn't touch anything
+     */
+    public Collidable result() {
+        return result;
+    }
+
+    /**
+     * Returns the test that holds the time of impact, side, contact point and normal of the answer.
+     *
+     * @return the test of the answer
+     */
+    public SweptCircleTest hit() {
+        return hit;
+    }
+
+    /**
+     * Returns the collision of the answer - the contact point, the normal, the side and the time of impact.
+     * The object is reused by the query, and is only meaningful while {@link #result()} isn't null.
+     *
+     * @return the collision of the answer
+     */
+    public CollisionInfo info() {
+        return info;
+    }
+
+    /**
+     * Returns the scratch the search for the answer uses - kept by the query, so answering it allocates nothing,
+     * and queries answered on different threads don't share it.
+     *
+     * @return the scratch of the search
+     */
+    GameEnvironment.ClosestHit closest() {
+        return closest;
+    }
+
+    /**
+     * Returns the environment that answered the query, or null if it wasn't answered since it was set.
+     *
+     * @return the environment that answered
+     */
+    GameEnvironment answeredBy() {
+        return answeredBy;
+    }
+
+    /**
+     * Returns the version of the environment when it answered.
+     *
+     * @return the version of the answer
+     */
+    long version() {
+        return version;
+    }
+
+    /**
+     * Returns the x value of the center at the start.
+     *
+     * @return the x value of the start
+     */
+    double x() {
+        return x;
+    }
+
+    /**
+     * Returns the y value of the center at the start.
+     *
+     * @return the y value of the start
+     */
+    double y() {
+        return y;
+    }
+
+    /**
+     * Returns the change in x along the motion.
+     *
+     * @return the change in x
+     */
+    double dx() {
+        return dx;
+    }
+
+    /**
+     * Returns the change in y along the motion.
+     *
+     * @return the change in y
+     */
+    double dy() {
+        return dy;
+    }
+
+    /**
+     * Returns the radius of the circle.
+     *
+     * @return the radius
+     */
+    double radius() {
+        return radius;
+    }
+}
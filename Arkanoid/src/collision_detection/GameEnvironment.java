@@ -1,31 +1,87 @@
 // Tamar Rosenzweig
 package collision_detection;
 
+import geometry_primitives.Face;
 import geometry_primitives.Line;
+import geometry_primitives.Point;
 import geometry_primitives.Rectangle;
+import geometry_primitives.BoxTest;
+import geometry_primitives.SlabTest;
+import geometry_primitives.SweptCircleTest;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Represents the game environment containing collidable objects.
+ * Collidables are registered as static (borders, blocks - they never move) or dynamic (the paddle).
+ * The bounds of a static collidable are read once, when it is added, into a flat table of edges, and its slot
+ * in the table is its id in a {@link CollidableIndex} (a {@link SpatialGrid} by default), so a collision query
+ * only tests the static objects around the trajectory instead of every object in the game.
+ * The few dynamic collidables are kept out of the index, in a short list whose bounds are read again when they
+ * move, and every query tests all of them.
+ * The exact test is a {@link SlabTest} (or a {@link SweptCircleTest}) on the stored edges, so a query doesn't
+ * build any rectangles, lines or point lists.
+ * Queries only read the environment, so a batch of them can run in parallel with {@link #queryAll}, as long as
+ * nothing is added, moved or removed meanwhile. A query allocates nothing: what its search needs is kept by its
+ * {@link CollisionQuery}, or - for the queries without one - by the thread that runs it.
  */
 public class GameEnvironment {
-    private ArrayList<Collidable> collidableObjects;
+    /**
+     * Batches with fewer queries than this are answered on the calling thread.
+     */
+    static final int PARALLEL_THRESHOLD = 256;
+    /**
+     * The number of queries a single parallel task answers.
+     */
+    static final int TASK_SIZE = 64;
+    private static final int EDGES = 4; // minX, minY, maxX, maxY
+    private static final int INITIAL_CAPACITY = 16;
+    // the search of the static collidables of the queries without a CollisionQuery, one for every thread
+    private static final ThreadLocal<ClosestHit> SEARCH = ThreadLocal.withInitial(ClosestHit::new);
+    private LinkedHashMap<Collidable, Slot> collidableObjects;
+    private CollidableIndex index;
+    // the static collidables, by slot
+    private Collidable[] staticObjects = new Collidable[0];
+    private double[] staticEdges = new double[0];
+    private int[] freeSlots = new int[0];
+    private int freeCount;
+    private int slotCount;
+    // the dynamic collidables, in the order they were added
+    private ArrayList<Collidable> dynamicObjects = new ArrayList<>();
+    private double[] dynamicEdges = new double[0];
+    private long version; // grows whenever a collidable is added or moved
+    private long staticVersion; // grows whenever a static collidable is added, or starts moving
 
     /**
      * Constructs a new GameEnvironment object.
      */
     public GameEnvironment() {
-        collidableObjects = new ArrayList<>();
+        this(new SpatialGrid());
+    }
+
+    /**
+     * Constructs a new GameEnvironment object that keeps its static collidables in the given (empty) index.
+     *
+     * @param index the broadphase index to use, for example a {@link SpatialGrid} or an {@link AabbTree}
+     */
+    public GameEnvironment(CollidableIndex index) {
+        this.collidableObjects = new LinkedHashMap<>();
+        this.index = index;
     }
 
     /**
      * Constructs a new GameEnvironment object.
      *
-     * @param collidableObjects is the list to copy
+     * @param collidableObjects is the list to copy, all of them are added as static
      */
     public GameEnvironment(ArrayList<Collidable> collidableObjects) {
-        this.collidableObjects = new ArrayList<>();
-        this.collidableObjects.addAll(collidableObjects);
+        this();
+        for (Collidable c : collidableObjects) {
+            addCollidable(c);
+        }
     }
 
     /**
@@ -34,21 +90,111 @@ public class GameEnvironment {
      * @param other the {@code GameEnvironment} to copy from
      */
     public GameEnvironment(GameEnvironment other) {
-        collidableObjects = new ArrayList<>();
-        collidableObjects.addAll(other.collidableObjects);
+        this();
+        for (Collidable c : other.collidableObjects.keySet()) {
+            if (other.collidableObjects.get(c).dynamic) {
+                addDynamicCollidable(c);
+            } else {
+                addStaticCollidable(c);
+            }
+        }
     }
 
     /**
-     * Adds the given collidable object to the game environment.
+     * Adds the given collidable object to the game environment, as a static collidable.
      *
      * @param c the collidable object to add
      */
     public void addCollidable(Collidable c) {
+        addStaticCollidable(c);
+    }
+
+    /**
+     * Adds a collidable that never moves. Its collision rectangle is read once, now.
+     * Adding a collidable that is already in the environment reads its rectangle again.
+     *
+     * @param c the collidable object to add
+     */
+    public void addStaticCollidable(Collidable c) {
         if (collidableObjects == null) {
-            collidableObjects = new ArrayList<>();
-            collidableObjects.add(c);
-        } else {
-            collidableObjects.add(c);
+            collidableObjects = new LinkedHashMap<>();
+        }
+        Slot s = collidableObjects.get(c);
+        if (s != null && s.dynamic) {
+            removeCollidable(c);
+            s = null;
+        }
+        if (s == null) {
+            s = new Slot(allocateSlot(), false);
+            collidableObjects.put(c, s);
+            staticObjects[s.id] = c;
+        }
+        setEdges(staticEdges, s.id, c.getCollisionRectangle());
+        int e = s.id * EDGES;
+        index.insert(s.id, staticEdges[e], staticEdges[e + 1], staticEdges[e + 2], staticEdges[e + 3]);
+        version++;
+        staticVersion++;
+    }
+
+    /**
+     * Adds a collidable that moves, like the paddle. It is tested by every query, and its collision rectangle is
+     * read again by {@link #updateCollidable} (when it tells the environment it moved) and by
+     * {@link #refreshDynamic} (for all of them).
+     *
+     * @param c the collidable object to add
+     */
+    public void addDynamicCollidable(Collidable c) {
+        if (collidableObjects == null) {
+            collidableObjects = new LinkedHashMap<>();
+        }
+        Slot s = collidableObjects.get(c);
+        if (s != null && !s.dynamic) {
+            removeCollidable(c);
+            s = null;
+        }
+        if (s == null) {
+            s = new Slot(dynamicObjects.size(), true);
+            collidableObjects.put(c, s);
+            dynamicObjects.add(c);
+            if (dynamicEdges.length < dynamicObjects.size() * EDGES) {
+                dynamicEdges = Arrays.copyOf(dynamicEdges, dynamicObjects.size() * 2 * EDGES);
+            }
+        }
+        setEdges(dynamicEdges, s.id, c.getCollisionRectangle());
+        version++;
+    }
+
+    /**
+     * Tells the environment that the collision rectangle of the given collidable has changed (it moved),
+     * so it can be found at its new place.
+     * A static collidable that moves becomes dynamic from then on.
+     *
+     * @param c the collidable that moved
+     */
+    public void updateCollidable(Collidable c) {
+        Slot s = collidableObjects.get(c);
+        if (s == null) {
+            return;
+        }
+        if (!s.dynamic) {
+            addDynamicCollidable(c);
+            staticVersion++;
+            return;
+        }
+        setEdges(dynamicEdges, s.id, c.getCollisionRectangle());
+        version++;
+    }
+
+    /**
+     * Reads the collision rectangles of all the dynamic collidables again - once a tick, for dynamic collidables
+     * that don't call {@link #updateCollidable} themselves.
+     */
+    public void refreshDynamic() {
+        for (int i = 0; i < dynamicObjects.size(); i++) {
+            setEdges(dynamicEdges, i, dynamicObjects.get(i).getCollisionRectangle());
+        }
+        if (!dynamicObjects.isEmpty()) {
+            version++;
         }
     }
 
@@ -60,15 +206,217 @@ public class GameEnvironment {
      * @return the information about the closest collision, or null if no collision will occur
      */
     public CollisionInfo getClosestCollision(Line trajectory) {
-        ArrayList<Collidable> copy = new ArrayList<>();
-        copy.addAll(collidableObjects);
-        for (Collidable c : copy) {
-            Rectangle rec = new Rectangle(c.getCollisionRectangle());
-            if (trajectory.closestIntersectionToStartOfLine(rec) != null) {
-                return new CollisionInfo(trajectory.closestIntersectionToStartOfLine(rec), c);
+        if (trajectory.lineIsAPoint()) {
+            return null; // an object that doesn't move can't hit anything
+        }
+        Point start = trajectory.start();
+        Point end = trajectory.end();
+        SlabTest hit = new SlabTest();
+        Collidable closest = getClosestCollidable(start.getX(), start.getY(), end.getX() - start.getX(),
+                end.getY() - start.getY(), hit);
+        if (closest == null) {
+            return null;
+        }
+        CollisionInfo info = new CollisionInfo();
+        Face face = hit.face();
+        info.set(hit.xAt(hit.toi()), hit.yAt(hit.toi()), closest, face.normalX(), face.normalY(), face, hit.toi());
+        return info;
+    }
+
+    /**
+     * Finds the collidable that the segment (x, y) + t * (dx, dy), 0 &lt;= t &lt;= 1, hits first.
+     * This is the same query as {@link #getClosestCollision(Line)} without any allocation for the result:
+     * when a collidable is returned, the given test holds the time of impact and the side of that hit.
+     *
+     * @param x   the x value of the start of the segment
+     * @param y   the y value of the start of the segment
+     * @param dx  the change in x along the segment
+     * @param dy  the change in y along the segment
+     * @param hit the test to use, it is reset by the query
+     * @return the closest collidable along the segment, or null if the segment doesn't hit anything
+     */
+    public Collidable getClosestCollidable(double x, double y, double dx, double dy, SlabTest hit) {
+        hit.reset(x, y, dx, dy);
+        return closest(x, y, dx, dy, 0, SEARCH.get().reset(staticEdges, hit, null), false);
+    }
+
+    /**
+     * Finds the collidable that a circle moving along the segment (x, y) + t * (dx, dy), 0 &lt;= t &lt;= 1,
+     * touches first - the continuous collision query of a ball.
+     * When a collidable is returned, the given test holds the time of impact, the side, the contact point and
+     * the normal of that hit.
+     *
+     * @param x      the x value of the center at the start
+     * @param y      the y value of the center at the start
+     * @param dx     the change in x along the motion
+     * @param dy     the change in y along the motion
+     * @param radius the radius of the circle
+     * @param hit    the test to use, it is reset by the query
+     * @return the first collidable the circle touches, or null if it doesn't touch anything
+     */
+    public Collidable getClosestCollidable(double x, double y, double dx, double dy, double radius,
+                                           SweptCircleTest hit) {
+        hit.reset(x, y, dx, dy, radius);
+        return closest(x, y, dx, dy, radius, SEARCH.get().reset(staticEdges, hit, null), false);
+    }
+
+    /**
+     * Finds the collidable that a circle moving along the segment touches first, like
+     * {@link #getClosestCollidable(double, double, double, double, double, SweptCircleTest)}, but only among
+     * the static collidables. The answer holds until {@link #staticVersion()} changes (or the collidable that
+     * was hit is removed), so it can be kept for many frames.
+     *
+     * @param x      the x value of the center at the start
+     * @param y      the y value of the center at the start
+     * @param dx     the change in x along the motion
+     * @param dy     the change in y along the motion
+     * @param radius the radius of the circle
+     * @param hit    the test to use, it is reset by the query
+     * @return the first static collidable the circle touches, or null if it doesn't touch any
+     */
+    public Collidable getClosestStaticCollidable(double x, double y, double dx, double dy, double radius,
+                                                 SweptCircleTest hit) {
+        hit.reset(x, y, dx, dy, radius);
+        return closest(x, y, dx, dy, radius, SEARCH.get().reset(staticEdges, hit, null), true);
+    }
+
+    /**
+     * Returns the static version of the environment, that changes whenever a static collidable is added, or
+     * starts moving. While it is the same, the static collidables and their places are the same (some of them
+     * may have been removed).
+     *
+     * @return the static version
+     */
+    public long staticVersion() {
+        return staticVersion;
+    }
+
+    /**
+     * Checks whether any dynamic collidable (like the paddle) overlaps the given box.
+     *
+     * @param minX the left side of the box
+     * @param minY the top side of the box
+     * @param maxX the right side of the box
+     * @param maxY the bottom side of the box
+     * @return true if the box overlaps the bounds of a dynamic collidable
+     */
+    public boolean isNearDynamic(double minX, double minY, double maxX, double maxY) {
+        for (int i = 0; i < dynamicObjects.size(); i++) {
+            int e = i * EDGES;
+            if (dynamicEdges[e] <= maxX && minX <= dynamicEdges[e + 2]
+                    && dynamicEdges[e + 1] <= maxY && minY <= dynamicEdges[e + 3]) {
+                return true;
             }
         }
-        return null;
+        return false;
+    }
+
+    /**
+     * Answers a continuous collision query - the first collidable a moving circle touches.
+     *
+     * @param query the query to answer
+     * @return the first collidable the circle touches, or null if it doesn't touch anything
+     */
+    public Collidable query(CollisionQuery query) {
+        long answeredAt = version;
+        SweptCircleTest hit = query.hit();
+        hit.reset(query.x(), query.y(), query.dx(), query.dy(), query.radius());
+        Collidable closest = closest(query.x(), query.y(), query.dx(), query.dy(), query.radius(),
+                query.closest().reset(staticEdges, hit, null), false);
+        query.answer(closest, this, answeredAt);
+        return closest;
+    }
+
+    /**
+     * Answers a batch of continuous collision queries, splitting them between the threads of the common
+     * fork/join pool. Every query is answered exactly as {@link #query} would answer it, so the result doesn't
+     * depend on how the work was split. The environment must not change until the call returns.
+     *
+     * @param queries the queries to answer
+     * @param count   the number of queries in the array to answer, from its start
+     */
+    public void queryAll(CollisionQuery[] queries, int count) {
+        if (count < PARALLEL_THRESHOLD) {
+            for (int i = 0; i < count; i++) {
+                query(queries[i]);
+            }
+            return;
+        }
+        ForkJoinPool.commonPool().invoke(new QueryTask(queries, 0, count));
+    }
+
+    /**
+     * Checks whether the answer of a query still holds.
+     * An answer holds while nothing was added to the environment or moved in it since it was given. Removing a
+     * collidable can only make the first hit farther, so it breaks only the answers that hit that collidable.
+     *
+     * @param query the query to check
+     * @return true if the query was answered by this environment and the answer still holds
+     */
+    public boolean isAnswerCurrent(CollisionQuery query) {
+        if (query.answeredBy() != this || query.version() != version) {
+            return false;
+        }
+        return query.result() == null || collidableObjects.containsKey(query.result());
+    }
+
+    /**
+     * Runs a closest hit query with the (already reset) test of the given search: the static collidables through
+     * the index, then every dynamic collidable. On a tie, a static collidable wins.
+     *
+     * @param x          the x value of the start of the motion
+     * @param y          the y value of the start of the motion
+     * @param dx         the change in x along the motion
+     * @param dy         the change in y along the motion
+     * @param radius     the radius of the moving shape, 0 for a point
+     * @param query      the search of the static collidables, reset to their edges and the narrowphase test
+     * @param staticOnly true to leave the dynamic collidables out
+     * @return the closest collidable, or null if there is no hit
+     */
+    private Collidable closest(double x, double y, double dx, double dy, double radius, ClosestHit query,
+                               boolean staticOnly) {
+        if (dx == 0 && dy == 0) {
+            return null;
+        }
+        BoxTest hit = query.hit;
+        index.raycast(x, y, dx, dy, radius, query);
+        Collidable closest = null;
+        double[] edges = staticEdges;
+        int slot = query.closestId;
+        double best = 1;
+        if (slot >= 0) {
+            closest = staticObjects[slot];
+            best = query.closestToi;
+        }
+        if (!staticOnly) {
+            for (int i = 0; i < dynamicObjects.size(); i++) {
+                int e = i * EDGES;
+                if (hit.test(dynamicEdges[e], dynamicEdges[e + 1], dynamicEdges[e + 2], dynamicEdges[e + 3], best)
+                        && (hit.toi() < best || closest == null)) {
+                    closest = dynamicObjects.get(i);
+                    best = hit.toi();
+                    edges = dynamicEdges;
+                    slot = i;
+                }
+            }
+        }
+        if (closest == null) {
+            return null;
+        }
+        // the test was run on farther candidates after the closest one, run it again on the closest
+        int e = slot * EDGES;
+        hit.test(edges[e], edges[e + 1], edges[e + 2], edges[e + 3], 1);
+        return closest;
+    }
+
+    /**
+     * Checks whether the given collidable is in the environment.
+     *
+     * @param c the collidable to look for
+     * @return true if it was added and not removed since
+     */
+    public boolean contains(Collidable c) {
+        return collidableObjects.containsKey(c);
     }
 
     /**
@@ -77,6 +425,204 @@ public class GameEnvironment {
      * @param c the Collidable object to be removed
      */
     public void removeCollidable(Collidable c) {
-        collidableObjects.remove(c);
+        Slot s = collidableObjects.remove(c);
+        if (s == null) {
+            return;
+        }
+        if (!s.dynamic) {
+            index.remove(s.id);
+            staticObjects[s.id] = null;
+            freeSlots[freeCount++] = s.id;
+            return;
+        }
+        // close the gap in the dynamic list, the ones after it move one slot back
+        dynamicObjects.remove(s.id);
+        System.arraycopy(dynamicEdges, (s.id + 1) * EDGES, dynamicEdges, s.id * EDGES,
+                (dynamicObjects.size() - s.id) * EDGES);
+        for (int i = s.id; i < dynamicObjects.size(); i++) {
+            collidableObjects.get(dynamicObjects.get(i)).id = i;
+        }
+    }
+
+    /**
+     * Takes a free slot in the static table, growing the table if there is none.
+     *
+     * @return the slot
+     */
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (slotCount == staticObjects.length) {
+            int capacity = Math.max(INITIAL_CAPACITY, slotCount * 2);
+            staticObjects = Arrays.copyOf(staticObjects, capacity);
+            staticEdges = Arrays.copyOf(staticEdges, capacity * EDGES);
+            freeSlots = Arrays.copyOf(freeSlots, capacity);
+        }
+        return slotCount++;
+    }
+
+    /**
+     * Copies the edges of a rectangle into a table of edges.
+     *
+     * @param edges the table
+     * @param slot  the slot in the table
+     * @param rec   the rectangle
+     */
+    private static void setEdges(double[] edges, int slot, Rectangle rec) {
+        Point upperLeft = rec.getUpperLeft();
+        int e = slot * EDGES;
+        edges[e] = upperLeft.getX();
+        edges[e + 1] = upperLeft.getY();
+        edges[e + 2] = upperLeft.getX() + rec.getWidth();
+        edges[e + 3] = upperLeft.getY() + rec.getHeight();
+    }
+
+    /**
+     * Where a collidable is kept: its slot in the static table, or its place in the dynamic list.
+     */
+    private static final class Slot {
+        private int id;
+        private final boolean dynamic;
+
+        /**
+         * Constructs a slot.
+         *
+         * @param id      the slot in the static table, or the place in the dynamic list
+         * @param dynamic whether the collidable is dynamic
+         */
+        private Slot(int id, boolean dynamic) {
+            this.id = id;
+            this.dynamic = dynamic;
+        }
+    }
+
+    /**
+     * The narrowphase of the static part of a collision query - keeps the candidate whose hit is closest to
+     * the start of the trajectory. When two candidates are hit at the same time, the first one reported wins.
+     * Candidates whose bit is set in the removed mask are skipped (a {@link LevelGeometry} keeps its removed
+     * collidables in its index, and leaves them out this way).
+     * One object is reset for every query of its owner, and keeps the stack an index searches with.
+     */
+    static final class ClosestHit implements RaycastCallback {
+        private double[] edges;
+        private BoxTest hit;
+        private long[] removed;
+        private int closestId = -1;
+        private double closestToi;
+        private int[] stack = new int[INITIAL_CAPACITY];
+
+        /**
+         * Sets the search up for a new query.
+         *
+         * @param staticEdges the edges of the static collidables, by slot
+         * @param test        the narrowphase test, already set to the trajectory
+         * @param removedMask a bit for every slot, set for the ones to skip, or null to skip none
+         * @return this search
+         */
+        ClosestHit reset(double[] staticEdges, BoxTest test, long[] removedMask) {
+            this.edges = staticEdges;
+            this.hit = test;
+            this.removed = removedMask;
+            this.closestId = -1;
+            return this;
+        }
+
+        /**
+         * Returns the stack of the search, grown if it is shorter than the given length.
+         *
+         * @param length the length the index needs
+         * @return the stack
+         */
+        @Override
+        public int[] stack(int length) {
+            if (stack.length < length) {
+                stack = new int[Math.max(length, stack.length * 2)];
+            }
+            return stack;
+        }
+
+        /**
+         * Returns the slot of the closest hit so far.
+         *
+         * @return the slot, -1 if nothing was hit
+         */
+        int closestId() {
+            return closestId;
+        }
+
+        /**
+         * Returns the time of impact of the closest hit so far.
+         *
+         * @return the time of impact
+         */
+        double closestToi() {
+            return closestToi;
+        }
+
+        /**
+         * Tests the candidate against the trajectory, and keeps it if it's the closest hit so far.
+         *
+         * @param id          the slot of the candidate
+         * @param maxFraction the fraction of the closest hit so far
+         * @return the fraction of the closest hit, including this candidate
+         */
+        @Override
+        public double candidate(int id, double maxFraction) {
+            if (id == closestId) {
+                return maxFraction; // already tested, it covers more than one cell
+            }
+            if (removed != null && (removed[id / Long.SIZE] & (1L << (id % Long.SIZE))) != 0) {
+                return maxFraction;
+            }
+            int e = id * EDGES;
+            if (!hit.test(edges[e], edges[e + 1], edges[e + 2], edges[e + 3], maxFraction)) {
+                return maxFraction;
+            }
+            if (hit.toi() < maxFraction || closestId < 0) {
+                closestId = id;
+                closestToi = hit.toi();
+                return closestToi;
+            }
+            return maxFraction;
+        }
+    }
+
+    /**
+     * Answers a range of a batch of queries, splitting it in two while it is larger than TASK_SIZE.
+     */
+    private final class QueryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final CollisionQuery[] queries;
+        private final int from;
+        private final int to;
+
+        /**
+         * Constructs a task for the queries in [from, to).
+         *
+         * @param queries the batch
+         * @param from    the first query of the range
+         * @param to      the end of the range (not included)
+         */
+        private QueryTask(CollisionQuery[] queries, int from, int to) {
+            this.queries = queries;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Answers the range, or splits it.
+         */
+        @Override
+        protected void compute() {
+            if (to - from <= TASK_SIZE) {
+                for (int i = from; i < to; i++) {
+                    query(queries[i]);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new QueryTask(queries, from, middle), new QueryTask(queries, middle, to));
+        }
     }
 }
\ No newline at end of file
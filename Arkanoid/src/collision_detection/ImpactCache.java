@@ -0,0 +1,134 @@
+// Tamar Rosenzweig
+package collision_detection;
+
+import geometry_primitives.SweptCircleTest;
+
+/**
+ * Remembers when a ball that keeps moving in a straight line will hit the static part of the world next.
+ * The borders and the blocks don't move, so one long query, HORIZON steps ahead, tells how many steps the ball
+ * can take without touching any of them. Until then, a step needs a collision query only if it passes near
+ * a dynamic collidable (the paddle).
+ * The cache is refreshed when the ball leaves the line it was computed for (its velocity or place were changed),
+ * when the static world changed, and when the block it was going to hit was removed.
+ */
+public class ImpactCache {
+    /**
+     * How many steps ahead a refresh looks.
+     */
+    public static final int HORIZON = 120;
+    /**
+     * The query is made with a slightly bigger circle, so rounding in the ball's steps can't make it touch
+     * something the query missed.
+     */
+    public static final double MARGIN = 0.01;
+    private final SweptCircleTest sweep = new SweptCircleTest();
+    private GameEnvironment environment;
+    private long staticVersion;
+    private double expectedX; // where the next step has to start
+    private double expectedY;
+    private double dx;
+    private double dy;
+    private double radius;
+    private Collidable target;
+    private int freeSteps; // the steps left that can't touch a static collidable
+    private boolean valid;
+    private int refreshes;
+
+    /**
+     * Checks whether the step from (x, y) by (dx, dy) is known not to touch anything, so it needs no query.
+     * May refresh the cache (with one long static query) first. Doesn't use up the step, see {@link #stepTaken}.
+     *
+     * @param env      the environment the ball moves in
+     * @param x        the x value of the center at the start of the step
+     * @param y        the y value of the center at the start of the step
+     * @param stepDx   the change in x in the step
+     * @param stepDy   the change in y in the step
+     * @param r        the radius of the ball
+     * @return true if the step touches no collidable
+     */
+    public boolean isFreeStep(GameEnvironment env, double x, double y, double stepDx, double stepDy, double r) {
+        if (!holds(env, x, y, stepDx, stepDy, r)) {
+            refresh(env, x, y, stepDx, stepDy, r);
+        }
+        if (freeSteps < 1) {
+            return false; // the next static hit may be in this step
+        }
+        // the swept box of the step, grown by the radius
+        return !env.isNearDynamic(Math.min(x, x + stepDx) - r - MARGIN, Math.min(y, y + stepDy) - r - MARGIN,
+                Math.max(x, x + stepDx) + r + MARGIN, Math.max(y, y + stepDy) + r + MARGIN);
+    }
+
+    /**
+     * Tells the cache that the ball took the free step that {@link #isFreeStep} approved.
+     *
+     * @param x the x value of the center after the step
+     * @param y the y value of the center after the step
+     */
+    public void stepTaken(double x, double y) {
+        expectedX = x;
+        expectedY = y;
+        freeSteps--;
+    }
+
+    /**
+     * Forgets the cached time of impact, so the next step refreshes it.
+     */
+    public void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * Returns how many times the cache was refreshed - each refresh is one long query.
+     *
+     * @return the number of refreshes
+     */
+    public int refreshes() {
+        return refreshes;
+    }
+
+    /**
+     * Checks whether the cached time of impact still applies to the given step.
+     *
+     * @param env    the environment the ball moves in
+     * @param x      the x value of the center at the start of the step
+     * @param y      the y value of the center at the start of the step
+     * @param stepDx the change in x in the step
+     * @param stepDy the change in y in the step
+     * @param r      the radius of the ball
+     * @return true if the step continues the line the cache was computed for, in the same static world
+     */
+    private boolean holds(GameEnvironment env, double x, double y, double stepDx, double stepDy, double r) {
+        return valid && env == environment && env.staticVersion() == staticVersion
+                && x == expectedX && y == expectedY && stepDx == dx && stepDy == dy && r == radius
+                && (target == null || env.contains(target));
+    }
+
+    /**
+     * Runs the long static query from the start of the step, and counts the steps before its hit.
+     *
+     * @param env    the environment the ball moves in
+     * @param x      the x value of the center at the start of the step
+     * @param y      the y value of the center at the start of the step
+     * @param stepDx the change in x in the step
+     * @param stepDy the change in y in the step
+     * @param r      the radius of the ball
+     */
+    private void refresh(GameEnvironment env, double x, double y, double stepDx, double stepDy, double r) {
+        refreshes++;
+        environment = env;
+        staticVersion = env.staticVersion();
+        expectedX = x;
+        expectedY = y;
+        dx = stepDx;
+        dy = stepDy;
+        radius = r;
+        valid = true;
+        target = env.getClosestStaticCollidable(x, y, stepDx * HORIZON, stepDy * HORIZON, r + MARGIN, sweep);
+        if (target == null) {
+            freeSteps = HORIZON;
+        } else {
+            // the hit is somewhere in step number floor(toi * HORIZON), the steps before it are free
+            freeSteps = (int) Math.floor(sweep.toi() * HORIZON);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+// Tamar Rosenzweig
+package collision_detection;
+
+import geometry_primitives.Point;
+import geometry_primitives.Rectangle;
+import geometry_primitives.SweptCircleTest;
+
+import java.util.List;
+
+/**
+ * The static part of a level - the borders and the blocks - read once into a table of edges and a
+ * {@link SpatialGrid}, and never changed after that. Since it never changes, any number of simulations (on any
+ * number of threads) can share one geometry: each of them keeps only a mask of the collidables it removed, and
+ * its own dynamic collidable (the paddle), and passes them to every query.
+ * A collidable's id is its place in the list the geometry was built from. The collidables are put in the index in
+ * that order, so a query finds the same collidable as a {@link GameEnvironment} that the same collidables were
+ * added to in the same order, ties included.
+ */
+public final class LevelGeometry {
+    /**
+     * The answer of a query that hit the dynamic collidable.
+     */
+    public static final int DYNAMIC = -1;
+    /**
+     * The answer of a query that hit nothing.
+     */
+    public static final int NONE = -2;
+    private static final int EDGES = 4; // minX, minY, maxX, maxY
+    private final Collidable[] objects;
+    private final double[] edges;
+    private final SpatialGrid index = new SpatialGrid();
+
+    /**
+     * Builds the geometry of the given static collidables, reading their collision rectangles now.
+     *
+     * @param collidables the collidables, their ids are their places in the list
+     */
+    public LevelGeometry(List<? extends Collidable> collidables) {
+        this.objects = collidables.toArray(new Collidable[0]);
+        this.edges = new double[objects.length * EDGES];
+        for (int id = 0; id < objects.length; id++) {
+            Rectangle rec = objects[id].getCollisionRectangle();
+            Point upperLeft = rec.getUpperLeft();
+            int e = id * EDGES;
+            edges[e] = upperLeft.getX();
+            edges[e + 1] = upperLeft.getY();
+            edges[e + 2] = upperLeft.getX() + rec.getWidth();
+            edges[e + 3] = upperLeft.getY() + rec.getHeight();
+            index.insert(id, edges[e], edges[e + 1], edges[e + 2], edges[e + 3]);
+        }
+    }
+
+    /**
+     * Returns the number of collidables in the geometry.
+     *
+     * @return the number of collidables
+     */
+    public int size() {
+        return objects.length;
+    }
+
+    /**
+     * Returns a collidable of the geometry.
+     *
+     * @param id the id of the collidable
+     * @return the collidable
+     */
+    public Collidable get(int id) {
+        return objects[id];
+    }
+
+    /**
+     * Returns the number of longs a mask of removed collidables of this geometry takes.
+     *
+     * @return the length of a mask
+     */
+    public int maskLength() {
+        return (objects.length + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    /**
+     * Answers a continuous collision query - the first collidable a moving circle touches, among the collidables
+     * of the geometry that aren't removed and one dynamic collidable. On a tie, a static collidable wins, as in
+     * a GameEnvironment.
+     *
+     * @param query        the query to answer, its answer isn't kept by any environment
+     * @param removed      a bit for every id, set for the removed collidables
+     * @param dynamic      the dynamic collidable, null for none
+     * @param dynamicEdges the edges of the dynamic collidable: minX, minY, maxX, maxY
+     * @return the id of the first collidable the circle touches, DYNAMIC or NONE
+     */
+    public int query(CollisionQuery query, long[] removed, Collidable dynamic, double[] dynamicEdges) {
+        SweptCircleTest hit = query.hit();
+        hit.reset(query.x(), query.y(), query.dx(), query.dy(), query.radius());
+        if (query.dx() == 0 && query.dy() == 0) {
+            query.answer(null, null, 0);
+            return NONE;
+        }
+        GameEnvironment.ClosestHit closest = query.closest();
+        closest.reset(edges, hit, removed);
+        index.raycast(query.x(), query.y(), query.dx(), query.dy(), query.radius(), closest);
+        int id = closest.closestId();
+        Collidable target = id >= 0 ? objects[id] : null;
+        double best = id >= 0 ? closest.closestToi() : 1;
+        double[] targetEdges = edges;
+        int slot = id;
+        if (dynamic != null && hit.test(dynamicEdges[0], dynamicEdges[1], dynamicEdges[2], dynamicEdges[3], best)
+                && (hit.toi() < best || target == null)) {
+            target = dynamic;
+            targetEdges = dynamicEdges;
+            slot = 0;
+            id = DYNAMIC;
+        }
+        if (target == null) {
+            query.answer(null, null, 0);
+            return NONE;
+        }
+        // the test was run on farther candidates after the closest one, run it again on the closest
+        int e = slot * EDGES;
+        hit.test(targetEdges[e], targetEdges[e + 1], targetEdges[e + 2], targetEdges[e + 3], 1);
+        query.answer(target, null, 0);
+        return id;
+    }
+}
@@ -0,0 +1,31 @@
+// Tamar Rosenzweig
+package collision_detection;
+
+/**
+ * Receives the candidates that a broadphase index finds along a segment.
+ * The callback performs the exact (narrowphase) test and tells the index how far along the segment
+ * it still has to look.
+ */
+public interface RaycastCallback {
+
+    /**
+     * Called for every object whose bounds might be crossed by the segment.
+     * The same object may be reported more than once if it covers several cells.
+     *
+     * @param id          the id of the candidate object
+     * @param maxFraction the current search limit, as a fraction of the segment (0 = start, 1 = end)
+     * @return the new search limit - the fraction of the closest hit found so far, or maxFraction if there is none
+     */
+    double candidate(int id, double maxFraction);
+
+    /**
+     * Returns an array an index may use as the stack of its search, of at least the given length. A callback
+     * that is reused for many queries keeps one array, so a query allocates nothing.
+     *
+     * @param length the length the index needs
+     * @return the array, a new one by default
+     */
+    default int[] stack(int length) {
+        return new int[length];
+    }
+}
@@ -0,0 +1,387 @@
+// Tamar Rosenzweig
+package collision_detection;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid broadphase for collidable objects.
+ * Every object is bucketed into the cells its bounding box covers, and a segment query visits only the
+ * cells the segment passes through (a DDA traversal), in order from the start of the segment.
+ * The grid grows automatically when an object is inserted outside of its current area.
+ * Every cell is a plain array of object ids, kept in the order they were inserted.
+ */
+public class SpatialGrid implements CollidableIndex {
+    /**
+     * The default cell size, the width of a regular block.
+     */
+    static final double DEFAULT_CELL_SIZE = 50;
+    /**
+     * Objects are bucketed with this margin, so a segment that runs exactly along a cell border still finds them.
+     */
+    static final double BUCKET_MARGIN = 0.001;
+    private final double cellSize;
+    private static final int INITIAL_CELL_CAPACITY = 4;
+    private Entry[] entries = new Entry[0]; // by id, null if the id is not in the grid
+    private int count;
+    private int[][] cells = new int[0][];
+    private int[] cellSizes = new int[0];
+    private int originCol;
+    private int originRow;
+    private int cols;
+    private int rows;
+
+    /**
+     * Constructs an empty grid with the default cell size.
+     */
+    public SpatialGrid() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Constructs an empty grid.
+     *
+     * @param cellSize the side length of a (square) cell
+     */
+    public SpatialGrid(double cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Inserts the object into the grid, using the given bounds.
+     *
+     * @param id   the id of the object to insert
+     * @param minX the left side of the bounds
+     * @param minY the top side of the bounds
+     * @param maxX the right side of the bounds
+     * @param maxY the bottom side of the bounds
+     */
+    @Override
+    public void insert(int id, double minX, double minY, double maxX, double maxY) {
+        if (entryOf(id) != null) {
+            update(id, minX, minY, maxX, maxY);
+            return;
+        }
+        if (id >= entries.length) {
+            entries = Arrays.copyOf(entries, Math.max(id + 1, entries.length * 2));
+        }
+        Entry e = new Entry();
+        setCells(e, minX, minY, maxX, maxY);
+        entries[id] = e;
+        count++;
+        if (!covers(e)) {
+            grow(e);
+        }
+        addToCells(id, e);
+    }
+
+    /**
+     * Removes the object from the grid. Does nothing if it was never inserted.
+     *
+     * @param id the id of the object to remove
+     */
+    @Override
+    public void remove(int id) {
+        Entry e = entryOf(id);
+        if (e != null) {
+            entries[id] = null;
+            count--;
+            removeFromCells(id, e);
+        }
+    }
+
+    /**
+     * Moves the object to new bounds. The cells are touched only if the covered cell range changed.
+     *
+     * @param id   the id of the object that moved
+     * @param minX the left side of the new bounds
+     * @param minY the top side of the new bounds
+     * @param maxX the right side of the new bounds
+     * @param maxY the bottom side of the new bounds
+     */
+    @Override
+    public void update(int id, double minX, double minY, double maxX, double maxY) {
+        Entry e = entryOf(id);
+        if (e == null) {
+            insert(id, minX, minY, maxX, maxY);
+            return;
+        }
+        Entry moved = new Entry();
+        setCells(moved, minX, minY, maxX, maxY);
+        if (moved.minCol == e.minCol && moved.minRow == e.minRow
+                && moved.maxCol == e.maxCol && moved.maxRow == e.maxRow) {
+            return; // still in the same cells
+        }
+        removeFromCells(id, e);
+        entries[id] = moved;
+        if (!covers(moved)) {
+            grow(moved);
+        }
+        addToCells(id, moved);
+    }
+
+    /**
+     * Returns the number of objects in the grid.
+     *
+     * @return the number of objects in the grid
+     */
+    @Override
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Reports the objects of every cell the segment (x, y) + t * (dx, dy), 0 &lt;= t &lt;= 1, passes through,
+     * or that a circle of the given radius moving along the segment touches. Cells are visited in order along
+     * the segment, and the traversal stops as soon as the callback has found a hit that is closer than the next
+     * cell.
+     *
+     * @param x        the x value of the start of the segment
+     * @param y        the y value of the start of the segment
+     * @param dx       the change in x along the segment
+     * @param dy       the change in y along the segment
+     * @param radius   the radius of the moving circle, 0 for a plain segment
+     * @param callback the narrowphase test for every candidate
+     */
+    @Override
+    public void raycast(double x, double y, double dx, double dy, double radius, RaycastCallback callback) {
+        if (cols == 0 || rows == 0) {
+            return;
+        }
+        if (radius > 0) {
+            sweep(x, y, dx, dy, radius, callback);
+            return;
+        }
+        int col = cellOf(x);
+        int row = cellOf(y);
+        int stepCol = dx > 0 ? 1 : (dx < 0 ? -1 : 0);
+        int stepRow = dy > 0 ? 1 : (dy < 0 ? -1 : 0);
+        // the fraction of the segment at which the next vertical / horizontal cell border is crossed
+        double nextX = dx > 0 ? ((col + 1) * cellSize - x) / dx
+                : (dx < 0 ? (col * cellSize - x) / dx : Double.POSITIVE_INFINITY);
+        double nextY = dy > 0 ? ((row + 1) * cellSize - y) / dy
+                : (dy < 0 ? (row * cellSize - y) / dy : Double.POSITIVE_INFINITY);
+        double deltaX = dx != 0 ? cellSize / Math.abs(dx) : Double.POSITIVE_INFINITY;
+        double deltaY = dy != 0 ? cellSize / Math.abs(dy) : Double.POSITIVE_INFINITY;
+        double maxFraction = 1;
+        while (true) {
+            int cell = cellAt(col, row);
+            if (cell >= 0) {
+                int[] items = cells[cell];
+                for (int i = 0; i < cellSizes[cell]; i++) {
+                    maxFraction = callback.candidate(items[i], maxFraction);
+                }
+            }
+            double cellExit = Math.min(nextX, nextY);
+            if (cellExit > maxFraction) {
+                return; // the rest of the segment is beyond the closest hit, or beyond its end
+            }
+            if (nextX < nextY) {
+                col += stepCol;
+                nextX += deltaX;
+            } else {
+                row += stepRow;
+                nextY += deltaY;
+            }
+        }
+    }
+
+    /**
+     * Reports the objects of every cell a circle moving along the segment might touch.
+     * The columns are visited in the direction of the motion, and in every column the rows that the circle
+     * covers while its center is within a radius of the column. The visit stops at the first column that is
+     * reached only after the closest hit the callback found.
+     *
+     * @param x        the x value of the start of the segment
+     * @param y        the y value of the start of the segment
+     * @param dx       the change in x along the segment
+     * @param dy       the change in y along the segment
+     * @param radius   the radius of the moving circle
+     * @param callback the narrowphase test for every candidate
+     */
+    private void sweep(double x, double y, double dx, double dy, double radius, RaycastCallback callback) {
+        int firstCol = Math.max(originCol, cellOf(Math.min(x, x + dx) - radius));
+        int lastCol = Math.min(originCol + cols - 1, cellOf(Math.max(x, x + dx) + radius));
+        int step = dx < 0 ? -1 : 1;
+        int col = dx < 0 ? lastCol : firstCol;
+        double maxFraction = 1;
+        for (int i = 0; i <= lastCol - firstCol; i++, col += step) {
+            // the part of the segment where the circle reaches into this column
+            double from = 0;
+            double to = 1;
+            if (dx != 0) {
+                double t1 = (col * cellSize - radius - x) / dx;
+                double t2 = ((col + 1) * cellSize + radius - x) / dx;
+                from = Math.max(from, Math.min(t1, t2));
+                to = Math.min(to, Math.max(t1, t2));
+            }
+            if (from > maxFraction) {
+                return; // the rest of the columns are beyond the closest hit
+            }
+            to = Math.min(to, maxFraction);
+            double y1 = y + from * dy;
+            double y2 = y + to * dy;
+            int firstRow = Math.max(originRow, cellOf(Math.min(y1, y2) - radius));
+            int lastRow = Math.min(originRow + rows - 1, cellOf(Math.max(y1, y2) + radius));
+            for (int row = firstRow; row <= lastRow; row++) {
+                int cell = cellAt(col, row);
+                if (cell >= 0) {
+                    int[] items = cells[cell];
+                    for (int k = 0; k < cellSizes[cell]; k++) {
+                        maxFraction = callback.candidate(items[k], maxFraction);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the cell (column or row) that contains the given coordinate.
+     *
+     * @param v the coordinate
+     * @return the index of the containing cell
+     */
+    private int cellOf(double v) {
+        return (int) Math.floor(v / cellSize);
+    }
+
+    /**
+     * Returns the index of a cell in the cell arrays, or -1 if the cell is outside the grid.
+     *
+     * @param col the column of the cell
+     * @param row the row of the cell
+     * @return the index of the cell, or -1
+     */
+    private int cellAt(int col, int row) {
+        int c = col - originCol;
+        int r = row - originRow;
+        if (c < 0 || r < 0 || c >= cols || r >= rows) {
+            return -1;
+        }
+        return r * cols + c;
+    }
+
+    /**
+     * Returns the entry of an object.
+     *
+     * @param id the id of the object
+     * @return its entry, or null if it's not in the grid
+     */
+    private Entry entryOf(int id) {
+        return id < entries.length ? entries[id] : null;
+    }
+
+    /**
+     * Computes the range of cells covered by the given bounds.
+     *
+     * @param e    the entry to fill
+     * @param minX the left side of the bounds
+     * @param minY the top side of the bounds
+     * @param maxX the right side of the bounds
+     * @param maxY the bottom side of the bounds
+     */
+    private void setCells(Entry e, double minX, double minY, double maxX, double maxY) {
+        e.minCol = cellOf(minX - BUCKET_MARGIN);
+        e.minRow = cellOf(minY - BUCKET_MARGIN);
+        e.maxCol = cellOf(maxX + BUCKET_MARGIN);
+        e.maxRow = cellOf(maxY + BUCKET_MARGIN);
+    }
+
+    /**
+     * Checks whether the cell range of the entry is inside the grid.
+     *
+     * @param e the entry to check
+     * @return true if all of its cells exist
+     */
+    private boolean covers(Entry e) {
+        return cols > 0 && e.minCol >= originCol && e.minRow >= originRow
+                && e.maxCol < originCol + cols && e.maxRow < originRow + rows;
+    }
+
+    /**
+     * Rebuilds the grid so it also covers the given entry, re-bucketing every object already in it.
+     *
+     * @param e the entry that has to fit in the grid
+     */
+    private void grow(Entry e) {
+        int minCol = e.minCol;
+        int minRow = e.minRow;
+        int maxCol = e.maxCol;
+        int maxRow = e.maxRow;
+        if (cols > 0) {
+            minCol = Math.min(minCol, originCol);
+            minRow = Math.min(minRow, originRow);
+            maxCol = Math.max(maxCol, originCol + cols - 1);
+            maxRow = Math.max(maxRow, originRow + rows - 1);
+        }
+        originCol = minCol;
+        originRow = minRow;
+        cols = maxCol - minCol + 1;
+        rows = maxRow - minRow + 1;
+        cells = new int[cols * rows][];
+        cellSizes = new int[cols * rows];
+        for (int id = 0; id < entries.length; id++) {
+            Entry other = entries[id];
+            if (other != null && other != e) {
+                addToCells(id, other);
+            }
+        }
+    }
+
+    /**
+     * Adds the object to every cell of its entry.
+     *
+     * @param id the id of the object
+     * @param e  its cell range
+     */
+    private void addToCells(int id, Entry e) {
+        for (int row = e.minRow; row <= e.maxRow; row++) {
+            for (int col = e.minCol; col <= e.maxCol; col++) {
+                int cell = (row - originRow) * cols + (col - originCol);
+                int[] items = cells[cell];
+                if (items == null) {
+                    items = new int[INITIAL_CELL_CAPACITY];
+                } else if (cellSizes[cell] == items.length) {
+                    items = Arrays.copyOf(items, items.length * 2);
+                }
+                cells[cell] = items;
+                items[cellSizes[cell]++] = id;
+            }
+        }
+    }
+
+    /**
+     * Removes the object from every cell of its entry, keeping the order of the other objects.
+     *
+     * @param id the id of the object
+     * @param e  its cell range
+     */
+    private void removeFromCells(int id, Entry e) {
+        for (int row = e.minRow; row <= e.maxRow; row++) {
+            for (int col = e.minCol; col <= e.maxCol; col++) {
+                int cell = cellAt(col, row);
+                if (cell < 0) {
+                    continue;
+                }
+                int[] items = cells[cell];
+                int size = cellSizes[cell];
+                for (int i = 0; i < size; i++) {
+                    if (items[i] == id) {
+                        System.arraycopy(items, i + 1, items, i, size - i - 1);
+                        cellSizes[cell] = size - 1;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The range of cells an object is bucketed in.
+     */
+    private static final class Entry {
+        private int minCol;
+        private int minRow;
+        private int maxCol;
+        private int maxRow;
+    }
+}
@@ -0,0 +1,287 @@
+// Tamar Rosenzweig
+package game;
+
+import biuoop.KeyboardSensor;
+import collision_detection.Collidable;
+import collision_detection.GameEnvironment;
+import geometry_primitives.Rectangle;
+import geometry_primitives.SweptCircleTest;
+import sprites.Ball;
+import sprites.BallSystem;
+import sprites.Paddle;
+
+import java.util.List;
+
+/**
+ * A keyboard that plays the game by itself - for soak tests and for a demo.
+ * At the beginning of every tick it predicts where the balls will reach the paddle: it casts the circle of a ball
+ * along its velocity through the static collidables of the game environment (the borders and the blocks),
+ * bouncing off every one it touches, until the ball comes down to the top of the paddle. The paddle then goes to
+ * the place of the ball that gets there first.
+ * A full cast takes a few collision queries, so with many balls only the CANDIDATES balls that a cheap estimate
+ * finds most urgent are cast; that keeps a tick well under a millisecond with any number of balls.
+ * The casts only change when a ball bounces, a ball or a block is gone or the ball that was found first gets to
+ * the paddle, so between those the plan of the last cast is kept and a tick only checks the velocities of the balls
+ * (a plan that found no ball is cast again after HORIZON / 2 frames, for the balls that were too far to see).
+ */
+public class AutoPilot implements InputSource {
+    /**
+     * The most bounces a cast follows.
+     */
+    static final int MAX_BOUNCES = 8;
+    /**
+     * How far ahead a cast looks, in frames of 1/60 second.
+     */
+    static final double HORIZON = 600;
+    /**
+     * The number of balls that are cast in a tick.
+     */
+    static final int CANDIDATES = 16;
+    private final Game game;
+    private final SweptCircleTest sweep = new SweptCircleTest(); // reused by all the casts
+    private final double[] estimates = new double[CANDIDATES]; // the most urgent balls, by estimate, sorted
+    private final int[] candidates = new int[CANDIDATES];
+    private int candidateCount;
+    private boolean left;
+    private boolean right;
+    private double predictedX; // where the last cast reached the paddle
+    private double targetX = Double.NaN; // where the paddle goes, NaN if no ball is coming
+    private long planSignature; // the velocities of the balls and the blocks left, when the plan was made
+    private double planLeft = -1; // the frames until the plan is made again anyway
+    private long ticks;
+    private long totalNanos;
+    private long worstNanos;
+    // the ball being cast
+    private double ballX;
+    private double ballY;
+    private double ballDx;
+    private double ballDy;
+    private double ballRadius;
+
+    /**
+     * Constructs an auto pilot of a game. The game gives it to its paddle, see {@link Game#autoPilot()}.
+     *
+     * @param game the game to play
+     */
+    AutoPilot(Game game) {
+        this.game = game;
+    }
+
+    @Override
+    public void beginTick(long tick) {
+        long start = System.nanoTime();
+        Rectangle paddle = game.getPaddle().getCollisionRectangle();
+        double top = paddle.getUpperLeft().getY();
+        double width = paddle.getWidth();
+        long signature = signature();
+        planLeft -= game.tickLength();
+        if (signature != planSignature || planLeft <= 0) {
+            plan(top);
+            planSignature = signature;
+        }
+        steer(paddle.getUpperLeft().getX(), width);
+        long nanos = System.nanoTime() - start;
+        ticks++;
+        totalNanos += nanos;
+        worstNanos = Math.max(worstNanos, nanos);
+    }
+
+    @Override
+    public boolean isPressed(String key) {
+        if (KeyboardSensor.LEFT_KEY.equals(key)) {
+            return left;
+        }
+        if (KeyboardSensor.RIGHT_KEY.equals(key)) {
+            return right;
+        }
+        return false;
+    }
+
+    /**
+     * Returns where the paddle is going - where the first ball to come down will reach it.
+     *
+     * @return the x value the paddle goes to, NaN if no ball is coming
+     */
+    public double getTargetX() {
+        return targetX;
+    }
+
+    /**
+     * Returns the average time a tick took to decide on the keys.
+     *
+     * @return the average time, in nanoseconds
+     */
+    public double getAverageNanos() {
+        return ticks == 0 ? 0 : (double) totalNanos / ticks;
+    }
+
+    /**
+     * Returns the longest time a tick took to decide on the keys.
+     *
+     * @return the longest time, in nanoseconds
+     */
+    public long getWorstNanos() {
+        return worstNanos;
+    }
+
+    /**
+     * Casts the most urgent balls, and sets the target to the place of the one that gets to the paddle first.
+     *
+     * @param top the y value of the top of the paddle
+     */
+    private void plan(double top) {
+        selectCandidates(top);
+        double soonest = Double.POSITIVE_INFINITY;
+        targetX = Double.NaN;
+        for (int k = 0; k < candidateCount; k++) {
+            load(candidates[k]);
+            double time = predict(game.getEnvironment(), top - ballRadius);
+            if (time < soonest) {
+                soonest = time;
+                targetX = predictedX;
+            }
+        }
+        planLeft = Math.min(soonest, HORIZON / 2);
+    }
+
+    /**
+     * Returns a hash of what a plan depends on - the velocities of all the balls, their number and the number of
+     * blocks left. Balls only move in straight lines while it stays the same.
+     *
+     * @return the hash
+     */
+    private long signature() {
+        int count = ballCount();
+        long hash = count * 31L + game.getRemainingBlocks();
+        for (int i = 0; i < count; i++) {
+            load(i);
+            hash = hash * 31 + Double.doubleToLongBits(ballDx);
+            hash = hash * 31 + Double.doubleToLongBits(ballDy);
+        }
+        return hash;
+    }
+
+    /**
+     * Keeps the CANDIDATES balls that seem to come down to the paddle first, by the time it takes their vertical
+     * speed to get there - straight down, or up to the top of the screen and back.
+     *
+     * @param top the y value of the top of the paddle
+     */
+    private void selectCandidates(double top) {
+        candidateCount = 0;
+        int count = ballCount();
+        for (int i = 0; i < count; i++) {
+            load(i);
+            double targetY = top - ballRadius;
+            if (ballDy == 0 || ballY > targetY) {
+                continue; // moves sideways only, or already missed the paddle
+            }
+            double estimate = ballDy > 0 ? (targetY - ballY) / ballDy : (ballY + targetY) / -ballDy;
+            if (candidateCount == CANDIDATES && estimate >= estimates[CANDIDATES - 1]) {
+                continue;
+            }
+            // insert it in order, dropping the last one if the list is full
+            int k = Math.min(candidateCount, CANDIDATES - 1);
+            while (k > 0 && estimates[k - 1] > estimate) {
+                estimates[k] = estimates[k - 1];
+                candidates[k] = candidates[k - 1];
+                k--;
+            }
+            estimates[k] = estimate;
+            candidates[k] = i;
+            candidateCount = Math.min(candidateCount + 1, CANDIDATES);
+        }
+    }
+
+    /**
+     * Casts the loaded ball through the static collidables until its center comes down to the given line.
+     *
+     * @param env     the environment of the game
+     * @param targetY the y value the center of the ball is at when it touches the top of the paddle
+     * @return the time until then, in frames, or infinity if it doesn't get there within HORIZON frames and
+     * MAX_BOUNCES bounces; predictedX is set to the x value it gets there at
+     */
+    private double predict(GameEnvironment env, double targetY) {
+        double x = ballX;
+        double y = ballY;
+        double dx = ballDx;
+        double dy = ballDy;
+        double elapsed = 0;
+        for (int bounce = 0; bounce <= MAX_BOUNCES && elapsed < HORIZON; bounce++) {
+            double span = HORIZON - elapsed;
+            double moveX = dx * span;
+            double moveY = dy * span;
+            Collidable hit = env.getClosestStaticCollidable(x, y, moveX, moveY, ballRadius, sweep);
+            double toi = hit == null ? 1 : sweep.toi();
+            if (dy > 0 && y <= targetY && targetY - y <= moveY * toi) {
+                double t = (targetY - y) / moveY;
+                predictedX = x + moveX * t;
+                return elapsed + t * span;
+            }
+            if (hit == null) {
+                return Double.POSITIVE_INFINITY;
+            }
+            x += moveX * toi;
+            y += moveY * toi;
+            double into = dx * sweep.normalX() + dy * sweep.normalY();
+            if (into < 0) {
+                dx -= 2 * into * sweep.normalX();
+                dy -= 2 * into * sweep.normalY();
+            }
+            elapsed += toi * span;
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Sets the keys that move the paddle toward the target, without running into a border (the paddle jumps to
+     * the other side when it does).
+     *
+     * @param paddleX the x value of the left side of the paddle
+     * @param width   the width of the paddle
+     */
+    private void steer(double paddleX, double width) {
+        double step = Paddle.SPEED * game.tickLength();
+        double goal = Double.isNaN(targetX) ? (Paddle.HIT_LEFT_WALL + Paddle.HIT_RIGHT_WALL) / 2 : targetX;
+        goal = Math.max(goal, Paddle.HIT_LEFT_WALL + step + width / 2);
+        goal = Math.min(goal, Paddle.HIT_RIGHT_WALL - step - width / 2);
+        double center = paddleX + width / 2;
+        left = goal < center - step / 2;
+        right = goal > center + step / 2;
+    }
+
+    /**
+     * Returns the number of balls in the game, the extra balls of multiball included.
+     *
+     * @return the number of balls
+     */
+    private int ballCount() {
+        BallSystem multiball = game.getMultiball(false);
+        return game.getBalls().size() + (multiball == null ? 0 : multiball.size());
+    }
+
+    /**
+     * Loads a ball into the fields of the ball being cast.
+     *
+     * @param i the index of the ball - the Ball sprites first, then the extra balls of multiball
+     */
+    private void load(int i) {
+        List<Ball> balls = game.getBalls();
+        if (i < balls.size()) {
+            Ball ball = balls.get(i);
+            ballX = ball.getX();
+            ballY = ball.getY();
+            ballDx = ball.getVelocity().getDx();
+            ballDy = ball.getVelocity().getDy();
+            ballRadius = ball.getSize();
+            return;
+        }
+        BallSystem multiball = game.getMultiball(false);
+        int j = i - balls.size();
+        ballX = multiball.getX(j);
+        ballY = multiball.getY(j);
+        ballDx = multiball.getDx(j);
+        ballDy = multiball.getDy(j);
+        ballRadius = multiball.getRadius(j);
+    }
+}
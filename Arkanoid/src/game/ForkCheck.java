@@ -0,0 +1,105 @@
+// Tamar Rosenzweig
+package game;
+
+import biuoop.KeyboardSensor;
+
+/**
+ * Checks that a fork of a game goes on exactly as the game does: a scripted game is forked partway through, and
+ * the fork is given the moves the script makes, tick by tick, until the game is over. The score and the blocks
+ * and balls left must be the same after every tick, and in the end the balls and the paddle must be where a new
+ * fork of the game has them. A sibling fork, that goes another way, is run first, so forks that share the level
+ * mustn't change each other.
+ */
+public class ForkCheck {
+    static final long MAX_TICKS = 100000;
+    static final int SIBLING_TICKS = 1000;
+    // the extra balls of every game checked, and the tick to fork it at, before it is over
+    static final int[][] CASES = {{0, 300}, {50, 300}, {2000, 60}};
+
+    /**
+     * Returns the move a keyboard makes in its tick.
+     *
+     * @param keyboard the keyboard
+     * @return LEFT, STAY or RIGHT
+     */
+    private static int move(ScriptedKeyboard keyboard) {
+        if (keyboard.isPressed(KeyboardSensor.LEFT_KEY)) {
+            return GameFork.LEFT;
+        }
+        return keyboard.isPressed(KeyboardSensor.RIGHT_KEY) ? GameFork.RIGHT : GameFork.STAY;
+    }
+
+    /**
+     * Counts the balls that aren't where they are in another fork, or that move another way.
+     *
+     * @param expected the fork the balls should be like
+     * @param actual   the fork checked
+     * @return the number of balls that are different, or -1 if the forks have different numbers of balls
+     */
+    private static int countDifferentBalls(GameFork expected, GameFork actual) {
+        if (expected.size() != actual.size()) {
+            return -1;
+        }
+        int different = 0;
+        for (int i = 0; i < expected.size(); i++) {
+            if (expected.getX(i) != actual.getX(i) || expected.getY(i) != actual.getY(i)
+                    || expected.getDx(i) != actual.getDx(i) || expected.getDy(i) != actual.getDy(i)) {
+                different++;
+            }
+        }
+        return different;
+    }
+
+    /**
+     * Checks a fork of a game with the given number of extra balls.
+     *
+     * @param extraBalls the number of extra balls
+     * @param forkTick   the tick to fork the game at
+     * @return true if the fork went on as the game did
+     */
+    static boolean check(int extraBalls, long forkTick) {
+        Game game = SnapshotCheck.newGame(extraBalls);
+        ScriptedKeyboard moves = ScriptedKeyboard.parse(SnapshotCheck.SCRIPT);
+        while (game.getTicks() < forkTick && game.isRunning()) {
+            game.tick();
+        }
+        GameFork fork = game.fork();
+        fork.fork().run(GameFork.RIGHT, SIBLING_TICKS);
+        long divergedTicks = 0;
+        while (game.getTicks() < MAX_TICKS && game.isRunning()) {
+            moves.beginTick(game.getTicks());
+            game.tick();
+            fork.tick(move(moves));
+            if (game.getScore() != fork.getScore() || game.getRemainingBlocks() != fork.getRemainingBlocks()
+                    || game.getRemainingBalls() != fork.getRemainingBalls()) {
+                divergedTicks++;
+            }
+        }
+        GameFork expected = game.fork();
+        int differentBalls = countDifferentBalls(expected, fork);
+        boolean samePaddle = expected.getPaddleRectangle().getUpperLeft().getX()
+                == fork.getPaddleRectangle().getUpperLeft().getX();
+        boolean passed = divergedTicks == 0 && differentBalls == 0 && samePaddle && !fork.isRunning();
+        System.out.printf("%d extra balls, forked at tick %d, over at tick %d: score %d, blocks left %d; "
+                        + "%d ticks diverged, %d balls different, paddle %s: %s%n", extraBalls, forkTick,
+                game.getTicks(), fork.getScore(), fork.getRemainingBlocks(), divergedTicks, differentBalls,
+                samePaddle ? "same" : "different", passed ? "MATCH" : "MISMATCH");
+        return passed;
+    }
+
+    /**
+     * Runs the checks, and exits with status 1 if any of them failed.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) {
+        boolean passed = true;
+        for (int[] c : CASES) {
+            passed &= check(c[0], c[1]);
+        }
+        System.out.println(passed ? "PASSED" : "FAILED");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+// Tamar Rosenzweig
+package game;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands frame snapshots from the thread that simulates a game to the thread that draws it, without locks and
+ * without either thread ever waiting for the other: a triple buffer. One snapshot is the simulating thread's to
+ * capture into, one is the drawing thread's to draw, and the third is the last one published. Publishing swaps
+ * the captured snapshot with the published one, and taking the latest swaps the drawn snapshot with the published
+ * one - each in one atomic step on the index of the published snapshot, that also says whether it is new.
+ * So the drawing thread always draws the latest whole snapshot, and snapshots it was too slow to draw are
+ * skipped.
+ */
+public final class FrameExchange {
+    private static final int FRESH = 4; // set on the index of the published snapshot until it is taken
+    private final FrameSnapshot[] snapshots = {new FrameSnapshot(), new FrameSnapshot(), new FrameSnapshot()};
+    private final AtomicInteger published = new AtomicInteger(1);
+    private int capturing = 0; // used only by the simulating thread
+    private int drawing = 2; // used only by the drawing thread
+
+    /**
+     * Returns the snapshot to capture the next frame into. Called by the simulating thread only.
+     *
+     * @return the snapshot, that no other thread uses until it is published
+     */
+    public FrameSnapshot next() {
+        return snapshots[capturing];
+    }
+
+    /**
+     * Publishes the snapshot returned by {@link #next()}, that mustn't be changed after it. Called by the
+     * simulating thread only.
+     */
+    public void publish() {
+        capturing = published.getAndSet(capturing | FRESH) & ~FRESH;
+    }
+
+    /**
+     * Returns the latest published snapshot, to draw. It stays the drawing thread's until the next call, and the
+     * same snapshot is returned again if nothing was published since. Called by the drawing thread only.
+     *
+     * @return the snapshot; its tick is -1 if nothing was ever published
+     */
+    public FrameSnapshot latest() {
+        if ((published.get() & FRESH) != 0) {
+            drawing = published.getAndSet(drawing) & ~FRESH;
+        }
+        return snapshots[drawing];
+    }
+}
@@ -0,0 +1,320 @@
+// Tamar Rosenzweig
+package game;
+
+import biuoop.DrawSurface;
+import rendering.LayeredRenderer;
+import rendering.TiledRasterizer;
+import sprites.Ball;
+import sprites.BallSystem;
+import sprites.Block;
+import sprites.Paddle;
+import sprites.ScoreIndicator;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * What a frame of a game shows, in arrays of numbers only: the blocks and the borders, the paddle and the balls
+ * both before and after the last tick (to draw them between the two), and the score. A snapshot is captured by
+ * the thread that simulates the game and drawn by another one, that never touches a sprite - so the two threads
+ * share nothing but snapshots, handed over by a {@link FrameExchange}. A snapshot isn't changed while it is
+ * drawn; it is captured again only after the drawing thread gave it back.
+ * Colors are kept as RGB values, and turned back into colors by the drawing thread.
+ */
+public final class FrameSnapshot {
+    private long tick = -1; // -1 before the first capture
+    private long capturedNanos;
+    private int score;
+    private double paddleX;
+    private double paddlePreviousX;
+    private int paddleY;
+    private int paddleWidth;
+    private int paddleHeight;
+    private int ballCount;
+    private int singleBalls; // the balls before this index are Balls, the rest are the balls of multiball
+    private double[] ballX = new double[0];
+    private double[] ballY = new double[0];
+    private double[] ballPreviousX = new double[0];
+    private double[] ballPreviousY = new double[0];
+    private int[] ballRadius = new int[0];
+    private int[] ballColor = new int[0];
+    private int blockCount; // the borders and the blocks that are left, in the order they are drawn
+    private int[] blocks = new int[0]; // x, y, width, height and color of every block
+
+    /**
+     * Reads what a frame of a game shows.
+     *
+     * @param game  the game, between two ticks
+     * @param nanos the time of the capture, by System.nanoTime()
+     */
+    public void capture(Game game, long nanos) {
+        tick = game.getTicks();
+        capturedNanos = nanos;
+        score = game.getScore();
+        Paddle paddle = game.getPaddle();
+        paddleX = paddle.getCollisionRectangle().getUpperLeft().getX();
+        paddlePreviousX = Double.isNaN(paddle.getPreviousX()) ? paddleX : paddle.getPreviousX();
+        paddleY = (int) paddle.getCollisionRectangle().getUpperLeft().getY();
+        paddleWidth = (int) paddle.getCollisionRectangle().getWidth();
+        paddleHeight = (int) paddle.getCollisionRectangle().getHeight();
+        captureBalls(game);
+        List<Block> borders = game.getBorders();
+        List<Block> levelBlocks = game.getLevelBlocks();
+        int most = (borders.size() + levelBlocks.size()) * 5;
+        if (blocks.length < most) {
+            blocks = new int[most];
+        }
+        blockCount = 0;
+        for (Block border : borders) {
+            addBlock(border);
+        }
+        for (Block block : levelBlocks) {
+            if (game.contains(block)) {
+                addBlock(block);
+            }
+        }
+    }
+
+    /**
+     * Reads the balls of a game, the Balls first and then the balls of multiball.
+     *
+     * @param game the game
+     */
+    private void captureBalls(Game game) {
+        List<Ball> balls = game.getBalls();
+        BallSystem multiball = game.getMultiball(false);
+        singleBalls = balls.size();
+        ballCount = singleBalls + (multiball == null ? 0 : multiball.size());
+        if (ballX.length < ballCount) {
+            int capacity = Math.max(ballCount, ballX.length * 2);
+            ballX = new double[capacity];
+            ballY = new double[capacity];
+            ballPreviousX = new double[capacity];
+            ballPreviousY = new double[capacity];
+            ballRadius = new int[capacity];
+            ballColor = new int[capacity];
+        }
+        for (int i = 0; i < singleBalls; i++) {
+            Ball ball = balls.get(i);
+            ballX[i] = ball.getX();
+            ballY[i] = ball.getY();
+            boolean jumped = Double.isNaN(ball.getPreviousX());
+            ballPreviousX[i] = jumped ? ball.getX() : ball.getPreviousX();
+            ballPreviousY[i] = jumped ? ball.getY() : ball.getPreviousY();
+            ballRadius[i] = ball.getSize();
+            ballColor[i] = ball.getColor().getRGB();
+        }
+        for (int i = singleBalls; i < ballCount; i++) {
+            int j = i - singleBalls;
+            ballX[i] = multiball.getX(j);
+            ballY[i] = multiball.getY(j);
+            ballPreviousX[i] = multiball.getPreviousX(j);
+            ballPreviousY[i] = multiball.getPreviousY(j);
+            ballRadius[i] = (int) multiball.getRadius(j);
+            ballColor[i] = multiball.getColor(j).getRGB();
+        }
+    }
+
+    /**
+     * Adds a block to the blocks of the snapshot.
+     *
+     * @param block the block
+     */
+    private void addBlock(Block block) {
+        int e = blockCount * 5;
+        blocks[e] = (int) block.getRect().getUpperLeft().getX();
+        blocks[e + 1] = (int) block.getRect().getUpperLeft().getY();
+        blocks[e + 2] = (int) block.getRect().getWidth();
+        blocks[e + 3] = (int) block.getRect().getHeight();
+        blocks[e + 4] = block.getRect().getColor().getRGB();
+        blockCount++;
+    }
+
+    /**
+     * Makes the blocks of this snapshot, and its tick, the same as another one's - to remember what a block layer
+     * was drawn from. The balls, the paddle and the score aren't copied.
+     *
+     * @param other the snapshot to copy the blocks of
+     */
+    public void copyBlocksFrom(FrameSnapshot other) {
+        tick = other.tick;
+        blockCount = other.blockCount;
+        if (blocks.length < blockCount * 5) {
+            blocks = new int[other.blocks.length];
+        }
+        System.arraycopy(other.blocks, 0, blocks, 0, blockCount * 5);
+    }
+
+    /**
+     * Checks whether another snapshot has the same blocks and borders as this one, so the same background.
+     *
+     * @param other the other snapshot
+     * @return true if the blocks are the same
+     */
+    public boolean sameBlocks(FrameSnapshot other) {
+        return blockCount == other.blockCount
+                && Arrays.equals(blocks, 0, blockCount * 5, other.blocks, 0, blockCount * 5);
+    }
+
+    /**
+     * Tells a renderer the areas of the blocks that are in this snapshot or in one captured before it, but not in
+     * both - the blocks that were removed, and the ones a new level added. Both snapshots keep their blocks in the
+     * order they are drawn, so they are walked together; a block that doesn't match is taken as changed, so a
+     * change is never missed, at worst an area is drawn again for nothing.
+     *
+     * @param before   the snapshot the renderer's static layer was drawn from
+     * @param renderer the renderer
+     */
+    public void invalidateChangedBlocks(FrameSnapshot before, LayeredRenderer renderer) {
+        int i = 0;
+        int j = 0;
+        while (i < before.blockCount && j < blockCount) {
+            if (Arrays.equals(before.blocks, i * 5, i * 5 + 5, blocks, j * 5, j * 5 + 5)) {
+                j++;
+            } else {
+                invalidateBlock(before.blocks, i, renderer);
+            }
+            i++;
+        }
+        for (; i < before.blockCount; i++) {
+            invalidateBlock(before.blocks, i, renderer);
+        }
+        for (; j < blockCount; j++) {
+            invalidateBlock(blocks, j, renderer);
+        }
+    }
+
+    /**
+     * Tells a renderer the area a block is drawn on, its outline included.
+     *
+     * @param array    the blocks of a snapshot
+     * @param i        the index of the block
+     * @param renderer the renderer
+     */
+    private static void invalidateBlock(int[] array, int i, LayeredRenderer renderer) {
+        int e = i * 5;
+        renderer.invalidate(array[e], array[e + 1], array[e + 2] + 1, array[e + 3] + 1);
+    }
+
+    /**
+     * Returns the tick the snapshot was captured after.
+     *
+     * @return the number of ticks simulated before the capture, -1 if it was never captured
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Returns the time the snapshot was captured at.
+     *
+     * @return the time, by System.nanoTime()
+     */
+    public long getCapturedNanos() {
+        return capturedNanos;
+    }
+
+    /**
+     * Returns the score.
+     *
+     * @return the score
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Returns the number of balls.
+     *
+     * @return the number of balls
+     */
+    public int getBallCount() {
+        return ballCount;
+    }
+
+    /**
+     * Returns the number of balls of multiball.
+     *
+     * @return the number of balls
+     */
+    public int getMultiballCount() {
+        return ballCount - singleBalls;
+    }
+
+    /**
+     * Draws the part of the frame that only changes when a block is hit: the background, the borders and the
+     * blocks.
+     *
+     * @param d      the surface to draw on
+     * @param colors turns an RGB value into its color
+     */
+    public void drawBlocks(DrawSurface d, IntFunction<Color> colors) {
+        d.setColor(Game.BACKGROUND);
+        d.fillRectangle(0, 0, d.getWidth(), d.getHeight());
+        for (int i = 0; i < blockCount; i++) {
+            int e = i * 5;
+            Block.draw(d, blocks[e], blocks[e + 1], blocks[e + 2], blocks[e + 3], colors.apply(blocks[e + 4]));
+        }
+    }
+
+    /**
+     * Draws the part of the frame that moves, over the blocks, in the order a game draws it: the balls, the
+     * paddle, the score and the balls of multiball. When there are at least {@link TiledRasterizer#THRESHOLD}
+     * balls of multiball they are drawn by the rasterizer, into an image drawn on the surface at once, as a
+     * BallSystem draws them.
+     *
+     * @param d          the surface to draw on
+     * @param alpha      the part of the way, from 0 (the tick before the last) to 1 (the last tick)
+     * @param colors     turns an RGB value into its color
+     * @param rasterizer the rasterizer of the balls of multiball, of the size of the surface; null to draw them
+     *                   one by one
+     */
+    public void drawMoving(DrawSurface d, double alpha, IntFunction<Color> colors, TiledRasterizer rasterizer) {
+        for (int i = 0; i < singleBalls; i++) {
+            Ball.draw(d, lerp(ballPreviousX[i], ballX[i], alpha), lerp(ballPreviousY[i], ballY[i], alpha),
+                    ballRadius[i], colors.apply(ballColor[i]));
+        }
+        Paddle.draw(d, lerp(paddlePreviousX, paddleX, alpha), paddleY, paddleWidth, paddleHeight);
+        ScoreIndicator.draw(d, score);
+        if (rasterizer != null && getMultiballCount() >= TiledRasterizer.THRESHOLD) {
+            for (int i = singleBalls; i < ballCount; i++) {
+                rasterizer.addCircle(lerp(ballPreviousX[i], ballX[i], alpha), lerp(ballPreviousY[i], ballY[i], alpha),
+                        ballRadius[i], ballColor[i]);
+            }
+            d.drawImage(0, 0, rasterizer.render());
+            return;
+        }
+        // the balls of multiball are drawn like a BallSystem draws them, all the fills and then all the outlines
+        int current = 0;
+        for (int i = singleBalls; i < ballCount; i++) {
+            if (i == singleBalls || ballColor[i] != current) {
+                current = ballColor[i];
+                d.setColor(colors.apply(current));
+            }
+            d.fillCircle(lerp(ballPreviousX[i], ballX[i], alpha), lerp(ballPreviousY[i], ballY[i], alpha),
+                    ballRadius[i]);
+        }
+        d.setColor(Color.BLACK);
+        for (int i = singleBalls; i < ballCount; i++) {
+            d.drawCircle(lerp(ballPreviousX[i], ballX[i], alpha), lerp(ballPreviousY[i], ballY[i], alpha),
+                    ballRadius[i]);
+        }
+    }
+
+    /**
+     * Returns the pixel part of the way between two values, the way the sprites find where to draw.
+     *
+     * @param before the value before the last tick
+     * @param now    the value now
+     * @param alpha  the part of the way
+     * @return the value to draw at
+     */
+    private static int lerp(double before, double now, double alpha) {
+        if (alpha == 1) {
+            return (int) now;
+        }
+        return (int) (before + (now - before) * alpha);
+    }
+}
@@ -10,16 +10,23 @@ import listeners.ScoreTrackingListener;
 import listeners.Counter;
 import sprites.Sprite;
 import sprites.Ball;
+import sprites.BallSystem;
 import sprites.Block;
 import sprites.SpriteCollection;
 import sprites.Paddle;
 import sprites.ScoreIndicator;
 import collision_detection.GameEnvironment;
 import collision_detection.Collidable;
+import collision_detection.CollisionQuery;
 import biuoop.DrawSurface;
 import biuoop.GUI;
 
 import java.awt.Color;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * The Game class represents the game environment and manages the game objects.
@@ -32,6 +39,26 @@ public class Game {
     private Counter ballCounter;
     private Counter scoreCounter;
     private biuoop.GUI gui;
+    private biuoop.KeyboardSensor keyboard;
+    private InputSource input; // told when every tick begins, null for the plain keyboard of the window
+    private ArrayList<Ball> balls = new ArrayList<>();
+    private CollisionQuery[] queries = new CollisionQuery[0]; // reused every frame
+    private BallSystem multiball; // the extra balls of multiball, all in one sprite
+    private ArrayList<Block> levelBlocks = new ArrayList<>(); // the blocks to hit, in the order they were made
+    private ArrayList<Block> borders = new ArrayList<>();
+    private GameFork.Level forkLevel; // shared by all the forks of the level, made by the first one
+    static final double MULTIBALL_SPEED = 3;
+    static final int LEVEL_BLOCKS = 57;
+    static final int CLEAR_SCORE = 100; // the points for clearing all the blocks
+    static final int FRAMES_PER_SECOND = 60; // the rate the game is drawn at, and the unit of all the speeds
+    static final int DEFAULT_TICKS_PER_SECOND = 120;
+    static final int MAX_TICKS_PER_FRAME = 8; // the most ticks a running game falls behind before it slows down
+    static final long NANOS_PER_SECOND = 1000000000L;
+    static final int WIDTH = 800;
+    static final int HEIGHT = 600;
+    static final Color BACKGROUND = Color.BLUE.darker().darker();
+    private int ticksPerSecond = DEFAULT_TICKS_PER_SECOND;
+    private long ticks; // the ticks simulated so far
 
     /**
      * Constructs a new Game object with the specified arguments.
@@ -54,7 +81,51 @@ public class Game {
     public Game() {
         this.sprites = new SpriteCollection();
         this.environment = new GameEnvironment();
-        this.gui = new GUI("Ha", 800, 600);
+        this.gui = new GUI("Ha", WIDTH, HEIGHT);
+        this.keyboard = gui.getKeyboardSensor();
+    }
+
+    /**
+     * Constructs a headless game - without a window, played by the given input (a script or a replay).
+     * A headless game is simulated with {@link #tick()} and can be drawn with {@link #drawFrame}, but not run
+     * with {@link #run()}, that needs a window.
+     *
+     * @param input the input that moves the paddle
+     */
+    public Game(InputSource input) {
+        this.sprites = new SpriteCollection();
+        this.environment = new GameEnvironment();
+        this.keyboard = input;
+        this.input = input;
+    }
+
+    /**
+     * Starts recording the keys the game is played with, tick by tick. Must be called before
+     * {@link #initialize()}, that gives the keyboard to the paddle.
+     *
+     * @return the log the keys are recorded into
+     */
+    public InputLog recordInput() {
+        if (this.keyboard == null) {
+            this.keyboard = gui.getKeyboardSensor();
+        }
+        RecordingKeyboard recorder = new RecordingKeyboard(this.keyboard);
+        this.keyboard = recorder;
+        this.input = recorder;
+        return recorder.getLog();
+    }
+
+    /**
+     * Lets an AutoPilot play the game instead of the keyboard. Must be called before {@link #initialize()}, that
+     * gives the keyboard to the paddle (and before {@link #recordInput()}, to record what the auto pilot plays).
+     *
+     * @return the auto pilot
+     */
+    public AutoPilot autoPilot() {
+        AutoPilot pilot = new AutoPilot(this);
+        this.keyboard = pilot;
+        this.input = pilot;
+        return pilot;
     }
 
     /**
@@ -66,6 +137,15 @@ public class Game {
         environment.addCollidable(c);
     }
 
+    /**
+     * Adds a Collidable that moves (like the paddle) to the game environment.
+     *
+     * @param c the Collidable to add
+     */
+    public void addDynamicCollidable(Collidable c) {
+        environment.addDynamicCollidable(c);
+    }
+
     /**
      * Adds a Sprite to the game.
      *
@@ -75,29 +155,91 @@ public class Game {
         sprites.addSprite(s);
     }
 
+    /**
+     * Adds a Ball to the game, so its collision queries are answered in the batch of every frame.
+     *
+     * @param b the Ball to add
+     */
+    public void addBall(Ball b) {
+        balls.add(b);
+    }
+
+    /**
+     * Removes a Ball from the game's batch of collision queries.
+     *
+     * @param b the Ball to remove
+     */
+    public void removeBall(Ball b) {
+        balls.remove(b);
+    }
+
+    /**
+     * Answers the collision queries of the next step of all the balls at once, in parallel when there are many.
+     * The balls then move (and hit things) one after another as before, each using its answer if it still holds,
+     * so the game plays the same way no matter how the queries were split between threads.
+     */
+    private void prepareCollisions() {
+        if (queries.length < balls.size()) {
+            queries = new CollisionQuery[balls.size()];
+        }
+        int count = 0;
+        for (Ball b : balls) {
+            CollisionQuery q = b.prepareQuery(tickLength());
+            if (q != null) {
+                queries[count++] = q;
+            }
+        }
+        environment.queryAll(queries, count);
+    }
+
     /**
      * Initializes a new game by creating the blocks, ball, and paddle,
      * and adding them to the game.
      */
     public void initialize() {
+        // balls initializing
+        Ball ball1 = new Ball(new Point(150, 70), 5, Color.WHITE, new Velocity(2, 2));
+        Ball ball2 = new Ball(new Point(100, 200), 5, Color.WHITE, new Velocity(2, 2));
+        Ball ball3 = new Ball(new Point(107, 120), 5, Color.WHITE, new Velocity(2, 2));
+        ball1.setContinuousCollision(true);
+        ball2.setContinuousCollision(true);
+        ball3.setContinuousCollision(true);
+        createLevel(Arrays.asList(ball1, ball2, ball3), LEVEL_BLOCKS, 3, 0);
+    }
+
+    /**
+     * Creates the level from scratch with the given balls - the balls, the borders, the paddle, the blocks and
+     * the score, added in this order (the order the sprites move in) to new sprites and a new environment.
+     *
+     * @param startBalls the balls to start with
+     * @param blocks     the number of blocks left to hit
+     * @param ballsLeft  the number of balls left
+     * @param score      the score
+     */
+    void createLevel(List<Ball> startBalls, int blocks, int ballsLeft, int score) {
+        this.sprites = new SpriteCollection();
+        this.environment = new GameEnvironment();
+        this.balls.clear();
+        this.multiball = null;
+        this.levelBlocks.clear();
+        this.borders.clear();
+        this.forkLevel = null;
         // block listeners and counters
         this.blockCounter = new Counter();
         this.ballCounter = new Counter();
         this.scoreCounter = new Counter();
-        blockCounter.increase(57);
-        ballCounter.increase(3);
+        blockCounter.increase(blocks);
+        ballCounter.increase(ballsLeft);
+        scoreCounter.increase(score);
         BlockRemover blockRemover = new BlockRemover(this, blockCounter);
         BallRemover ballRemover = new BallRemover(this, ballCounter);
         // score tracking stuff
         ScoreTrackingListener scoreTrackingListener = new ScoreTrackingListener(scoreCounter);
         ScoreIndicator scoreIndicator = new ScoreIndicator(scoreCounter);
-        // balls initializing
-        Ball ball1 = new Ball(new Point(150, 70), 5, Color.WHITE, new Velocity(2, 2));
-        Ball ball2 = new Ball(new Point(100, 200), 5, Color.WHITE, new Velocity(2, 2));
-        Ball ball3 = new Ball(new Point(107, 120), 5, Color.WHITE, new Velocity(2, 2));
-        ball1.addToGame(this);
-        ball2.addToGame(this);
-        ball3.addToGame(this);
+        for (Ball ball : startBalls) {
+            ball.addToGame(this);
+            ball.setGameEnvironment(environment);
+        }
         // screen borders
         Rectangle left = new Rectangle(new Point(0, 0), 20, 600, Color.GRAY); // left
         Rectangle right = new Rectangle(new Point(780, 0), 20, 600, Color.GRAY); // right
@@ -111,86 +253,312 @@ public class Game {
         b2.addToGame(this);
         b3.addToGame(this);
         b4.addToGame(this);
+        borders.addAll(Arrays.asList(b1, b2, b3, b4));
         // implementing the ball remover listener
         b4.addHitListener(ballRemover);
         // paddle initializing
-        biuoop.KeyboardSensor keyboard = gui.getKeyboardSensor();
-        this.paddle = new Paddle(keyboard);
+        if (this.keyboard == null) {
+            this.keyboard = gui.getKeyboardSensor();
+        }
+        this.paddle = new Paddle(this.keyboard);
         this.paddle.addToGame(this);
-        int screenWidth = gui.getDrawSurface().getWidth() - 20;
-        for (int i = 12; i >= 1; i--) {
-            Block block = new Block(new Rectangle(new Point(screenWidth - i * 50, 200), 50, 20,
-                    new Color(242, 140, 40)));
-            block.addToGame(this);
-            block.addHitListener(blockRemover);
-            block.addHitListener(scoreTrackingListener);
+        this.paddle.setGameEnvironment(environment);
+        int screenWidth = WIDTH - 20;
+        Color[] rowColors = {new Color(242, 140, 40), new Color(127, 0, 255), new Color(63, 0, 255),
+                new Color(0, 150, 255), new Color(147, 197, 114), new Color(218, 112, 214)};
+        for (int row = 0; row < rowColors.length; row++) {
+            // the top row has 12 blocks, every row below it one less
+            for (int i = 12 - row; i >= 1; i--) {
+                Block block = new Block(new Rectangle(new Point(screenWidth - i * 50, 200 + row * 20), 50, 20,
+                        rowColors[row]));
+                block.addToGame(this);
+                block.addHitListener(blockRemover);
+                block.addHitListener(scoreTrackingListener);
+                levelBlocks.add(block);
+            }
         }
-        for (int i = 11; i >= 1; i--) {
-            Block block = new Block(new Rectangle(new Point(screenWidth - i * 50, 220), 50, 20,
-                    new Color(127, 0, 255)));
-            block.addToGame(this);
-            block.addHitListener(blockRemover);
-            block.addHitListener(scoreTrackingListener);
+        scoreIndicator.addToGame(this);
+    }
+
+    /**
+     * Adds extra balls to an initialized game, launched from above the paddle in a fan of directions.
+     * The extra balls are kept in one BallSystem, so even very many of them move fast.
+     *
+     * @param count the number of balls to add
+     */
+    public void addMultiball(int count) {
+        BallSystem system = getMultiball(true);
+        Rectangle paddleRect = paddle.getCollisionRectangle();
+        double x = paddleRect.getUpperLeft().getX() + paddleRect.getWidth() / 2;
+        double y = paddleRect.getUpperLeft().getY() - 20;
+        for (int i = 0; i < count; i++) {
+            // angles between 200 and 340 degrees point up, the screen's y axis points down
+            double angle = 200 + 140.0 * (i + 0.5) / count;
+            Velocity v = Velocity.fromAngleAndSpeed(angle, MULTIBALL_SPEED);
+            system.add(x, y, 5, Color.WHITE, v.getDx(), v.getDy());
         }
-        for (int i = 10; i >= 1; i--) {
-            Block block = new Block(new Rectangle(new Point(screenWidth - i * 50, 240), 50, 20,
-                    new Color(63, 0, 255)));
-            block.addToGame(this);
-            block.addHitListener(blockRemover);
-            block.addHitListener(scoreTrackingListener);
+        ballCounter.increase(count);
+    }
+
+    /**
+     * Returns the BallSystem of the extra balls of multiball.
+     *
+     * @param create whether to make the BallSystem (and add it to the game) if the game has none
+     * @return the BallSystem, null if the game has none and create is false
+     */
+    BallSystem getMultiball(boolean create) {
+        if (multiball == null && create) {
+            multiball = new BallSystem();
+            multiball.setGameEnvironment(environment);
+            multiball.addToGame(this);
         }
-        for (int i = 9; i >= 1; i--) {
-            Block block = new Block(new Rectangle(new Point(screenWidth - i * 50, 260), 50, 20,
-                    new Color(0, 150, 255)));
-            block.addToGame(this);
-            block.addHitListener(blockRemover);
-            block.addHitListener(scoreTrackingListener);
+        return multiball;
+    }
+
+    /**
+     * Writes the whole state of the game into a new buffer, see {@link GameSnapshot}.
+     *
+     * @return the snapshot, ready to be read
+     */
+    public ByteBuffer snapshot() {
+        ByteBuffer buffer = ByteBuffer.allocate(GameSnapshot.sizeOf(this));
+        GameSnapshot.write(this, buffer);
+        return buffer.flip();
+    }
+
+    /**
+     * Writes the whole state of the game into a buffer, see {@link GameSnapshot}. Reusing one big enough buffer
+     * makes checkpoints without allocating.
+     *
+     * @param buffer the buffer, written from its position on
+     */
+    public void snapshot(ByteBuffer buffer) {
+        GameSnapshot.write(this, buffer);
+    }
+
+    /**
+     * Sets the game to the state of a snapshot, from its position on. The game doesn't have to be initialized.
+     *
+     * @param buffer the snapshot
+     */
+    public void restore(ByteBuffer buffer) {
+        GameSnapshot.read(buffer, this);
+    }
+
+    /**
+     * Forks the current state of the game, to simulate it ahead without changing the game, see {@link GameFork}.
+     * All the forks of the level share its geometry, that is made by the first fork.
+     *
+     * @return the fork
+     */
+    public GameFork fork() {
+        if (forkLevel == null) {
+            forkLevel = new GameFork.Level(borders, levelBlocks);
         }
-        for (int i = 8; i >= 1; i--) {
-            Block block = new Block(new Rectangle(new Point(screenWidth - i * 50, 280), 50, 20,
-                    new Color(147, 197, 114)));
-            block.addToGame(this);
-            block.addHitListener(blockRemover);
-            block.addHitListener(scoreTrackingListener);
+        return new GameFork(forkLevel, this);
+    }
+
+    /**
+     * Returns the balls of the game, in the order they move in (not the extra balls of multiball).
+     *
+     * @return the balls
+     */
+    List<Ball> getBalls() {
+        return balls;
+    }
+
+    /**
+     * Returns all the blocks of the level to hit, the ones that were already hit too, in the order they were
+     * made.
+     *
+     * @return the blocks of the level
+     */
+    List<Block> getLevelBlocks() {
+        return levelBlocks;
+    }
+
+    /**
+     * Returns the borders of the screen.
+     *
+     * @return the borders
+     */
+    List<Block> getBorders() {
+        return borders;
+    }
+
+    /**
+     * Checks whether a collidable is in the game.
+     *
+     * @param c the collidable
+     * @return true if it is in the game environment
+     */
+    boolean contains(Collidable c) {
+        return environment.contains(c);
+    }
+
+    /**
+     * Returns the environment of the game.
+     *
+     * @return the environment
+     */
+    GameEnvironment getEnvironment() {
+        return environment;
+    }
+
+    /**
+     * Returns the paddle.
+     *
+     * @return the paddle
+     */
+    Paddle getPaddle() {
+        return paddle;
+    }
+
+    /**
+     * Sets the number of ticks simulated so far.
+     *
+     * @param ticks the number of ticks
+     */
+    void setTicks(long ticks) {
+        this.ticks = ticks;
+    }
+
+    /**
+     * Sets how many times a second the game is simulated. The game is drawn 60 times a second in any case, and
+     * moves at the same speed - a tick at 120 ticks per second moves everything half as far as a frame.
+     *
+     * @param ticks the number of ticks per second
+     */
+    public void setTicksPerSecond(int ticks) {
+        this.ticksPerSecond = ticks;
+    }
+
+    /**
+     * Returns the time of one tick, in frames of 1/60 second (the unit all the speeds in the game are given in).
+     *
+     * @return the time of a tick
+     */
+    public double tickLength() {
+        return (double) FRAMES_PER_SECOND / ticksPerSecond;
+    }
+
+    /**
+     * Checks whether the game goes on - there are blocks left to hit and balls left to hit them.
+     *
+     * @return true if the game isn't over
+     */
+    public boolean isRunning() {
+        return blockCounter.getValue() > 0 && ballCounter.getValue() > 0;
+    }
+
+    /**
+     * Simulates one tick of the game: every sprite moves by one tick's time.
+     */
+    public void tick() {
+        if (input != null) {
+            input.beginTick(ticks);
         }
-        for (int i = 7; i >= 1; i--) {
-            Block block = new Block(new Rectangle(new Point(screenWidth - i * 50, 300), 50, 20,
-                    new Color(218, 112, 214)));
-            block.addToGame(this);
-            block.addHitListener(blockRemover);
-            block.addHitListener(scoreTrackingListener);
+        boolean blocksLeft = blockCounter.getValue() > 0;
+        environment.refreshDynamic();
+        prepareCollisions();
+        this.sprites.notifyAllTimePassed(tickLength());
+        if (blocksLeft && blockCounter.getValue() == 0) {
+            this.scoreCounter.increase(CLEAR_SCORE);
         }
-        scoreIndicator.addToGame(this);
-        ball1.setGameEnvironment(environment);
-        ball2.setGameEnvironment(environment);
-        ball3.setGameEnvironment(environment);
+        ticks++;
+    }
+
+    /**
+     * Returns the number of ticks simulated so far.
+     *
+     * @return the number of ticks
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Returns the number of ticks in a second of the game.
+     *
+     * @return the ticks per second
+     */
+    public int getTicksPerSecond() {
+        return ticksPerSecond;
+    }
+
+    /**
+     * Draws a frame of the game on the given surface, with the sprites part of the way between the last two ticks.
+     *
+     * @param d     the surface to draw on
+     * @param alpha the part of the way, from 0 (the tick before the last) to 1 (the last tick)
+     */
+    public void drawFrame(DrawSurface d, double alpha) {
+        d.setColor(BACKGROUND); // Set the background color to blue
+        d.fillRectangle(0, 0, d.getWidth(), d.getHeight());
+        this.sprites.drawAllOn(d, alpha);
+    }
+
+    /**
+     * Returns the score so far.
+     *
+     * @return the score
+     */
+    public int getScore() {
+        return scoreCounter.getValue();
+    }
+
+    /**
+     * Returns the number of blocks left to hit.
+     *
+     * @return the number of blocks left
+     */
+    public int getRemainingBlocks() {
+        return blockCounter.getValue();
+    }
+
+    /**
+     * Returns the number of balls left in the game.
+     *
+     * @return the number of balls left
+     */
+    public int getRemainingBalls() {
+        return ballCounter.getValue();
     }
 
     /**
      * Runs the game by starting the animation loop.
+     * The game is simulated in this thread and drawn in another one, a {@link RenderLoop}: after every tick this
+     * thread captures a {@link FrameSnapshot} of what the frame shows and publishes it, and the render loop draws
+     * the latest snapshot 60 times a second. So a slow frame doesn't slow the game, nor a slow tick the frames.
+     * Ticks run on time, by the clock; a tick that is late is made up for by the next ones running at once - up to
+     * MAX_TICKS_PER_FRAME ticks behind, after that the game slows down rather than fall further behind.
      */
     public void run() {
-        biuoop.Sleeper sleeper = new biuoop.Sleeper();
-        int framesPerSecond = 60;
-        int millisecondsPerFrame = 1000 / framesPerSecond;
-        while (blockCounter.getValue() > 0 && ballCounter.getValue() > 0) {
-            long startTime = System.currentTimeMillis(); // timing
-            DrawSurface d = gui.getDrawSurface();
-            Color color = Color.BLUE.darker().darker();
-            d.setColor(color); // Set the background color to blue
-            d.fillRectangle(0, 0, gui.getDrawSurface().getWidth(), gui.getDrawSurface().getHeight());
-            this.sprites.drawAllOn(d);
-            gui.show(d);
-            this.sprites.notifyAllTimePassed();
-            // timing
-            long usedTime = System.currentTimeMillis() - startTime;
-            long milliSecondLeftToSleep = millisecondsPerFrame - usedTime;
-            if (milliSecondLeftToSleep > 0) {
-                sleeper.sleepFor(milliSecondLeftToSleep);
+        long tickNanos = NANOS_PER_SECOND / ticksPerSecond;
+        FrameExchange frames = new FrameExchange();
+        RenderLoop renderLoop = new RenderLoop(gui, frames, tickNanos);
+        Thread renderThread = new Thread(renderLoop, "render");
+        renderThread.setDaemon(true);
+        long next = System.nanoTime();
+        frames.next().capture(this, next);
+        frames.publish();
+        renderThread.start();
+        while (isRunning()) {
+            long now = System.nanoTime();
+            if (now < next) {
+                LockSupport.parkNanos(next - now);
+                continue;
             }
+            tick();
+            frames.next().capture(this, System.nanoTime());
+            frames.publish();
+            next = now - next > MAX_TICKS_PER_FRAME * tickNanos ? now + tickNanos : next + tickNanos;
         }
-        if (blockCounter.getValue() == 0) {
-            this.scoreCounter.increase(100);
+        renderLoop.stop();
+        try {
+            renderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
         gui.close();
     }
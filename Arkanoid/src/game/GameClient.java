@@ -0,0 +1,147 @@
+// Tamar Rosenzweig
+package game;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A client of a {@link GameServer} that only follows the game - a stand-in for a real client, for testing the
+ * server. It reads the packets of the server (a varint length, then a {@link SyncState} delta) on a blocking
+ * channel, applies them to its own state, and counts the bytes it got, until the server closes the connection.
+ */
+public class GameClient implements Runnable, Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private final SocketChannel channel;
+    private final SyncState state = new SyncState();
+    private final ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+    private final long connectedNanos;
+    private volatile long bytes;
+    private volatile long packets;
+    private volatile long endNanos;
+    private volatile Exception error;
+
+    /**
+     * Connects to a server on this machine.
+     *
+     * @param port the port of the server
+     * @throws IOException if connecting fails
+     */
+    public GameClient(int port) throws IOException {
+        this.channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        this.connectedNanos = System.nanoTime();
+    }
+
+    /**
+     * Reads and applies packets until the server closes the connection, or the client is closed.
+     */
+    @Override
+    public void run() {
+        try {
+            while (channel.read(in) >= 0) {
+                in.flip();
+                readPackets();
+                in.compact();
+                if (!in.hasRemaining()) {
+                    throw new IOException("a packet larger than " + BUFFER_SIZE + " bytes");
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            if (channel.isOpen()) {
+                error = e;
+            }
+        } finally {
+            endNanos = System.nanoTime();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // it is closed anyway
+            }
+        }
+    }
+
+    /**
+     * Applies all the whole packets in the buffer, leaving the position at the start of the first one that isn't
+     * whole yet.
+     */
+    private void readPackets() {
+        while (true) {
+            int start = in.position();
+            int length = 0;
+            int shift = 0;
+            boolean whole = false;
+            while (in.hasRemaining() && shift < 35) {
+                int b = in.get();
+                length |= (b & 0x7F) << shift;
+                shift += 7;
+                if ((b & 0x80) == 0) {
+                    whole = true;
+                    break;
+                }
+            }
+            if (!whole || in.remaining() < length) {
+                in.position(start);
+                return;
+            }
+            ByteBuffer packet = in.slice().limit(length);
+            state.applyDelta(packet);
+            in.position(in.position() + length);
+            bytes += in.position() - start;
+            packets++;
+        }
+    }
+
+    /**
+     * Returns the state of the game, as far as the client got. It may only be read after {@link #run()} ended.
+     *
+     * @return the state
+     */
+    public SyncState getState() {
+        return state;
+    }
+
+    /**
+     * Returns the number of bytes of the packets the client got.
+     *
+     * @return the number of bytes
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the number of packets the client got.
+     *
+     * @return the number of packets
+     */
+    public long getPackets() {
+        return packets;
+    }
+
+    /**
+     * Returns the bytes a second the client got, from when it connected until now or until it ended.
+     *
+     * @return the bytes a second
+     */
+    public double getBytesPerSecond() {
+        long end = endNanos == 0 ? System.nanoTime() : endNanos;
+        return bytes / ((end - connectedNanos) / (double) Game.NANOS_PER_SECOND);
+    }
+
+    /**
+     * Returns what ended the client, if it wasn't the server closing the connection.
+     *
+     * @return the exception, null if the client ended normally
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,480 @@
+// Tamar Rosenzweig
+package game;
+
+import collision_detection.CollisionInfo;
+import collision_detection.CollisionQuery;
+import collision_detection.LevelGeometry;
+import geometry_primitives.Rectangle;
+import geometry_primitives.Velocity;
+import listeners.HitEffects;
+import sprites.Ball;
+import sprites.BallSystem;
+import sprites.Block;
+import sprites.Paddle;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A copy of the state of a game that can be simulated ahead on its own, and forked again - for searching the
+ * moves of the paddle. A fork doesn't copy the level: all the forks of a game share one {@link Level}, the
+ * borders and blocks in a {@link LevelGeometry} that never changes, and a fork keeps only what a tick changes -
+ * the balls (in plain arrays), the paddle, the counters and a mask of the blocks that were hit.
+ * The mask is copied on write: a fork shares its parent's mask until one of them hits a block.
+ * A fork plays by the rules of the game - the same collision queries, bounces, paddle regions, scores and ball
+ * colors, in the same order - so simulating a fork with the moves the game gets gives the very same game. What a
+ * hit on a block does is what the block's hit listeners describe, and a block is hit by the balls of other colors
+ * only, as {@link Block#colorMatch} says.
+ * Forks of one game can be simulated on different threads.
+ */
+public class GameFork {
+    /**
+     * A move of the paddle to the left, for a tick.
+     */
+    public static final int LEFT = -1;
+    /**
+     * No move of the paddle, for a tick.
+     */
+    public static final int STAY = 0;
+    /**
+     * A move of the paddle to the right, for a tick.
+     */
+    public static final int RIGHT = 1;
+    private final Level level;
+    private long[] removed; // a bit for every id of the level, set for the blocks that were hit
+    private boolean removedShared; // whether another fork uses the same mask, so it must be copied before a write
+    private double[] x;
+    private double[] y;
+    private double[] dx;
+    private double[] dy;
+    private double[] radius;
+    private int[] color; // RGB
+    private boolean[] dead; // the balls that fell during this tick, dropped when it ends
+    private int count;
+    private int firstExtra; // the balls before it move before the paddle (the Ball sprites), the rest after it
+    private final Paddle paddle;
+    private final double[] paddleEdges = new double[4];
+    private final double dt;
+    private int score;
+    private int blocksLeft;
+    private int ballsLeft;
+    private long ticks;
+    private final CollisionQuery query = new CollisionQuery();
+    private final Velocity velocity = new Velocity(0, 0);
+    private Ball hitter; // the ball the paddle is told hit it, made the first time the paddle is hit
+
+    /**
+     * Constructs a fork of the current state of a game.
+     *
+     * @param level the level of the game
+     * @param game  the game, between two ticks
+     */
+    GameFork(Level level, Game game) {
+        this.level = level;
+        this.removed = new long[level.geometry.maskLength()];
+        List<Block> blocks = game.getLevelBlocks();
+        for (int k = 0; k < blocks.size(); k++) {
+            if (!game.contains(blocks.get(k))) {
+                int id = level.firstBrick + k;
+                removed[id / Long.SIZE] |= 1L << (id % Long.SIZE);
+            }
+        }
+        List<Ball> balls = game.getBalls();
+        BallSystem multiball = game.getMultiball(false);
+        int extra = multiball == null ? 0 : multiball.size();
+        allocate(balls.size() + extra);
+        for (Ball ball : balls) {
+            Velocity v = ball.getVelocity();
+            put(ball.getX(), ball.getY(), v.getDx(), v.getDy(), ball.getSize(), ball.getColor().getRGB());
+        }
+        firstExtra = count;
+        for (int i = 0; i < extra; i++) {
+            put(multiball.getX(i), multiball.getY(i), multiball.getDx(i), multiball.getDy(i),
+                    multiball.getRadius(i), multiball.getColor(i).getRGB());
+        }
+        this.paddle = new Paddle(game.getPaddle());
+        readPaddle();
+        this.dt = game.tickLength();
+        this.score = game.getScore();
+        this.blocksLeft = game.getRemainingBlocks();
+        this.ballsLeft = game.getRemainingBalls();
+        this.ticks = game.getTicks();
+    }
+
+    /**
+     * Constructs a fork of another fork.
+     *
+     * @param other the fork to copy
+     */
+    private GameFork(GameFork other) {
+        this.level = other.level;
+        this.removed = other.removed;
+        this.removedShared = true;
+        other.removedShared = true;
+        this.count = other.count;
+        this.firstExtra = other.firstExtra;
+        this.x = Arrays.copyOf(other.x, count);
+        this.y = Arrays.copyOf(other.y, count);
+        this.dx = Arrays.copyOf(other.dx, count);
+        this.dy = Arrays.copyOf(other.dy, count);
+        this.radius = Arrays.copyOf(other.radius, count);
+        this.color = Arrays.copyOf(other.color, count);
+        this.dead = new boolean[count];
+        this.paddle = new Paddle(other.paddle);
+        System.arraycopy(other.paddleEdges, 0, paddleEdges, 0, paddleEdges.length);
+        this.dt = other.dt;
+        this.score = other.score;
+        this.blocksLeft = other.blocksLeft;
+        this.ballsLeft = other.ballsLeft;
+        this.ticks = other.ticks;
+    }
+
+    /**
+     * Forks this fork: the new fork starts in the same state, and the two go on on their own.
+     *
+     * @return the new fork
+     */
+    public GameFork fork() {
+        return new GameFork(this);
+    }
+
+    /**
+     * Simulates one tick, as the game does: the balls move, then the paddle (by the given move), then the extra
+     * balls of multiball.
+     *
+     * @param move LEFT, STAY or RIGHT
+     */
+    public void tick(int move) {
+        boolean hadBlocks = blocksLeft > 0;
+        for (int i = 0; i < firstExtra; i++) {
+            step(i);
+        }
+        if (move == LEFT) {
+            paddle.moveLeft(dt);
+            readPaddle();
+        } else if (move == RIGHT) {
+            paddle.moveRight(dt);
+            readPaddle();
+        }
+        for (int i = firstExtra; i < count; i++) {
+            step(i);
+        }
+        dropDead();
+        if (hadBlocks && blocksLeft == 0) {
+            score += Game.CLEAR_SCORE;
+        }
+        ticks++;
+    }
+
+    /**
+     * Simulates ticks with the same move, until the game is over or the ticks are done.
+     *
+     * @param move  LEFT, STAY or RIGHT
+     * @param count the most ticks to simulate
+     * @return the number of ticks simulated
+     */
+    public int run(int move, int count) {
+        int ran = 0;
+        while (ran < count && isRunning()) {
+            tick(move);
+            ran++;
+        }
+        return ran;
+    }
+
+    /**
+     * Checks whether the game goes on - there are blocks left to hit and balls left to hit them.
+     *
+     * @return true if the game isn't over
+     */
+    public boolean isRunning() {
+        return blocksLeft > 0 && ballsLeft > 0;
+    }
+
+    /**
+     * Returns the score so far.
+     *
+     * @return the score
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Returns the number of blocks left to hit.
+     *
+     * @return the number of blocks left
+     */
+    public int getRemainingBlocks() {
+        return blocksLeft;
+    }
+
+    /**
+     * Returns the number of balls left in the game.
+     *
+     * @return the number of balls left
+     */
+    public int getRemainingBalls() {
+        return ballsLeft;
+    }
+
+    /**
+     * Returns the number of ticks simulated so far, from the start of the game.
+     *
+     * @return the number of ticks
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Returns the number of balls in the fork, the extra balls of multiball included.
+     *
+     * @return the number of balls
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the x value of the center of a ball.
+     *
+     * @param i the index of the ball
+     * @return the x value of its center
+     */
+    public double getX(int i) {
+        return x[i];
+    }
+
+    /**
+     * Returns the y value of the center of a ball.
+     *
+     * @param i the index of the ball
+     * @return the y value of its center
+     */
+    public double getY(int i) {
+        return y[i];
+    }
+
+    /**
+     * Returns the change in x of a ball in a frame.
+     *
+     * @param i the index of the ball
+     * @return the change in x
+     */
+    public double getDx(int i) {
+        return dx[i];
+    }
+
+    /**
+     * Returns the change in y of a ball in a frame.
+     *
+     * @param i the index of the ball
+     * @return the change in y
+     */
+    public double getDy(int i) {
+        return dy[i];
+    }
+
+    /**
+     * Returns the rectangle of the paddle.
+     *
+     * @return a new rectangle of the paddle
+     */
+    public Rectangle getPaddleRectangle() {
+        return paddle.getCollisionRectangle();
+    }
+
+    /**
+     * Moves a ball one step of a tick, sweeping it through the level as a Ball with continuous collision does,
+     * and applies what its hits on blocks of other colors do, as the hit listeners of the blocks describe it.
+     *
+     * @param i the index of the ball
+     */
+    private void step(int i) {
+        double remaining = dt; // the part of the step that is left, in frames
+        for (int bounce = 0; bounce < Ball.MAX_BOUNCES && remaining > 0; bounce++) {
+            double stepX = dx[i] * remaining;
+            double stepY = dy[i] * remaining;
+            query.set(x[i], y[i], stepX, stepY, radius[i]);
+            int id = level.geometry.query(query, removed, paddle, paddleEdges);
+            if (id == LevelGeometry.NONE) {
+                x[i] += stepX;
+                y[i] += stepY;
+                return;
+            }
+            CollisionInfo collision = query.info();
+            double toi = collision.toi();
+            double part = Math.max(0, toi - Ball.SKIN / Math.sqrt(stepX * stepX + stepY * stepY));
+            x[i] += stepX * part;
+            y[i] += stepY * part;
+            velocity.setDx(dx[i]);
+            velocity.setDy(dy[i]);
+            Velocity v;
+            if (id == LevelGeometry.DYNAMIC) {
+                v = paddle.hit(hitter(i), collision, velocity);
+            } else {
+                v = collision.reflect(velocity);
+                if (!level.blocks[id].colorMatch(color[i])) {
+                    applyHit(i, id);
+                }
+            }
+            // the collidable decides how the ball bounces, but it must not send the ball into it
+            if (v.getDx() * collision.normalX() + v.getDy() * collision.normalY() < 0) {
+                v = collision.reflect(v);
+            }
+            dx[i] = v.getDx();
+            dy[i] = v.getDy();
+            remaining *= 1 - part; // as a Ball does, the skin is moved after the bounce
+            if (dead[i]) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns a ball with the position and velocity of a ball of the fork, to tell the paddle what hit it.
+     *
+     * @param i the index of the ball
+     * @return the ball, the same one every time
+     */
+    private Ball hitter(int i) {
+        if (hitter == null) {
+            hitter = new Ball(0, 0, 1, Color.WHITE);
+        }
+        hitter.setX(x[i]);
+        hitter.setY(y[i]);
+        hitter.setVelocity(dx[i], dy[i]);
+        return hitter;
+    }
+
+    /**
+     * Applies what a hit on a block does, by its hit listeners: removing the block (copying the mask first if
+     * another fork shares it) and coloring the ball, dropping the ball, and scoring.
+     *
+     * @param i  the index of the ball
+     * @param id the id of the block
+     */
+    private void applyHit(int i, int id) {
+        HitEffects effects = level.effects[id];
+        if (effects.removesBlock()) {
+            if (removedShared) {
+                removed = removed.clone();
+                removedShared = false;
+            }
+            removed[id / Long.SIZE] |= 1L << (id % Long.SIZE);
+            blocksLeft--;
+            color[i] = level.colors[id];
+        }
+        if (effects.dropsBall()) {
+            dead[i] = true;
+            ballsLeft--;
+        }
+        score += effects.getScore();
+    }
+
+    /**
+     * Drops the balls that fell in this tick, keeping the order of the others.
+     */
+    private void dropDead() {
+        int j = 0;
+        int extraStart = firstExtra;
+        for (int i = 0; i < count; i++) {
+            if (dead[i]) {
+                if (i < extraStart) {
+                    firstExtra--;
+                }
+                dead[i] = false;
+                continue;
+            }
+            x[j] = x[i];
+            y[j] = y[i];
+            dx[j] = dx[i];
+            dy[j] = dy[i];
+            radius[j] = radius[i];
+            color[j] = color[i];
+            j++;
+        }
+        count = j;
+    }
+
+    /**
+     * Reads the edges of the paddle, after it moved.
+     */
+    private void readPaddle() {
+        Rectangle rect = paddle.getCollisionRectangle();
+        paddleEdges[0] = rect.getUpperLeft().getX();
+        paddleEdges[1] = rect.getUpperLeft().getY();
+        paddleEdges[2] = rect.getUpperLeft().getX() + rect.getWidth();
+        paddleEdges[3] = rect.getUpperLeft().getY() + rect.getHeight();
+    }
+
+    /**
+     * Makes the ball arrays.
+     *
+     * @param capacity the number of balls
+     */
+    private void allocate(int capacity) {
+        x = new double[capacity];
+        y = new double[capacity];
+        dx = new double[capacity];
+        dy = new double[capacity];
+        radius = new double[capacity];
+        color = new int[capacity];
+        dead = new boolean[capacity];
+    }
+
+    /**
+     * Adds a ball at the end of the arrays.
+     *
+     * @param bx  the x value of the center
+     * @param by  the y value of the center
+     * @param bdx the change in x in a frame
+     * @param bdy the change in y in a frame
+     * @param r   the radius
+     * @param rgb the color
+     */
+    private void put(double bx, double by, double bdx, double bdy, double r, int rgb) {
+        x[count] = bx;
+        y[count] = by;
+        dx[count] = bdx;
+        dy[count] = bdy;
+        radius[count] = r;
+        color[count] = rgb;
+        count++;
+    }
+
+    /**
+     * The part of a level that all the forks of a game share, and that never changes: the geometry of the borders
+     * and blocks, and what a hit on each of them does, as described by its hit listeners when the level is made
+     * (a block that was already removed has lost its listeners, but no fork can hit it).
+     */
+    static final class Level {
+        private final LevelGeometry geometry;
+        private final Block[] blocks; // by id
+        private final HitEffects[] effects; // by id
+        private final int[] colors; // by id, RGB
+        private final int firstBrick; // the id of the first block to hit, the ids of the blocks follow it in order
+
+        /**
+         * Constructs the level of a game.
+         *
+         * @param borders the borders, in the order they were added to the game
+         * @param bricks  the blocks to hit, in the order they were added to the game
+         */
+        Level(List<Block> borders, List<Block> bricks) {
+            this.blocks = new Block[borders.size() + bricks.size()];
+            this.effects = new HitEffects[blocks.length];
+            this.colors = new int[blocks.length];
+            this.firstBrick = borders.size();
+            for (int id = 0; id < blocks.length; id++) {
+                blocks[id] = id < firstBrick ? borders.get(id) : bricks.get(id - firstBrick);
+                effects[id] = new HitEffects();
+                blocks[id].describeHit(effects[id]);
+                colors[id] = blocks[id].getRect().getColor().getRGB();
+            }
+            this.geometry = new LevelGeometry(Arrays.asList(blocks));
+        }
+    }
+}
@@ -0,0 +1,399 @@
+// Tamar Rosenzweig
+package game;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Runs a game and sends its state to the clients connected on this machine, as it runs - the game runs only here,
+ * and the clients show what they are sent. After every tick the server sends one packet: a varint length and a
+ * {@link SyncState} delta, with only what changed in the tick (the balls that moved, the blocks that were hit, the
+ * change of the score). The delta is made once and the same bytes go to every client; a client that just connected
+ * is sent the delta from an empty state instead, which is the whole state.
+ * One thread does it all, with non-blocking channels and a selector: it runs the ticks on time, accepts clients and
+ * writes to them. A write that doesn't go through at once waits in the client's buffer, and a client so slow that
+ * its buffer fills is disconnected.
+ */
+public class GameServer implements Closeable {
+    /**
+     * The most bytes waiting to be sent to a client before it is disconnected.
+     */
+    static final int MAX_PENDING = 64 * 1024;
+    private static final int READ_BUFFER_SIZE = 256;
+    private static final int BACKLOG = 1024; // clients waiting to be accepted
+    private static final int DEFAULT_CLIENTS = 100;
+    private static final int DEFAULT_SECONDS = 10;
+    private static final long MAX_BEHIND_NANOS = Game.NANOS_PER_SECOND / 4; // more than that is skipped
+    private final Game game;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final List<Client> clients = new ArrayList<>();
+    private final SyncState empty = new SyncState();
+    private final SyncState sent = new SyncState();
+    private final SyncState current = new SyncState();
+    private final ByteBuffer discard = ByteBuffer.allocate(READ_BUFFER_SIZE); // what clients send is ignored
+    private ByteBuffer delta = ByteBuffer.allocate(0);
+    private ByteBuffer whole = ByteBuffer.allocate(0);
+    private volatile boolean running;
+    private long bytesSent;
+    private long packets;
+    private int dropped;
+
+    /**
+     * Constructs a server of a game, listening on this machine.
+     *
+     * @param game the game, initialized and headless
+     * @param port the port to listen on, 0 for any free port
+     * @throws IOException if listening fails
+     */
+    public GameServer(Game game, int port) throws IOException {
+        this.game = game;
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        sent.capture(game);
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Runs the game on time and serves the clients, until the game is over or {@link #stop()} is called.
+     *
+     * @throws IOException if the selector fails
+     */
+    public void run() throws IOException {
+        running = true;
+        long period = Game.NANOS_PER_SECOND / game.getTicksPerSecond();
+        long next = System.nanoTime();
+        while (running && game.isRunning()) {
+            long now = System.nanoTime();
+            if (now >= next) {
+                game.tick();
+                broadcast();
+                next = now - next > MAX_BEHIND_NANOS ? now + period : next + period;
+            }
+            long wait = (next - System.nanoTime()) / (Game.NANOS_PER_SECOND / 1000);
+            if (wait > 0) {
+                selector.select(wait);
+            } else {
+                selector.selectNow();
+            }
+            serve();
+        }
+        running = false;
+    }
+
+    /**
+     * Makes {@link #run()} return. May be called from any thread.
+     */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Returns the state the clients were sent last. It may only be read when the server doesn't run.
+     *
+     * @return the state
+     */
+    public SyncState getSentState() {
+        return sent;
+    }
+
+    /**
+     * Returns the number of bytes sent to all the clients.
+     *
+     * @return the number of bytes
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * Returns the number of packets sent to all the clients.
+     *
+     * @return the number of packets
+     */
+    public long getPackets() {
+        return packets;
+    }
+
+    /**
+     * Returns the number of clients that were disconnected for being too slow.
+     *
+     * @return the number of clients
+     */
+    public int getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Sends the delta of the last tick to every client, and the whole state to the new ones.
+     */
+    private void broadcast() {
+        current.capture(game);
+        boolean anyNew = false;
+        boolean anySynced = false;
+        for (Client client : clients) {
+            anyNew |= !client.synced;
+            anySynced |= client.synced;
+        }
+        if (anySynced) {
+            delta = frame(sent, delta);
+        }
+        if (anyNew) {
+            whole = frame(empty, whole);
+        }
+        sent.copyFrom(current);
+        for (Iterator<Client> it = clients.iterator(); it.hasNext();) {
+            Client client = it.next();
+            ByteBuffer packet = client.synced ? delta : whole;
+            if (client.out.remaining() < packet.remaining()) {
+                dropped++;
+                disconnect(client);
+                it.remove();
+                continue;
+            }
+            client.out.put(packet.duplicate());
+            client.synced = true;
+            bytesSent += packet.remaining();
+            packets++;
+            if (!flush(client)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Writes the packet of the delta from a state to the current state.
+     *
+     * @param from   the state the clients have
+     * @param buffer the buffer to write into, if it is large enough
+     * @return the packet, ready to be read
+     */
+    private ByteBuffer frame(SyncState from, ByteBuffer buffer) {
+        int max = SyncState.maxDeltaSize(current) + Integer.BYTES + 1;
+        ByteBuffer packet = buffer.capacity() < max ? ByteBuffer.allocate(Math.max(max, buffer.capacity() * 2))
+                : buffer.clear();
+        packet.position(Integer.BYTES + 1); // room for the length
+        SyncState.writeDelta(from, current, packet);
+        int length = packet.position() - Integer.BYTES - 1;
+        int lengthBytes = 1;
+        for (int v = length >>> 7; v != 0; v >>>= 7) {
+            lengthBytes++;
+        }
+        int start = Integer.BYTES + 1 - lengthBytes;
+        packet.flip().position(start);
+        SyncState.putVarint(packet, length);
+        return packet.position(start);
+    }
+
+    /**
+     * Accepts new clients, finishes waiting writes, and closes the clients that left.
+     *
+     * @throws IOException if accepting fails
+     */
+    private void serve() throws IOException {
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            if (!key.isValid()) {
+                continue;
+            }
+            if (key.isAcceptable()) {
+                SocketChannel channel = server.accept();
+                if (channel != null) {
+                    channel.configureBlocking(false);
+                    Client client = new Client(channel);
+                    client.key = channel.register(selector, SelectionKey.OP_READ, client);
+                    clients.add(client);
+                }
+                continue;
+            }
+            Client client = (Client) key.attachment();
+            if (key.isReadable() && !drain(client)) {
+                clients.remove(client);
+                continue;
+            }
+            if (key.isValid() && key.isWritable() && !flush(client)) {
+                clients.remove(client);
+            }
+        }
+    }
+
+    /**
+     * Reads what a client sent, and ignores it - to find out that the client left.
+     *
+     * @param client the client
+     * @return false if the client left, and was closed
+     */
+    private boolean drain(Client client) {
+        try {
+            discard.clear();
+            if (client.channel.read(discard) >= 0) {
+                return true;
+            }
+        } catch (IOException e) {
+            // the client is gone
+        }
+        disconnect(client);
+        return false;
+    }
+
+    /**
+     * Writes as much as the channel takes of what waits to be sent to a client, and asks the selector to tell when
+     * it takes more if something is left.
+     *
+     * @param client the client
+     * @return false if the client left, and was closed
+     */
+    private boolean flush(Client client) {
+        try {
+            client.out.flip();
+            client.channel.write(client.out);
+            boolean left = client.out.hasRemaining();
+            client.out.compact();
+            client.key.interestOps(left ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+            return true;
+        } catch (IOException e) {
+            disconnect(client);
+            return false;
+        }
+    }
+
+    /**
+     * Closes the connection of a client.
+     *
+     * @param client the client
+     */
+    private void disconnect(Client client) {
+        client.key.cancel();
+        try {
+            client.channel.close();
+        } catch (IOException e) {
+            // it is closed anyway
+        }
+    }
+
+    /**
+     * Closes the connections of all the clients, and stops listening.
+     *
+     * @throws IOException if closing fails
+     */
+    @Override
+    public void close() throws IOException {
+        for (Client client : clients) {
+            client.channel.close();
+        }
+        clients.clear();
+        server.close();
+        selector.close();
+    }
+
+    /**
+     * Serves a game played by an auto pilot to clients that only follow it, for a while, and prints what they got.
+     * The arguments are optional: the number of clients and the seconds to run.
+     *
+     * @param args the clients and the seconds
+     * @throws IOException          if the server or a client fails
+     * @throws InterruptedException if the thread is interrupted while waiting for the clients
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int count = DEFAULT_CLIENTS;
+        int seconds = DEFAULT_SECONDS;
+        try {
+            count = args.length > 0 ? Integer.parseInt(args[0]) : count;
+            seconds = args.length > 1 ? Integer.parseInt(args[1]) : seconds;
+        } catch (NumberFormatException e) {
+            System.out.println("Command line argument isn't valid, using the defaults.");
+        }
+        Game game = new Game((InputSource) null);
+        game.autoPilot();
+        game.initialize();
+        GameServer gameServer = new GameServer(game, 0);
+        List<GameClient> followers = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            GameClient client = new GameClient(gameServer.getPort());
+            Thread thread = new Thread(client, "game-client-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            followers.add(client);
+            threads.add(thread);
+        }
+        long runMillis = seconds * 1000L;
+        Thread stopper = new Thread(() -> {
+            try {
+                Thread.sleep(runMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            gameServer.stop();
+        });
+        stopper.setDaemon(true);
+        stopper.start();
+        long start = System.nanoTime();
+        gameServer.run();
+        double elapsed = (System.nanoTime() - start) / (double) Game.NANOS_PER_SECOND;
+        gameServer.close();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        int same = 0;
+        double most = 0;
+        double total = 0;
+        for (GameClient client : followers) {
+            same += client.getState().sameAs(gameServer.getSentState()) ? 1 : 0;
+            most = Math.max(most, client.getBytesPerSecond());
+            total += client.getBytesPerSecond();
+            if (client.getError() != null) {
+                System.out.println("a client failed: " + client.getError());
+            }
+        }
+        SyncState last = gameServer.getSentState();
+        System.out.printf("%d ticks in %.1f seconds, %d packets, %d bytes sent, %d clients dropped%n", last.getTick(),
+                elapsed, gameServer.getPackets(), gameServer.getBytesSent(), gameServer.getDropped());
+        System.out.printf("%d of %d clients have the state of the server (score %d, %d balls)%n", same, count,
+                last.getScore(), last.getBallCount());
+        System.out.printf("bytes a second a client: %.0f on average, %.0f at most%n", total / count, most);
+    }
+
+    /**
+     * A connected client: its channel, and the bytes that wait to be sent to it.
+     */
+    private static final class Client {
+        private final SocketChannel channel;
+        private final ByteBuffer out = ByteBuffer.allocate(MAX_PENDING);
+        private SelectionKey key;
+        private boolean synced; // whether it was sent the whole state already
+
+        /**
+         * Constructs a client of a channel.
+         *
+         * @param channel the channel
+         */
+        private Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+// Tamar Rosenzweig
+package game;
+
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * One game hosted by a {@link SessionManager}. The manager runs the ticks of the session on its worker threads,
+ * one tick at a time: the next tick of a session never starts before the last one ended, so the game itself needs
+ * no locks. Everything a session changes is its own - its game, its input and its statistics - so sessions on
+ * different threads share nothing but the constants of the game.
+ * A session keeps statistics of its ticks: how long a tick took to run, and how late it started - how long after
+ * the time it was due at, by the ticks per second of the game.
+ */
+public final class GameSession {
+    private static final double MAX_TICK_MICROS = 1000;
+    private static final double MAX_LATE_MICROS = 10000;
+    private static final int BINS = 100;
+    private static final double NANOS_PER_MICRO = 1000;
+    private final int id;
+    private final Game game;
+    private final long periodNanos;
+    private final Histogram tickMicros = new Histogram(0, MAX_TICK_MICROS, BINS);
+    private final Histogram lateMicros = new Histogram(0, MAX_LATE_MICROS, BINS);
+    private long startNanos;
+    private long ticks;
+    private volatile boolean closed;
+    private volatile RuntimeException failure; // what ended the session, if a tick threw
+    private volatile ScheduledFuture<?> future;
+
+    /**
+     * Constructs a session of a game.
+     *
+     * @param id   the number of the session in its manager
+     * @param game the game, initialized and headless
+     */
+    GameSession(int id, Game game) {
+        this.id = id;
+        this.game = game;
+        this.periodNanos = Game.NANOS_PER_SECOND / game.getTicksPerSecond();
+    }
+
+    /**
+     * Returns the number of the session in its manager.
+     *
+     * @return the id
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns the game of the session. It may only be used by the ticks of the session, or after the session
+     * ended.
+     *
+     * @return the game
+     */
+    public Game getGame() {
+        return game;
+    }
+
+    /**
+     * Checks whether the session still runs - it wasn't closed and its game isn't over.
+     *
+     * @return true if the session runs
+     */
+    public boolean isRunning() {
+        return !closed;
+    }
+
+    /**
+     * Stops the ticks of the session. A tick that already started still ends.
+     */
+    public void close() {
+        closed = true;
+        ScheduledFuture<?> scheduled = future;
+        if (scheduled != null) {
+            scheduled.cancel(false);
+        }
+    }
+
+    /**
+     * Returns what a tick of the session threw, if one did - a tick that throws ends its session, but no other.
+     *
+     * @return the exception, null if no tick threw
+     */
+    public RuntimeException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Returns the number of ticks the session ran.
+     *
+     * @return the number of ticks
+     */
+    public synchronized long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Returns a copy of the histogram of the time the ticks took to run.
+     *
+     * @return the histogram, in microseconds
+     */
+    public synchronized Histogram getTickMicros() {
+        Histogram copy = new Histogram(tickMicros);
+        copy.merge(tickMicros);
+        return copy;
+    }
+
+    /**
+     * Returns a copy of the histogram of how late the ticks started.
+     *
+     * @return the histogram, in microseconds
+     */
+    public synchronized Histogram getLateMicros() {
+        Histogram copy = new Histogram(lateMicros);
+        copy.merge(lateMicros);
+        return copy;
+    }
+
+    /**
+     * Returns the time between two ticks.
+     *
+     * @return the time, in nanoseconds
+     */
+    long getPeriodNanos() {
+        return periodNanos;
+    }
+
+    /**
+     * Sets the time the first tick is due at, before the ticks are scheduled.
+     *
+     * @param start the time, by System.nanoTime()
+     */
+    void setStartNanos(long start) {
+        this.startNanos = start;
+    }
+
+    /**
+     * Gives the session the future of its scheduled ticks, to cancel when it ends.
+     *
+     * @param scheduled the future
+     */
+    void scheduled(ScheduledFuture<?> scheduled) {
+        this.future = scheduled;
+        if (closed) {
+            scheduled.cancel(false); // closed before it was scheduled
+        }
+    }
+
+    /**
+     * Runs one tick of the game, called by the worker threads of the manager. Ends the session when the game is
+     * over, or when the tick throws.
+     */
+    void runTick() {
+        if (closed) {
+            return;
+        }
+        if (!game.isRunning()) {
+            close();
+            return;
+        }
+        long begin = System.nanoTime();
+        try {
+            game.tick();
+        } catch (RuntimeException e) {
+            failure = e;
+            close();
+            return;
+        }
+        long end = System.nanoTime();
+        synchronized (this) {
+            long due = startNanos + ticks * periodNanos;
+            tickMicros.add((end - begin) / NANOS_PER_MICRO);
+            lateMicros.add(Math.max(0, begin - due) / NANOS_PER_MICRO);
+            ticks++;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+// Tamar Rosenzweig
+package game;
+
+import geometry_primitives.Point;
+import geometry_primitives.Rectangle;
+import geometry_primitives.Velocity;
+import sprites.Ball;
+import sprites.BallSystem;
+import sprites.Block;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the whole state of a game into a ByteBuffer, and sets a game to the state in one.
+ * The layout is fixed and has no names or types in it, so a snapshot is small (a few hundred bytes, and 44 bytes
+ * an extra ball) and both ways take microseconds:
+ * <pre>
+ * int magic "ARKS", int version
+ * long ticks, int ticks per second, int score, int blocks left, int balls left
+ * 4 doubles: the paddle rectangle (x, y, width, height)
+ * int number of level blocks, then a bit for every block (in longs), set for the blocks not hit yet
+ * int number of balls, then every ball: 4 doubles (x, y, dx, dy), int radius, int RGB color, byte continuous
+ * int number of extra balls (-1 for no multiball), then every one: 5 doubles (x, y, dx, dy, radius), int RGB color
+ * </pre>
+ * The blocks of the level are always made the same way, so a block is kept as its index in the level.
+ * The caches of the balls aren't kept - they only save work, a restored game plays exactly the same without them.
+ */
+public final class GameSnapshot {
+    private static final int MAGIC = 0x41524B53; // "ARKS"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 2 * Integer.BYTES + Long.BYTES + 4 * Integer.BYTES + 4 * Double.BYTES;
+    private static final int BALL_BYTES = 4 * Double.BYTES + 2 * Integer.BYTES + 1;
+    private static final int EXTRA_BALL_BYTES = 5 * Double.BYTES + Integer.BYTES;
+
+    /**
+     * Not to be constructed, all the methods are static.
+     */
+    private GameSnapshot() {
+    }
+
+    /**
+     * Returns the number of bytes the snapshot of a game takes.
+     *
+     * @param game the game
+     * @return the size of its snapshot
+     */
+    public static int sizeOf(Game game) {
+        int blockWords = (game.getLevelBlocks().size() + Long.SIZE - 1) / Long.SIZE;
+        BallSystem multiball = game.getMultiball(false);
+        int extraBalls = multiball == null ? 0 : multiball.size();
+        return HEADER_BYTES + Integer.BYTES + blockWords * Long.BYTES
+                + Integer.BYTES + game.getBalls().size() * BALL_BYTES
+                + Integer.BYTES + extraBalls * EXTRA_BALL_BYTES;
+    }
+
+    /**
+     * Writes the state of a game into a buffer, from its position on.
+     *
+     * @param game   the game, between two ticks
+     * @param buffer the buffer, with at least sizeOf(game) bytes left
+     */
+    public static void write(Game game, ByteBuffer buffer) {
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(game.getTicks());
+        buffer.putInt(game.getTicksPerSecond());
+        buffer.putInt(game.getScore());
+        buffer.putInt(game.getRemainingBlocks());
+        buffer.putInt(game.getRemainingBalls());
+        Rectangle paddle = game.getPaddle().getCollisionRectangle();
+        buffer.putDouble(paddle.getUpperLeft().getX());
+        buffer.putDouble(paddle.getUpperLeft().getY());
+        buffer.putDouble(paddle.getWidth());
+        buffer.putDouble(paddle.getHeight());
+        List<Block> blocks = game.getLevelBlocks();
+        buffer.putInt(blocks.size());
+        long word = 0;
+        for (int i = 0; i < blocks.size(); i++) {
+            if (game.contains(blocks.get(i))) {
+                word |= 1L << (i % Long.SIZE);
+            }
+            if (i % Long.SIZE == Long.SIZE - 1 || i == blocks.size() - 1) {
+                buffer.putLong(word);
+                word = 0;
+            }
+        }
+        List<Ball> balls = game.getBalls();
+        buffer.putInt(balls.size());
+        for (Ball ball : balls) {
+            Velocity v = ball.getVelocity();
+            buffer.putDouble(ball.getX());
+            buffer.putDouble(ball.getY());
+            buffer.putDouble(v.getDx());
+            buffer.putDouble(v.getDy());
+            buffer.putInt(ball.getSize());
+            buffer.putInt(ball.getColor().getRGB());
+            buffer.put((byte) (ball.isContinuousCollision() ? 1 : 0));
+        }
+        BallSystem multiball = game.getMultiball(false);
+        if (multiball == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        buffer.putInt(multiball.size());
+        for (int i = 0; i < multiball.size(); i++) {
+            buffer.putDouble(multiball.getX(i));
+            buffer.putDouble(multiball.getY(i));
+            buffer.putDouble(multiball.getDx(i));
+            buffer.putDouble(multiball.getDy(i));
+            buffer.putDouble(multiball.getRadius(i));
+            buffer.putInt(multiball.getColor(i).getRGB());
+        }
+    }
+
+    /**
+     * Sets a game to the state in a buffer, from its position on. The level is made again, with the balls of the
+     * snapshot, and the blocks that were already hit are then removed.
+     *
+     * @param buffer the buffer
+     * @param game   the game, it doesn't have to be initialized
+     * @throws IllegalArgumentException if the buffer doesn't hold a snapshot of this version, or of this level
+     */
+    public static void read(ByteBuffer buffer, Game game) {
+        if (buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException("not a game snapshot");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("a snapshot of version " + version + ", expected " + VERSION);
+        }
+        long ticks = buffer.getLong();
+        int ticksPerSecond = buffer.getInt();
+        int score = buffer.getInt();
+        int blocksLeft = buffer.getInt();
+        int ballsLeft = buffer.getInt();
+        Rectangle paddle = new Rectangle(new Point(buffer.getDouble(), buffer.getDouble()), buffer.getDouble(),
+                buffer.getDouble());
+        int blockCount = buffer.getInt();
+        long[] alive = new long[(blockCount + Long.SIZE - 1) / Long.SIZE];
+        for (int i = 0; i < alive.length; i++) {
+            alive[i] = buffer.getLong();
+        }
+        int ballCount = buffer.getInt();
+        List<Ball> balls = new ArrayList<>(ballCount);
+        for (int i = 0; i < ballCount; i++) {
+            Point center = new Point(buffer.getDouble(), buffer.getDouble());
+            Velocity v = new Velocity(buffer.getDouble(), buffer.getDouble());
+            Ball ball = new Ball(center, buffer.getInt(), new Color(buffer.getInt(), true), v);
+            ball.setContinuousCollision(buffer.get() != 0);
+            balls.add(ball);
+        }
+        game.setTicksPerSecond(ticksPerSecond);
+        game.setTicks(ticks);
+        game.createLevel(balls, blocksLeft, ballsLeft, score);
+        List<Block> blocks = game.getLevelBlocks();
+        if (blocks.size() != blockCount) {
+            throw new IllegalArgumentException("a snapshot of a level of " + blockCount + " blocks, this level has "
+                    + blocks.size());
+        }
+        for (int i = 0; i < blockCount; i++) {
+            if ((alive[i / Long.SIZE] & (1L << (i % Long.SIZE))) == 0) {
+                blocks.get(i).removeFromGame(game);
+            }
+        }
+        game.getPaddle().setRect(paddle);
+        int extraBalls = buffer.getInt();
+        if (extraBalls < 0) {
+            return;
+        }
+        BallSystem multiball = game.getMultiball(true);
+        for (int i = 0; i < extraBalls; i++) {
+            double x = buffer.getDouble();
+            double y = buffer.getDouble();
+            double dx = buffer.getDouble();
+            double dy = buffer.getDouble();
+            double radius = buffer.getDouble();
+            multiball.add(x, y, radius, new Color(buffer.getInt(), true), dx, dy);
+        }
+    }
+
+    /**
+     * Writes a snapshot to a file, from the buffer's position to its limit.
+     *
+     * @param buffer the snapshot
+     * @param path   the path of the file
+     * @throws IOException if writing fails
+     */
+    public static void save(ByteBuffer buffer, String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer view = buffer.duplicate();
+            while (view.hasRemaining()) {
+                channel.write(view);
+            }
+        }
+    }
+
+    /**
+     * Reads a snapshot from a file.
+     *
+     * @param path the path of the file
+     * @return the snapshot, ready to be read
+     * @throws IOException if reading fails
+     */
+    public static ByteBuffer load(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException(path + " ended before its size");
+                }
+            }
+            return buffer.flip();
+        }
+    }
+}
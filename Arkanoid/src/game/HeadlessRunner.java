@@ -0,0 +1,233 @@
+// Tamar Rosenzweig
+package game;
+
+import biuoop.DrawSurface;
+import rendering.FrameSink;
+import rendering.PngSequenceSink;
+import rendering.RasterSurface;
+import rendering.RawFrameSink;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Runs a game without a window, as fast as the CPU allows: tick after tick, with no sleeping, and with the paddle
+ * moved by a scripted keyboard. Frames can still be drawn on a surface (a NullDrawSurface, to count the cost
+ * of the drawing calls, or a RasterSurface, to count the cost of drawing the pixels too), once every 1/60 second
+ * of game time - and frames drawn on a RasterSurface can be recorded, to PNG files or to a raw video stream.
+ * A long run can write checkpoints - snapshots of the game (see {@link GameSnapshot}) to a file, so a run that
+ * crashed can go on from its last checkpoint.
+ */
+public class HeadlessRunner {
+    static final int DEFAULT_MAX_TICKS = 100000;
+    static final long DEFAULT_CHECKPOINT_TICKS = 60L * Game.DEFAULT_TICKS_PER_SECOND; // a minute of game time
+    private final Game game;
+    private DrawSurface surface;
+    private RasterSurface raster; // the surface, if frames are recorded from it
+    private FrameSink sink;
+    private long lastNanos;
+    private long lastTicks;
+    private String checkpointPath;
+    private long checkpointTicks;
+    private ByteBuffer checkpoint = ByteBuffer.allocate(0); // reused by all the checkpoints
+
+    /**
+     * Constructs a runner of a headless game.
+     *
+     * @param game the game, constructed with the input that plays it and initialized
+     */
+    public HeadlessRunner(Game game) {
+        this.game = game;
+    }
+
+    /**
+     * Sets a surface to draw the frames on, null for not drawing at all. The frames aren't recorded.
+     *
+     * @param d the surface
+     */
+    public void setDrawSurface(DrawSurface d) {
+        this.surface = d;
+        this.raster = null;
+        this.sink = null;
+    }
+
+    /**
+     * Draws the frames on a raster surface and writes every one to a sink, or stops recording.
+     *
+     * @param frames the surface to draw on
+     * @param output the sink to write the frames to, null to draw on the surface and not record
+     */
+    public void setRecording(RasterSurface frames, FrameSink output) {
+        this.surface = frames;
+        this.raster = frames;
+        this.sink = output;
+    }
+
+    /**
+     * Sets a file to write a checkpoint of the game to, every given number of ticks.
+     *
+     * @param path  the path of the file, null for no checkpoints
+     * @param ticks the ticks between two checkpoints
+     */
+    public void setCheckpoint(String path, long ticks) {
+        this.checkpointPath = path;
+        this.checkpointTicks = ticks;
+    }
+
+    /**
+     * Runs the game until it is over, or for the given number of ticks.
+     *
+     * @param maxTicks the most ticks to run
+     * @return the number of ticks that ran
+     */
+    public long run(long maxTicks) {
+        int ticksPerFrame = Math.max(1, game.getTicksPerSecond() / Game.FRAMES_PER_SECOND);
+        long start = System.nanoTime();
+        long ran = 0;
+        while (ran < maxTicks && game.isRunning()) {
+            game.tick();
+            ran++;
+            if (surface != null && game.getTicks() % ticksPerFrame == 0) {
+                game.drawFrame(surface, 1);
+                if (sink != null) {
+                    writeFrame();
+                }
+            }
+            if (checkpointPath != null && game.getTicks() % checkpointTicks == 0) {
+                writeCheckpoint();
+            }
+        }
+        lastNanos = System.nanoTime() - start;
+        lastTicks = ran;
+        return ran;
+    }
+
+    /**
+     * Writes the frame just drawn to the sink. If it fails, no more frames are recorded.
+     */
+    private void writeFrame() {
+        try {
+            sink.write(raster);
+        } catch (IOException e) {
+            System.out.println("Can't write the frame, going on without recording: " + e.getMessage());
+            sink = null;
+        }
+    }
+
+    /**
+     * Writes a snapshot of the game to the checkpoint file. If it fails, no more checkpoints are written.
+     */
+    private void writeCheckpoint() {
+        int size = GameSnapshot.sizeOf(game);
+        if (checkpoint.capacity() < size) {
+            checkpoint = ByteBuffer.allocate(size * 2);
+        }
+        checkpoint.clear();
+        game.snapshot(checkpoint);
+        checkpoint.flip();
+        try {
+            GameSnapshot.save(checkpoint, checkpointPath);
+        } catch (IOException e) {
+            System.out.println("Can't write the checkpoint, going on without: " + e.getMessage());
+            checkpointPath = null;
+        }
+    }
+
+    /**
+     * Returns how many ticks a second of real time the last run simulated.
+     *
+     * @return the ticks per second of the last run
+     */
+    public double ticksPerSecond() {
+        return lastNanos == 0 ? 0 : lastTicks * (double) Game.NANOS_PER_SECOND / lastNanos;
+    }
+
+    /**
+     * Runs the game headless and prints how fast it ran, and how it ended.
+     * The arguments are all optional: the most ticks to run, the number of extra balls (multiball), a keyboard
+     * script (see {@link ScriptedKeyboard#parse}) or "auto" for an AutoPilot, how to draw the frames and a
+     * checkpoint file - if it exists, the game goes on from it instead of starting over.
+     * The frames are drawn on a NullDrawSurface for "draw", on a RasterSurface for "raster", and on a
+     * RasterSurface recorded to PNG files in a directory for "png:directory" or to a raw video file for
+     * "raw:file"; anything else is for not drawing.
+     *
+     * @param args the most ticks, the extra balls, the script, how to draw and the checkpoint file
+     * @throws IOException if the frames can't be recorded
+     */
+    public static void main(String[] args) throws IOException {
+        long maxTicks = DEFAULT_MAX_TICKS;
+        int extraBalls = 0;
+        ScriptedKeyboard keyboard = new ScriptedKeyboard();
+        boolean auto = args.length > 2 && args[2].equals("auto");
+        try {
+            if (args.length > 0) {
+                maxTicks = Long.parseLong(args[0]);
+            }
+            if (args.length > 1) {
+                extraBalls = Integer.parseInt(args[1]);
+            }
+            if (args.length > 2 && !auto) {
+                keyboard = ScriptedKeyboard.parse(args[2]);
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println("Command line argument isn't valid (" + e.getMessage() + "), using default.");
+            maxTicks = DEFAULT_MAX_TICKS;
+            extraBalls = 0;
+            keyboard = new ScriptedKeyboard();
+        }
+        Game game = new Game(keyboard);
+        AutoPilot pilot = auto ? game.autoPilot() : null;
+        String checkpointPath = args.length > 4 ? args[4] : null;
+        if (checkpointPath != null && new File(checkpointPath).exists()) {
+            try {
+                game.restore(GameSnapshot.load(checkpointPath));
+                System.out.println("going on from tick " + game.getTicks() + " of " + checkpointPath);
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Can't read the checkpoint (" + e.getMessage() + "), starting over.");
+                game = new Game(keyboard);
+                pilot = auto ? game.autoPilot() : null;
+            }
+        }
+        if (game.getTicks() == 0) {
+            game.initialize();
+            if (extraBalls > 0) {
+                game.addMultiball(extraBalls);
+            }
+        }
+        HeadlessRunner runner = new HeadlessRunner(game);
+        String draw = args.length > 3 ? args[3] : "";
+        RasterSurface raster = new RasterSurface(Game.WIDTH, Game.HEIGHT);
+        FrameSink sink = null;
+        if (draw.equals("draw")) {
+            runner.setDrawSurface(new NullDrawSurface(Game.WIDTH, Game.HEIGHT));
+        } else if (draw.equals("raster")) {
+            runner.setRecording(raster, null);
+        } else if (draw.startsWith("png:")) {
+            sink = new PngSequenceSink(draw.substring("png:".length()));
+        } else if (draw.startsWith("raw:")) {
+            sink = new RawFrameSink(draw.substring("raw:".length()));
+        }
+        if (sink != null) {
+            runner.setRecording(raster, sink);
+        }
+        runner.setCheckpoint(checkpointPath, DEFAULT_CHECKPOINT_TICKS);
+        long ran = runner.run(maxTicks);
+        System.out.printf("ticks: %d (%.1f seconds of game time)%n", ran, (double) ran / game.getTicksPerSecond());
+        System.out.printf("speed: %.0f ticks per second (%.1fx real time)%n", runner.ticksPerSecond(),
+                runner.ticksPerSecond() / game.getTicksPerSecond());
+        System.out.printf("score: %d, blocks left: %d, balls left: %d%n", game.getScore(),
+                game.getRemainingBlocks(), game.getRemainingBalls());
+        if (sink != null) {
+            sink.close();
+            System.out.printf("frames recorded: %d%n", sink.getFrameCount());
+        }
+        if (draw.equals("raster") || sink != null) {
+            System.out.printf("checksum of the last frame: %08x%n", raster.checksum());
+        }
+        if (pilot != null) {
+            System.out.printf("auto pilot: %.1f us a tick on average, %.1f us at worst%n",
+                    pilot.getAverageNanos() / 1000, pilot.getWorstNanos() / 1000.0);
+        }
+    }
+}
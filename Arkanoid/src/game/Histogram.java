@@ -0,0 +1,166 @@
+// Tamar Rosenzweig
+package game;
+
+import java.io.PrintStream;
+
+/**
+ * A streaming histogram of numbers: a fixed number of bins of the same width between a low and a high value (the
+ * numbers below or above them are counted in the first or the last bin), and the count, sum, smallest and largest
+ * of all the numbers. It takes the same memory for any number of values, and two histograms of the same bins can be
+ * merged - so every thread can fill its own and they are merged at the end.
+ */
+public final class Histogram {
+    private static final int BAR_WIDTH = 40;
+    private final double low;
+    private final double high;
+    private final long[] bins;
+    private long count;
+    private double sum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Constructs an empty histogram.
+     *
+     * @param low   the low end of the first bin
+     * @param high  the high end of the last bin
+     * @param count the number of bins
+     */
+    public Histogram(double low, double high, int count) {
+        if (!(high > low) || count < 1) {
+            throw new IllegalArgumentException("a histogram needs low < high and at least one bin");
+        }
+        this.low = low;
+        this.high = high;
+        this.bins = new long[count];
+    }
+
+    /**
+     * Constructs an empty histogram with the same bins as another one.
+     *
+     * @param other the histogram to take the bins of
+     */
+    public Histogram(Histogram other) {
+        this(other.low, other.high, other.bins.length);
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param value the value
+     */
+    public void add(double value) {
+        int bin = (int) Math.floor((value - low) / (high - low) * bins.length);
+        bins[Math.max(0, Math.min(bins.length - 1, bin))]++;
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Adds all the values of another histogram into this one.
+     *
+     * @param other a histogram with the same bins
+     */
+    public void merge(Histogram other) {
+        if (other.low != low || other.high != high || other.bins.length != bins.length) {
+            throw new IllegalArgumentException("only histograms with the same bins can be merged");
+        }
+        for (int i = 0; i < bins.length; i++) {
+            bins[i] += other.bins[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Returns the number of values.
+     *
+     * @return the number of values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the average of the values.
+     *
+     * @return the average, NaN if there are no values
+     */
+    public double getMean() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    /**
+     * Returns the smallest value.
+     *
+     * @return the smallest value, NaN if there are no values
+     */
+    public double getMin() {
+        return count == 0 ? Double.NaN : min;
+    }
+
+    /**
+     * Returns the largest value.
+     *
+     * @return the largest value, NaN if there are no values
+     */
+    public double getMax() {
+        return count == 0 ? Double.NaN : max;
+    }
+
+    /**
+     * Estimates a quantile of the values, taking the values of a bin to be spread evenly over it.
+     *
+     * @param q the quantile, between 0 and 1 (0.5 for the median)
+     * @return the estimate, NaN if there are no values
+     */
+    public double quantile(double q) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        double rank = q * count;
+        double width = (high - low) / bins.length;
+        long below = 0;
+        for (int i = 0; i < bins.length; i++) {
+            if (bins[i] > 0 && below + bins[i] >= rank) {
+                double estimate = low + width * (i + (rank - below) / bins[i]);
+                return Math.max(min, Math.min(max, estimate));
+            }
+            below += bins[i];
+        }
+        return max;
+    }
+
+    /**
+     * Prints a summary line and a bar for every bin from the first to the last one that isn't empty.
+     *
+     * @param out   the stream to print to
+     * @param title the name of the values
+     */
+    public void print(PrintStream out, String title) {
+        out.printf("%s: %d values, mean %.1f, min %.1f, median %.1f, p90 %.1f, max %.1f%n", title, count,
+                getMean(), getMin(), quantile(0.5), quantile(0.9), getMax());
+        int first = 0;
+        int last = bins.length - 1;
+        while (first <= last && bins[first] == 0) {
+            first++;
+        }
+        while (last >= first && bins[last] == 0) {
+            last--;
+        }
+        long most = 0;
+        for (long bin : bins) {
+            most = Math.max(most, bin);
+        }
+        double width = (high - low) / bins.length;
+        for (int i = first; i <= last; i++) {
+            int bar = (int) Math.round((double) bins[i] / most * BAR_WIDTH);
+            out.printf("  %8.1f - %8.1f %8d %s%n", low + width * i, low + width * (i + 1), bins[i],
+                    "#".repeat(bar));
+        }
+    }
+}
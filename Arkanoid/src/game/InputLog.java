@@ -0,0 +1,197 @@
+// Tamar Rosenzweig
+package game;
+
+import biuoop.KeyboardSensor;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The keys held down in every tick of a game, kept compact: every tick is a set of bits (one bit per key in
+ * KEYS), and runs of ticks with the same bits are stored as one run. A player holds a key for many ticks, so a
+ * 30 minute game takes a few kilobytes.
+ * The log is written and read with varints for the run lengths, see {@link #write} and {@link #read}.
+ */
+public class InputLog {
+    /**
+     * The keys that are logged, a key's bit is 1 shifted left by its index here.
+     */
+    static final String[] KEYS = {KeyboardSensor.LEFT_KEY, KeyboardSensor.RIGHT_KEY, KeyboardSensor.UP_KEY,
+            KeyboardSensor.DOWN_KEY, KeyboardSensor.SPACE_KEY, KeyboardSensor.ENTER_KEY};
+    private static final int INITIAL_RUNS = 16;
+    private byte[] bits = new byte[INITIAL_RUNS]; // the keys of every run
+    private int[] lengths = new int[INITIAL_RUNS]; // the number of ticks in every run
+    private int runCount;
+    private long length; // the number of ticks
+    private int cursorRun; // the run of the last look up, ticks are usually looked up one after another
+    private long cursorStart; // the first tick of that run
+
+    /**
+     * Adds the keys of the next tick.
+     *
+     * @param keyBits the bits of the keys held down in the tick
+     */
+    public void append(int keyBits) {
+        if (runCount > 0 && bits[runCount - 1] == (byte) keyBits && lengths[runCount - 1] < Integer.MAX_VALUE) {
+            lengths[runCount - 1]++;
+        } else {
+            if (runCount == bits.length) {
+                bits = Arrays.copyOf(bits, runCount * 2);
+                lengths = Arrays.copyOf(lengths, runCount * 2);
+            }
+            bits[runCount] = (byte) keyBits;
+            lengths[runCount] = 1;
+            runCount++;
+        }
+        length++;
+    }
+
+    /**
+     * Returns the keys of a tick. Looking up the ticks one after another, as a replay does, takes constant time.
+     *
+     * @param tick the tick, from 0 to length() - 1
+     * @return the bits of the keys held down in the tick
+     */
+    public int get(long tick) {
+        if (tick < 0 || tick >= length) {
+            throw new IndexOutOfBoundsException("tick " + tick + " of a log of " + length + " ticks");
+        }
+        if (tick < cursorStart) { // going back, start over
+            cursorRun = 0;
+            cursorStart = 0;
+        }
+        while (tick >= cursorStart + lengths[cursorRun]) {
+            cursorStart += lengths[cursorRun];
+            cursorRun++;
+        }
+        return bits[cursorRun];
+    }
+
+    /**
+     * Returns the number of ticks in the log.
+     *
+     * @return the number of ticks
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Returns the number of runs in the log - ticks in a row with the same keys are one run.
+     *
+     * @return the number of runs
+     */
+    public int runs() {
+        return runCount;
+    }
+
+    /**
+     * Reads the keys a keyboard holds down now, as bits.
+     *
+     * @param keyboard the keyboard
+     * @return the bits of the keys held down
+     */
+    public static int bitsOf(KeyboardSensor keyboard) {
+        int keyBits = 0;
+        for (int i = 0; i < KEYS.length; i++) {
+            if (keyboard.isPressed(KEYS[i])) {
+                keyBits |= 1 << i;
+            }
+        }
+        return keyBits;
+    }
+
+    /**
+     * Checks whether a key is held down in a set of bits.
+     *
+     * @param keyBits the bits of the keys held down
+     * @param key     the key
+     * @return true if the key is held down
+     */
+    public static boolean isPressed(int keyBits, String key) {
+        for (int i = 0; i < KEYS.length; i++) {
+            if (KEYS[i].equals(key)) {
+                return (keyBits & (1 << i)) != 0;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the log: the number of runs, then every run as a byte of keys and a varint length.
+     *
+     * @param out the stream to write to
+     * @throws IOException if writing fails
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(runCount);
+        for (int i = 0; i < runCount; i++) {
+            out.writeByte(bits[i]);
+            writeVarint(out, lengths[i]);
+        }
+    }
+
+    /**
+     * Reads a log written by {@link #write}.
+     *
+     * @param in the stream to read from
+     * @return the log
+     * @throws IOException if reading fails, or the data isn't a log
+     */
+    public static InputLog read(DataInputStream in) throws IOException {
+        int runs = in.readInt();
+        if (runs < 0) {
+            throw new IOException("bad input log: " + runs + " runs");
+        }
+        InputLog log = new InputLog();
+        log.bits = new byte[Math.max(runs, 1)];
+        log.lengths = new int[Math.max(runs, 1)];
+        for (int i = 0; i < runs; i++) {
+            log.bits[i] = in.readByte();
+            log.lengths[i] = readVarint(in);
+            if (log.lengths[i] <= 0) {
+                throw new IOException("bad input log: a run of " + log.lengths[i] + " ticks");
+            }
+            log.length += log.lengths[i];
+        }
+        log.runCount = runs;
+        return log;
+    }
+
+    /**
+     * Writes a non-negative int in 7 bit groups, low groups first, with the top bit set on all but the last.
+     *
+     * @param out   the stream to write to
+     * @param value the value
+     * @throws IOException if writing fails
+     */
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        int v = value;
+        while ((v & ~0x7F) != 0) {
+            out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    /**
+     * Reads an int written by {@link #writeVarint}.
+     *
+     * @param in the stream to read from
+     * @return the value
+     * @throws IOException if reading fails, or the varint is too long
+     */
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("bad input log: a varint that is too long");
+    }
+}
@@ -0,0 +1,18 @@
+// Tamar Rosenzweig
+package game;
+
+import biuoop.KeyboardSensor;
+
+/**
+ * A keyboard that the game tells when every tick begins, so the keys it reports can depend on the tick - a
+ * script, a recording, or a replay of a recording. During a tick the keys it reports must not change.
+ */
+public interface InputSource extends KeyboardSensor {
+
+    /**
+     * Tells the input that a tick begins.
+     *
+     * @param tick the number of the tick, counted from 0
+     */
+    void beginTick(long tick);
+}
@@ -0,0 +1,355 @@
+// Tamar Rosenzweig
+package game;
+
+import biuoop.KeyboardSensor;
+import geometry_primitives.Point;
+import geometry_primitives.Rectangle;
+import geometry_primitives.Velocity;
+import sprites.Ball;
+import sprites.Paddle;
+
+import java.io.PrintStream;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Estimates how hard the level is by playing it many times headless: how long it takes to clear, how fast balls are
+ * lost and what the scores are. The games run on the threads of the common fork/join pool, and every task keeps its
+ * own {@link Results} - streaming histograms, whatever the number of games - that are merged on the way back up.
+ * Game i is seeded with seed + i: the seed turns the balls to a random direction (up to MAX_TURN degrees from where
+ * they are launched), puts the paddle at a random place, and drives the random paddle. The same seed and the same
+ * number of games always give the same results.
+ * A game ends when it is over, or after a given number of seconds of game time.
+ */
+public class LevelEvaluator {
+    /**
+     * Most degrees the direction of a ball is turned by at the start of a game.
+     */
+    static final double MAX_TURN = 30;
+    /**
+     * Games are played by one task each, up to this many games a task.
+     */
+    static final int TASK_SIZE = 16;
+    /**
+     * The ticks per second the games are simulated at - the frame rate of the game, twice as coarse as the
+     * default, which is precise enough for statistics.
+     */
+    static final int TICKS_PER_SECOND = 60;
+    private static final int DEFAULT_GAMES = 10000;
+    private static final double DEFAULT_SECONDS = 600;
+    private final boolean auto;
+    private final long seed;
+    private final double maxSeconds;
+
+    /**
+     * Constructs an evaluator.
+     *
+     * @param auto       true to play with an AutoPilot, false with a paddle that moves at random
+     * @param seed       the seed of the first game
+     * @param maxSeconds the most seconds of game time a game is played
+     */
+    public LevelEvaluator(boolean auto, long seed, double maxSeconds) {
+        if (!(maxSeconds > 0)) {
+            throw new IllegalArgumentException("a game must be played for some time");
+        }
+        this.auto = auto;
+        this.seed = seed;
+        this.maxSeconds = maxSeconds;
+    }
+
+    /**
+     * Plays games and returns what came out of them.
+     *
+     * @param games the number of games
+     * @return the results of all the games
+     */
+    public Results evaluate(int games) {
+        return ForkJoinPool.commonPool().invoke(new EvaluateTask(0, games));
+    }
+
+    /**
+     * Plays a range of the games, one after the other.
+     *
+     * @param from the first game
+     * @param to   the game after the last
+     * @return the results of the games
+     */
+    private Results playRange(int from, int to) {
+        Results results = new Results(maxSeconds);
+        for (int i = from; i < to; i++) {
+            play(seed + i, results);
+        }
+        return results;
+    }
+
+    /**
+     * Plays one game, and adds what came out of it to the results.
+     *
+     * @param gameSeed the seed of the game
+     * @param results  the results to add to
+     */
+    private void play(long gameSeed, Results results) {
+        Random random = new Random(gameSeed);
+        Game game = new Game(auto ? null : new RandomPaddle(random));
+        if (auto) {
+            game.autoPilot();
+        }
+        game.setTicksPerSecond(TICKS_PER_SECOND);
+        game.initialize();
+        int balls = game.getRemainingBalls();
+        for (Ball ball : game.getBalls()) {
+            Velocity v = ball.getVelocity();
+            double speed = Math.sqrt(v.getDx() * v.getDx() + v.getDy() * v.getDy());
+            double angle = Math.toDegrees(Math.atan2(v.getDy(), v.getDx()));
+            ball.setVelocity(Velocity.fromAngleAndSpeed(angle + (random.nextDouble() * 2 - 1) * MAX_TURN, speed));
+        }
+        Rectangle paddle = game.getPaddle().getCollisionRectangle();
+        double room = Paddle.HIT_RIGHT_WALL - Paddle.HIT_LEFT_WALL - paddle.getWidth();
+        game.getPaddle().setRect(new Rectangle(new Point(Paddle.HIT_LEFT_WALL + random.nextDouble() * room,
+                paddle.getUpperLeft().getY()), paddle.getWidth(), paddle.getHeight()));
+        long maxTicks = (long) (maxSeconds * TICKS_PER_SECOND);
+        while (game.isRunning() && game.getTicks() < maxTicks) {
+            game.tick();
+        }
+        results.add(game, balls);
+    }
+
+    /**
+     * Evaluates the level and prints the results.
+     * The arguments are optional: the number of games, "auto" or "random" for the paddle, the seed and the most
+     * seconds of game time a game is played.
+     *
+     * @param args the games, the paddle, the seed and the seconds
+     */
+    public static void main(String[] args) {
+        int games = DEFAULT_GAMES;
+        boolean auto = args.length <= 1 || !"random".equals(args[1]);
+        long seed = 0;
+        double seconds = DEFAULT_SECONDS;
+        try {
+            games = args.length > 0 ? Integer.parseInt(args[0]) : games;
+            seed = args.length > 2 ? Long.parseLong(args[2]) : seed;
+            seconds = args.length > 3 ? Double.parseDouble(args[3]) : seconds;
+        } catch (NumberFormatException e) {
+            System.out.println("Command line argument isn't valid, using the defaults.");
+        }
+        long start = System.nanoTime();
+        Results results = new LevelEvaluator(auto, seed, seconds).evaluate(games);
+        double elapsed = (System.nanoTime() - start) / (double) Game.NANOS_PER_SECOND;
+        System.out.printf("%d games with %s paddle on %d threads: %.1f seconds, %.0f ticks per second%n", games,
+                auto ? "an auto pilot" : "a random", ForkJoinPool.getCommonPoolParallelism(), elapsed,
+                results.getTicks() / elapsed);
+        results.print(System.out);
+    }
+
+    /**
+     * What came out of a number of games: how many cleared the level, ran out of balls or ran out of time, and
+     * histograms of the time it took to clear the level, the score and the balls lost a minute.
+     */
+    public static final class Results {
+        private static final int BINS = 40;
+        private static final double SECONDS_PER_MINUTE = 60;
+        private static final double MAX_SCORE = 400; // 5 a block and 100 for clearing the level is 385
+        private static final double MAX_LOSS_RATE = 20;
+        private final Histogram clearSeconds;
+        private final Histogram scores;
+        private final Histogram lossRates;
+        private long games;
+        private long cleared;
+        private long gamesOver;
+        private long ticks;
+
+        /**
+         * Constructs empty results.
+         *
+         * @param maxSeconds the most seconds of game time a game is played
+         */
+        Results(double maxSeconds) {
+            this.clearSeconds = new Histogram(0, maxSeconds, BINS);
+            this.scores = new Histogram(0, MAX_SCORE, BINS);
+            this.lossRates = new Histogram(0, MAX_LOSS_RATE, BINS);
+        }
+
+        /**
+         * Adds a game that ended.
+         *
+         * @param game  the game
+         * @param balls the balls the game started with
+         */
+        void add(Game game, int balls) {
+            games++;
+            ticks += game.getTicks();
+            double seconds = (double) game.getTicks() / game.getTicksPerSecond();
+            if (game.getRemainingBlocks() == 0) {
+                cleared++;
+                clearSeconds.add(seconds);
+            } else if (game.getRemainingBalls() == 0) {
+                gamesOver++;
+            }
+            scores.add(game.getScore());
+            int lost = balls - game.getRemainingBalls();
+            lossRates.add(seconds == 0 ? 0 : lost / (seconds / SECONDS_PER_MINUTE));
+        }
+
+        /**
+         * Adds the results of other games into these.
+         *
+         * @param other the other results
+         * @return these results
+         */
+        Results merge(Results other) {
+            clearSeconds.merge(other.clearSeconds);
+            scores.merge(other.scores);
+            lossRates.merge(other.lossRates);
+            games += other.games;
+            cleared += other.cleared;
+            gamesOver += other.gamesOver;
+            ticks += other.ticks;
+            return this;
+        }
+
+        /**
+         * Returns the number of games.
+         *
+         * @return the number of games
+         */
+        public long getGames() {
+            return games;
+        }
+
+        /**
+         * Returns the number of games that cleared the level.
+         *
+         * @return the number of games
+         */
+        public long getCleared() {
+            return cleared;
+        }
+
+        /**
+         * Returns the number of games that lost all their balls.
+         *
+         * @return the number of games
+         */
+        public long getGamesOver() {
+            return gamesOver;
+        }
+
+        /**
+         * Returns the number of ticks all the games took.
+         *
+         * @return the number of ticks
+         */
+        public long getTicks() {
+            return ticks;
+        }
+
+        /**
+         * Returns the histogram of the seconds of game time the games that cleared the level took.
+         *
+         * @return the histogram
+         */
+        public Histogram getClearSeconds() {
+            return clearSeconds;
+        }
+
+        /**
+         * Returns the histogram of the scores.
+         *
+         * @return the histogram
+         */
+        public Histogram getScores() {
+            return scores;
+        }
+
+        /**
+         * Returns the histogram of the balls lost a minute of game time.
+         *
+         * @return the histogram
+         */
+        public Histogram getLossRates() {
+            return lossRates;
+        }
+
+        /**
+         * Prints the results.
+         *
+         * @param out the stream to print to
+         */
+        public void print(PrintStream out) {
+            out.printf("cleared %d (%.1f%%), out of balls %d (%.1f%%), out of time %d%n", cleared,
+                    100.0 * cleared / games, gamesOver, 100.0 * gamesOver / games, games - cleared - gamesOver);
+            clearSeconds.print(out, "seconds to clear the level");
+            lossRates.print(out, "balls lost a minute");
+            scores.print(out, "score");
+        }
+    }
+
+    /**
+     * The keyboard of a game played at random: it holds one of left, right or nothing for a random number of
+     * ticks, then picks again.
+     */
+    private static final class RandomPaddle implements InputSource {
+        private static final int MAX_HOLD = 60;
+        private final Random random;
+        private int action;
+        private int hold;
+
+        /**
+         * Constructs a random paddle.
+         *
+         * @param random the random numbers to play by
+         */
+        private RandomPaddle(Random random) {
+            this.random = random;
+        }
+
+        @Override
+        public void beginTick(long tick) {
+            if (hold-- <= 0) {
+                action = random.nextInt(3);
+                hold = 1 + random.nextInt(MAX_HOLD);
+            }
+        }
+
+        @Override
+        public boolean isPressed(String key) {
+            return (action == 1 && KeyboardSensor.LEFT_KEY.equals(key))
+                    || (action == 2 && KeyboardSensor.RIGHT_KEY.equals(key));
+        }
+    }
+
+    /**
+     * Plays a range of the games, splitting it in two while it is larger than TASK_SIZE, and merges the results of
+     * the two halves.
+     */
+    private final class EvaluateTask extends RecursiveTask<Results> {
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+
+        /**
+         * Constructs a task for a range of the games.
+         *
+         * @param from the first game
+         * @param to   the game after the last
+         */
+        private EvaluateTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Results compute() {
+            if (to - from <= TASK_SIZE) {
+                return playRange(from, to);
+            }
+            int middle = (from + to) >>> 1;
+            EvaluateTask second = new EvaluateTask(middle, to);
+            second.fork();
+            Results first = new EvaluateTask(from, middle).compute();
+            return first.merge(second.join());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+// Tamar Rosenzweig
+package game;
+
+import biuoop.KeyboardSensor;
+
+/**
+ * A keyboard that reads a live keyboard once at the beginning of every tick, and records what it read into an
+ * InputLog. During the tick it reports the keys it read, so the game sees exactly what is recorded even if a
+ * key changes in the middle of the tick.
+ */
+public class RecordingKeyboard implements InputSource {
+    private final KeyboardSensor live;
+    private final InputLog log = new InputLog();
+    private int keyBits;
+
+    /**
+     * Constructs a recorder of a keyboard.
+     *
+     * @param live the keyboard to read, if it is an InputSource it is told about the ticks too
+     */
+    public RecordingKeyboard(KeyboardSensor live) {
+        this.live = live;
+    }
+
+    @Override
+    public void beginTick(long tick) {
+        if (live instanceof InputSource) {
+            ((InputSource) live).beginTick(tick);
+        }
+        keyBits = InputLog.bitsOf(live);
+        log.append(keyBits);
+    }
+
+    @Override
+    public boolean isPressed(String key) {
+        return InputLog.isPressed(keyBits, key);
+    }
+
+    /**
+     * Returns the log of the keys read so far.
+     *
+     * @return the log
+     */
+    public InputLog getLog() {
+        return log;
+    }
+}
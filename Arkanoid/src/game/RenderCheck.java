@@ -0,0 +1,65 @@
+// Tamar Rosenzweig
+package game;
+
+import rendering.RasterSurface;
+
+/**
+ * Checks that a {@link RenderLoop}, that draws through a layered renderer with a cached static layer, draws the
+ * same pixels as {@link Game#drawFrame} does: a scripted game is played, and after every tick it is drawn both
+ * ways, the render loop's from a snapshot published in a {@link FrameExchange}. Blocks are removed as the game
+ * goes on, so the areas of the static layer drawn again are checked too, and with enough multiball balls so are
+ * the balls drawn by a rasterizer.
+ */
+public class RenderCheck {
+    static final long MAX_TICKS = 4000;
+    static final double ALPHA = 0.5;
+    static final int[] EXTRA_BALLS = {0, 40, 2500};
+
+    /**
+     * Checks the frames of a game with the given number of extra balls.
+     *
+     * @param extraBalls the number of extra balls (multiball)
+     * @return true if all the frames were the same
+     */
+    static boolean check(int extraBalls) {
+        Game game = SnapshotCheck.newGame(extraBalls);
+        RasterSurface expected = new RasterSurface(Game.WIDTH, Game.HEIGHT);
+        RasterSurface actual = new RasterSurface(Game.WIDTH, Game.HEIGHT);
+        FrameExchange frames = new FrameExchange();
+        RenderLoop loop = new RenderLoop(null, frames, 1);
+        long differentFrames = 0;
+        int mostDifferences = 0;
+        while (game.getTicks() < MAX_TICKS && game.isRunning()) {
+            game.tick();
+            game.drawFrame(expected, ALPHA);
+            frames.next().capture(game, 0);
+            frames.publish();
+            loop.draw(actual, frames.latest(), ALPHA);
+            int differences = expected.countDifferences(actual);
+            if (differences > 0) {
+                differentFrames++;
+                mostDifferences = Math.max(mostDifferences, differences);
+            }
+        }
+        System.out.printf("%d extra balls: %d frames, %d blocks left, %d frames different (at most %d pixels): "
+                        + "%s%n", extraBalls, loop.getFrameCount(), game.getRemainingBlocks(), differentFrames,
+                mostDifferences, differentFrames == 0 ? "MATCH" : "MISMATCH");
+        return differentFrames == 0;
+    }
+
+    /**
+     * Runs the checks, and exits with status 1 if any of them failed.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) {
+        boolean passed = true;
+        for (int extraBalls : EXTRA_BALLS) {
+            passed &= check(extraBalls);
+        }
+        System.out.println(passed ? "PASSED" : "FAILED");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+// Tamar Rosenzweig
+package game;
+
+import biuoop.DrawSurface;
+import biuoop.GUI;
+import rendering.LayeredRenderer;
+import rendering.TiledRasterizer;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Draws a game on its window in a thread of its own, 60 times a second, from the snapshots the simulating thread
+ * publishes in a {@link FrameExchange} - so a slow frame never holds the simulation back, and a slow tick never
+ * holds a frame back. Every frame draws the latest snapshot, with the moving sprites part of the way between the
+ * last two ticks by the time that passed since the snapshot was captured.
+ * The frames are drawn by a {@link LayeredRenderer}: the background and the blocks are its static layer, of
+ * which only the areas of the blocks that changed since the last frame are drawn again, and what moves is drawn
+ * over them.
+ */
+public class RenderLoop implements Runnable {
+    private final GUI gui;
+    private final FrameExchange frames;
+    private final long tickNanos;
+    private final LayeredRenderer renderer;
+    private final FrameSnapshot drawnBlocks = new FrameSnapshot(); // the snapshot the static layer was drawn from
+    private final IntFunction<Color> palette = this::color;
+    private final Consumer<DrawSurface> moving = this::drawMoving;
+    private int[] rgbs = new int[0];
+    private Color[] colors = new Color[0];
+    private TiledRasterizer rasterizer; // draws very many balls of multiball, made the first time there are
+    private FrameSnapshot drawing; // the snapshot of the frame being drawn
+    private double drawingAlpha;
+    private volatile boolean running = true;
+    private volatile long frameCount;
+    private volatile long repeatedFrames;
+    private long lastTick = -1;
+
+    /**
+     * Constructs a render loop.
+     *
+     * @param gui       the window to draw on, null to only draw with {@link #draw}
+     * @param frames    the exchange the snapshots are published in
+     * @param tickNanos the time of a tick of the game, in nanoseconds
+     */
+    public RenderLoop(GUI gui, FrameExchange frames, long tickNanos) {
+        this.gui = gui;
+        this.frames = frames;
+        this.tickNanos = tickNanos;
+        this.renderer = new LayeredRenderer(Game.WIDTH, Game.HEIGHT, d -> drawnBlocks.drawBlocks(d, palette));
+    }
+
+    /**
+     * Draws frames on the window until {@link #stop()} is called.
+     */
+    @Override
+    public void run() {
+        long frameNanos = Game.NANOS_PER_SECOND / Game.FRAMES_PER_SECOND;
+        long nextFrame = System.nanoTime();
+        while (running) {
+            FrameSnapshot snapshot = frames.latest();
+            if (snapshot.getTick() >= 0) {
+                long now = System.nanoTime();
+                double alpha = Math.min(1, (double) (now - snapshot.getCapturedNanos()) / tickNanos);
+                DrawSurface d = gui.getDrawSurface();
+                draw(d, snapshot, alpha);
+                gui.show(d);
+            }
+            nextFrame += frameNanos;
+            long wait = nextFrame - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            } else {
+                nextFrame = System.nanoTime(); // too slow to keep the rate, don't draw frames to catch up
+            }
+        }
+    }
+
+    /**
+     * Makes {@link #run()} return after the frame it draws. May be called from any thread.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Draws a snapshot on a surface, as one image.
+     *
+     * @param target   the surface to draw on
+     * @param snapshot the snapshot, that isn't changed while it is drawn
+     * @param alpha    the part of the way, from 0 (the tick before the last) to 1 (the last tick)
+     */
+    public void draw(DrawSurface target, FrameSnapshot snapshot, double alpha) {
+        if (drawnBlocks.getTick() < 0 || !snapshot.sameBlocks(drawnBlocks)) {
+            snapshot.invalidateChangedBlocks(drawnBlocks, renderer);
+            drawnBlocks.copyBlocksFrom(snapshot);
+        }
+        drawing = snapshot;
+        drawingAlpha = alpha;
+        renderer.render(target, moving);
+        drawing = null;
+        if (snapshot.getTick() == lastTick) {
+            repeatedFrames++;
+        }
+        lastTick = snapshot.getTick();
+        frameCount++;
+    }
+
+    /**
+     * Draws what moves in the snapshot of the frame being drawn - the balls of multiball by a rasterizer, once
+     * there are enough of them.
+     *
+     * @param d the surface to draw on
+     */
+    private void drawMoving(DrawSurface d) {
+        if (rasterizer == null && drawing.getMultiballCount() >= TiledRasterizer.THRESHOLD) {
+            rasterizer = new TiledRasterizer(Game.WIDTH, Game.HEIGHT);
+        }
+        drawing.drawMoving(d, drawingAlpha, palette, rasterizer);
+    }
+
+    /**
+     * Returns the number of frames drawn.
+     *
+     * @return the number of frames
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Returns the number of frames that drew the same tick as the frame before them - no tick was published in
+     * time for them.
+     *
+     * @return the number of frames
+     */
+    public long getRepeatedFrames() {
+        return repeatedFrames;
+    }
+
+    /**
+     * Returns the color of an RGB value, made once for every value.
+     *
+     * @param rgb the RGB value, with alpha
+     * @return the color
+     */
+    private Color color(int rgb) {
+        for (int i = 0; i < rgbs.length; i++) {
+            if (rgbs[i] == rgb) {
+                return colors[i];
+            }
+        }
+        rgbs = Arrays.copyOf(rgbs, rgbs.length + 1);
+        colors = Arrays.copyOf(colors, colors.length + 1);
+        rgbs[rgbs.length - 1] = rgb;
+        colors[colors.length - 1] = new Color(rgb, true);
+        return colors[colors.length - 1];
+    }
+}
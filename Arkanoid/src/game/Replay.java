@@ -0,0 +1,175 @@
+// Tamar Rosenzweig
+package game;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * A recorded game: everything needed to play it again tick by tick, and how it ended.
+ * The game has no randomness, so a game is fully set by its ticks per second, its extra balls and the keys held
+ * down in every tick. Playing the same input on a new game gives the very same game, and the recorded outcome
+ * (ticks, score, blocks and balls left) tells whether it did.
+ * The file is: the magic "ARKR", a version, the ticks per second and extra balls, the InputLog, and the outcome.
+ */
+public class Replay {
+    private static final int MAGIC = 0x41524B52; // "ARKR"
+    private static final int VERSION = 1;
+    private final int ticksPerSecond;
+    private final int extraBalls;
+    private final InputLog log;
+    private long ticks;
+    private int score;
+    private int blocksLeft;
+    private int ballsLeft;
+
+    /**
+     * Constructs a replay of a game.
+     *
+     * @param ticksPerSecond the ticks per second of the game
+     * @param extraBalls     the extra balls added to the game (multiball)
+     * @param log            the input of the game
+     */
+    public Replay(int ticksPerSecond, int extraBalls, InputLog log) {
+        this.ticksPerSecond = ticksPerSecond;
+        this.extraBalls = extraBalls;
+        this.log = log;
+    }
+
+    /**
+     * Records how the game ended.
+     *
+     * @param game the game that was recorded
+     */
+    public void setOutcome(Game game) {
+        this.ticks = game.getTicks();
+        this.score = game.getScore();
+        this.blocksLeft = game.getRemainingBlocks();
+        this.ballsLeft = game.getRemainingBalls();
+    }
+
+    /**
+     * Checks whether a game ended the same way as the recorded one.
+     *
+     * @param game the game
+     * @return true if the ticks, score, blocks left and balls left are all the same
+     */
+    public boolean matchesOutcome(Game game) {
+        return game.getTicks() == ticks && game.getScore() == score
+                && game.getRemainingBlocks() == blocksLeft && game.getRemainingBalls() == ballsLeft;
+    }
+
+    /**
+     * Builds a headless game that plays the recorded input, initialized like the recorded game.
+     *
+     * @return the game, ready to tick
+     */
+    public Game newGame() {
+        Game game = new Game(new ReplayKeyboard(log));
+        game.setTicksPerSecond(ticksPerSecond);
+        game.initialize();
+        if (extraBalls > 0) {
+            game.addMultiball(extraBalls);
+        }
+        return game;
+    }
+
+    /**
+     * Returns the number of ticks the recorded game ran.
+     *
+     * @return the number of ticks
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Returns the final score of the recorded game.
+     *
+     * @return the score
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Returns the number of blocks left at the end of the recorded game.
+     *
+     * @return the blocks left
+     */
+    public int getBlocksLeft() {
+        return blocksLeft;
+    }
+
+    /**
+     * Returns the number of balls left at the end of the recorded game.
+     *
+     * @return the balls left
+     */
+    public int getBallsLeft() {
+        return ballsLeft;
+    }
+
+    /**
+     * Returns the recorded input.
+     *
+     * @return the input log
+     */
+    public InputLog getLog() {
+        return log;
+    }
+
+    /**
+     * Writes the replay to a file.
+     *
+     * @param path the path of the file
+     * @throws IOException if writing fails
+     */
+    public void save(String path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(ticksPerSecond);
+            out.writeInt(extraBalls);
+            log.write(out);
+            out.writeLong(ticks);
+            out.writeInt(score);
+            out.writeInt(blocksLeft);
+            out.writeInt(ballsLeft);
+        }
+    }
+
+    /**
+     * Reads a replay written by {@link #save}.
+     *
+     * @param path the path of the file
+     * @return the replay
+     * @throws IOException if reading fails, or the file isn't a replay of this version
+     */
+    public static Replay load(String path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(path + " isn't a replay file");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException(path + " is a replay of version " + version + ", expected " + VERSION);
+            }
+            int tps = in.readInt();
+            int extra = in.readInt();
+            if (tps <= 0 || extra < 0) {
+                throw new IOException(path + " has a bad header");
+            }
+            Replay replay = new Replay(tps, extra, InputLog.read(in));
+            replay.ticks = in.readLong();
+            replay.score = in.readInt();
+            replay.blocksLeft = in.readInt();
+            replay.ballsLeft = in.readInt();
+            return replay;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+// Tamar Rosenzweig
+package game;
+
+import java.io.IOException;
+
+/**
+ * Plays a recorded game again without a window, as fast as the CPU allows, and checks that it ends exactly the
+ * way the recorded game ended.
+ */
+public class ReplayDriver {
+    /**
+     * Loads a replay, plays it and prints how fast it ran and whether the outcome matched.
+     *
+     * @param args the path of the replay file
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: ReplayDriver <replay file>");
+            return;
+        }
+        Replay replay;
+        try {
+            replay = Replay.load(args[0]);
+        } catch (IOException e) {
+            System.out.println("Can't read the replay: " + e.getMessage());
+            return;
+        }
+        Game game = replay.newGame();
+        HeadlessRunner runner = new HeadlessRunner(game);
+        long ran = runner.run(replay.getTicks());
+        System.out.printf("ticks: %d of %d recorded, %d input runs%n", ran, replay.getTicks(),
+                replay.getLog().runs());
+        System.out.printf("speed: %.0f ticks per second (%.1fx real time)%n", runner.ticksPerSecond(),
+                runner.ticksPerSecond() / game.getTicksPerSecond());
+        System.out.printf("recorded: score %d, blocks left %d, balls left %d%n", replay.getScore(),
+                replay.getBlocksLeft(), replay.getBallsLeft());
+        System.out.printf("replayed: score %d, blocks left %d, balls left %d%n", game.getScore(),
+                game.getRemainingBlocks(), game.getRemainingBalls());
+        System.out.println(replay.matchesOutcome(game) ? "MATCH" : "MISMATCH");
+    }
+}
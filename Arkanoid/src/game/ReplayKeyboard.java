@@ -0,0 +1,30 @@
+// Tamar Rosenzweig
+package game;
+
+/**
+ * A keyboard that plays back an InputLog: in every tick it reports the keys logged for that tick, and no keys
+ * after the log ends.
+ */
+public class ReplayKeyboard implements InputSource {
+    private final InputLog log;
+    private int keyBits;
+
+    /**
+     * Constructs a keyboard that plays a log.
+     *
+     * @param log the log
+     */
+    public ReplayKeyboard(InputLog log) {
+        this.log = log;
+    }
+
+    @Override
+    public void beginTick(long tick) {
+        keyBits = tick < log.length() ? log.get(tick) : 0;
+    }
+
+    @Override
+    public boolean isPressed(String key) {
+        return InputLog.isPressed(keyBits, key);
+    }
+}
@@ -0,0 +1,128 @@
+// Tamar Rosenzweig
+package game;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A keyboard that plays a script instead of reading real keys, for a headless game: every key is held down
+ * during the ticks the script says.
+ */
+public class ScriptedKeyboard implements InputSource {
+    private final List<Press> presses = new ArrayList<>();
+    private long tick;
+
+    /**
+     * Adds a key press to the script.
+     *
+     * @param key      the key, like {@link biuoop.KeyboardSensor#LEFT_KEY}
+     * @param fromTick the first tick the key is held down in
+     * @param toTick   the tick the key is released in (not held down in it)
+     * @return this keyboard, so presses can be chained
+     */
+    public ScriptedKeyboard press(String key, int fromTick, int toTick) {
+        presses.add(new Press(key, fromTick, toTick));
+        return this;
+    }
+
+    /**
+     * Reads a script such as "left:0-120,right:200-260": key names (left, right, up, down, space, enter) and
+     * the ticks they are held down in, from the first tick to the tick they are released in.
+     *
+     * @param script the script, empty for a keyboard that is never pressed
+     * @return the keyboard
+     * @throws IllegalArgumentException if the script can't be read
+     */
+    public static ScriptedKeyboard parse(String script) {
+        ScriptedKeyboard keyboard = new ScriptedKeyboard();
+        if (script.isEmpty()) {
+            return keyboard;
+        }
+        for (String part : script.split(",")) {
+            String[] keyAndTicks = part.trim().split(":");
+            String[] ticks = keyAndTicks.length == 2 ? keyAndTicks[1].split("-") : new String[0];
+            if (ticks.length != 2) {
+                throw new IllegalArgumentException("a press must look like key:from-to, not " + part);
+            }
+            try {
+                keyboard.press(keyOf(keyAndTicks[0].trim()), Integer.parseInt(ticks[0].trim()),
+                        Integer.parseInt(ticks[1].trim()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("the ticks of a press must be numbers, not " + part);
+            }
+        }
+        return keyboard;
+    }
+
+    @Override
+    public void beginTick(long t) {
+        this.tick = t;
+    }
+
+    /**
+     * Returns the tick the game is in.
+     *
+     * @return the tick
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    @Override
+    public boolean isPressed(String key) {
+        for (Press p : presses) {
+            if (p.key.equals(key) && p.fromTick <= tick && tick < p.toTick) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the KeyboardSensor key of a key name of a script.
+     *
+     * @param name the name
+     * @return the key
+     * @throws IllegalArgumentException if there is no such key
+     */
+    private static String keyOf(String name) {
+        switch (name.toLowerCase()) {
+            case "left":
+                return LEFT_KEY;
+            case "right":
+                return RIGHT_KEY;
+            case "up":
+                return UP_KEY;
+            case "down":
+                return DOWN_KEY;
+            case "space":
+                return SPACE_KEY;
+            case "enter":
+                return ENTER_KEY;
+            default:
+                throw new IllegalArgumentException("unknown key " + name);
+        }
+    }
+
+    /**
+     * One key held down for a range of ticks.
+     */
+    private static final class Press {
+        private final String key;
+        private final int fromTick;
+        private final int toTick;
+
+        /**
+         * Constructs a press.
+         *
+         * @param key      the key
+         * @param fromTick the first tick the key is held down in
+         * @param toTick   the tick the key is released in
+         */
+        Press(String key, int fromTick, int toTick) {
+            this.key = key;
+            this.fromTick = fromTick;
+            this.toTick = toTick;
+        }
+    }
+}
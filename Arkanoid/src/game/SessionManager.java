@@ -0,0 +1,191 @@
+// Tamar Rosenzweig
+package game;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hosts many independent games in one process. The ticks of all the sessions run on one scheduler - a fixed pool of
+ * worker threads, one a core by default - at the ticks per second of every game, so a thousand sessions take a
+ * handful of threads and not a thousand. The first ticks of the sessions are spread over the period of a tick, so
+ * they don't all come due at once.
+ * A session that ends (its game is over, it was closed or a tick of it threw) stops being scheduled; the others go
+ * on. The manager reports how long the ticks of every session take and how late they start.
+ */
+public class SessionManager {
+    /**
+     * The first ticks of the sessions are spread over this many places in the period of a tick.
+     */
+    static final int STAGGER_SLOTS = 16;
+    private static final int DEFAULT_SESSIONS = 1000;
+    private static final int DEFAULT_SECONDS = 10;
+    private static final int WORST_SESSIONS = 5;
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final List<GameSession> sessions = new ArrayList<>();
+    private int nextId;
+
+    /**
+     * Constructs a manager with a worker thread for every core.
+     */
+    public SessionManager() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a manager with the given number of worker threads.
+     *
+     * @param workers the number of worker threads
+     */
+    public SessionManager(int workers) {
+        AtomicInteger threads = new AtomicInteger();
+        this.scheduler = new ScheduledThreadPoolExecutor(workers, task -> {
+            Thread thread = new Thread(task, "game-session-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.setRemoveOnCancelPolicy(true); // ended sessions leave the queue at once
+    }
+
+    /**
+     * Starts hosting a game: its ticks are run from now on, at its ticks per second, until it is over.
+     *
+     * @param game the game, initialized and headless (made with {@link Game#Game(InputSource)}); it must not be
+     *             used anywhere else while the session runs
+     * @return the session of the game
+     */
+    public synchronized GameSession open(Game game) {
+        GameSession session = new GameSession(nextId++, game);
+        long period = session.getPeriodNanos();
+        long delay = session.getId() % STAGGER_SLOTS * period / STAGGER_SLOTS;
+        session.setStartNanos(System.nanoTime() + delay);
+        session.scheduled(scheduler.scheduleAtFixedRate(session::runTick, delay, period, TimeUnit.NANOSECONDS));
+        sessions.add(session);
+        return session;
+    }
+
+    /**
+     * Returns all the sessions that were opened, the ended ones included.
+     *
+     * @return a copy of the list of the sessions
+     */
+    public synchronized List<GameSession> getSessions() {
+        return new ArrayList<>(sessions);
+    }
+
+    /**
+     * Returns the number of sessions that still run.
+     *
+     * @return the number of sessions
+     */
+    public synchronized int getRunningCount() {
+        int running = 0;
+        for (GameSession session : sessions) {
+            running += session.isRunning() ? 1 : 0;
+        }
+        return running;
+    }
+
+    /**
+     * Ends all the sessions and stops the worker threads, waiting for the ticks that already started.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void shutdown() throws InterruptedException {
+        for (GameSession session : getSessions()) {
+            session.close();
+        }
+        scheduler.shutdown();
+        scheduler.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Prints the statistics of the ticks of all the sessions together, and of the sessions with the slowest ticks.
+     *
+     * @param out the stream to print to
+     */
+    public void printReport(PrintStream out) {
+        List<GameSession> all = getSessions();
+        if (all.isEmpty()) {
+            out.println("no sessions");
+            return;
+        }
+        Histogram tickMicros = null;
+        Histogram lateMicros = null;
+        List<Histogram> perSession = new ArrayList<>();
+        List<GameSession> failed = new ArrayList<>();
+        for (GameSession session : all) {
+            Histogram ticks = session.getTickMicros();
+            Histogram late = session.getLateMicros();
+            tickMicros = tickMicros == null ? new Histogram(ticks) : tickMicros;
+            lateMicros = lateMicros == null ? new Histogram(late) : lateMicros;
+            tickMicros.merge(ticks);
+            lateMicros.merge(late);
+            perSession.add(ticks);
+            if (session.getFailure() != null) {
+                failed.add(session);
+            }
+        }
+        out.printf("%d sessions, %d running, %d failed, %d worker threads%n", all.size(), getRunningCount(),
+                failed.size(), scheduler.getCorePoolSize());
+        out.printf("tick time (us): mean %.1f, p50 %.1f, p99 %.1f, max %.1f%n", tickMicros.getMean(),
+                tickMicros.quantile(0.5), tickMicros.quantile(0.99), tickMicros.getMax());
+        out.printf("tick start late by (us): mean %.1f, p50 %.1f, p99 %.1f, max %.1f%n", lateMicros.getMean(),
+                lateMicros.quantile(0.5), lateMicros.quantile(0.99), lateMicros.getMax());
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < all.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparingDouble((Integer i) -> perSession.get(i).quantile(0.99)).reversed());
+        for (int k = 0; k < Math.min(WORST_SESSIONS, order.size()); k++) {
+            GameSession session = all.get(order.get(k));
+            Histogram ticks = perSession.get(order.get(k));
+            out.printf("  session %d: %d ticks, tick time p99 %.1f us, max %.1f us%n", session.getId(),
+                    ticks.getCount(), ticks.quantile(0.99), ticks.getMax());
+        }
+        for (GameSession session : failed) {
+            out.printf("  session %d failed: %s%n", session.getId(), session.getFailure());
+        }
+    }
+
+    /**
+     * Hosts many games played by auto pilots for a while, and prints the report.
+     * The arguments are optional: the number of sessions, the seconds to run them and the number of worker
+     * threads.
+     *
+     * @param args the sessions, the seconds and the workers
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int count = DEFAULT_SESSIONS;
+        int seconds = DEFAULT_SECONDS;
+        int workers = Runtime.getRuntime().availableProcessors();
+        try {
+            count = args.length > 0 ? Integer.parseInt(args[0]) : count;
+            seconds = args.length > 1 ? Integer.parseInt(args[1]) : seconds;
+            workers = args.length > 2 ? Integer.parseInt(args[2]) : workers;
+        } catch (NumberFormatException e) {
+            System.out.println("Command line argument isn't valid, using the defaults.");
+        }
+        SessionManager manager = new SessionManager(workers);
+        for (int i = 0; i < count; i++) {
+            Game game = new Game((InputSource) null);
+            game.autoPilot();
+            game.initialize();
+            manager.open(game);
+        }
+        Thread.sleep(seconds * 1000L);
+        manager.printReport(System.out);
+        long ticks = 0;
+        for (GameSession session : manager.getSessions()) {
+            ticks += session.getTicks();
+        }
+        System.out.printf("%d ticks in %d seconds, %.0f ticks per second of the %d due%n", ticks, seconds,
+                (double) ticks / seconds, (long) count * Game.DEFAULT_TICKS_PER_SECOND);
+        manager.shutdown();
+    }
+}
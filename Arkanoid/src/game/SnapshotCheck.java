@@ -0,0 +1,89 @@
+// Tamar Rosenzweig
+package game;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Checks that a snapshot round trip doesn't change how a game goes on: a game is snapshotted in the middle of a
+ * scripted run, and then played until it is over three times - on, restored into a new game (like a crash
+ * recovery) and restored into the same game (like a rollback). The three must end with byte-identical snapshots.
+ */
+public class SnapshotCheck {
+    static final String SCRIPT = "left:0-120,right:200-900,left:1000-1500,right:3000-3400,left:5000-9000";
+    static final long MAX_TICKS = 100000;
+    // the extra balls of every game checked, and the tick to snapshot it at, before it is over
+    static final int[][] CASES = {{0, 1000}, {50, 500}, {2000, 120}};
+
+    /**
+     * Makes a game played by the script, initialized.
+     *
+     * @param extraBalls the number of extra balls (multiball)
+     * @return the game
+     */
+    static Game newGame(int extraBalls) {
+        Game game = new Game(ScriptedKeyboard.parse(SCRIPT));
+        game.initialize();
+        if (extraBalls > 0) {
+            game.addMultiball(extraBalls);
+        }
+        return game;
+    }
+
+    /**
+     * Runs a game until the given tick, or until it is over.
+     *
+     * @param game the game
+     * @param tick the tick to stop at
+     */
+    private static void runUntil(Game game, long tick) {
+        while (game.getTicks() < tick && game.isRunning()) {
+            game.tick();
+        }
+    }
+
+    /**
+     * Checks the round trips of a game with the given number of extra balls.
+     *
+     * @param extraBalls   the number of extra balls
+     * @param snapshotTick the tick to snapshot the game at
+     * @return true if all the runs ended the same
+     */
+    static boolean check(int extraBalls, long snapshotTick) {
+        Game game = newGame(extraBalls);
+        runUntil(game, snapshotTick);
+        ByteBuffer snapshot = game.snapshot();
+        runUntil(game, MAX_TICKS);
+        ByteBuffer expected = game.snapshot();
+
+        Game restored = new Game(ScriptedKeyboard.parse(SCRIPT));
+        restored.restore(snapshot.duplicate());
+        runUntil(restored, MAX_TICKS);
+        boolean fresh = expected.equals(restored.snapshot());
+
+        game.restore(snapshot.duplicate());
+        runUntil(game, MAX_TICKS);
+        boolean rollback = expected.equals(game.snapshot());
+
+        System.out.printf("%d extra balls: %d snapshot bytes at tick %d, over at tick %d, score %d, blocks left "
+                        + "%d: new game %s, rollback %s%n", extraBalls, snapshot.remaining(), snapshotTick,
+                game.getTicks(), game.getScore(), game.getRemainingBlocks(), fresh ? "MATCH" : "MISMATCH",
+                rollback ? "MATCH" : "MISMATCH");
+        return fresh && rollback;
+    }
+
+    /**
+     * Runs the checks, and exits with status 1 if any of them failed.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) {
+        boolean passed = true;
+        for (int[] c : CASES) {
+            passed &= check(c[0], c[1]);
+        }
+        System.out.println(passed ? "PASSED" : "FAILED");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,374 @@
+// Tamar Rosenzweig
+package game;
+
+import sprites.Ball;
+import sprites.BallSystem;
+import sprites.Block;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * What a client of a {@link GameServer} sees of a game: the tick, the score, the place of the paddle and of every
+ * ball, and which blocks are left. Places are kept in fixed point - in 1/SCALE of a pixel - so the server and a
+ * client that applied the same deltas hold exactly the same numbers, and rounding never adds up.
+ * A delta holds only what changed between two states, in varints:
+ * <pre>
+ * varint ticks since the last state, byte flags, then the parts the flags say are there, in this order:
+ *   PADDLE       zigzag varint change of the x value of the paddle
+ *   BALLS_ALL    varint number of balls, then every ball: zigzag varint x, zigzag varint y
+ *   BALLS_MOVED  varint number of balls that moved, then every one: varint balls skipped since the last one,
+ *                zigzag varint change of x, zigzag varint change of y
+ *   BLOCKS       varint number of blocks that were removed or came back, then every one: varint blocks skipped
+ *   SCORE        zigzag varint change of the score
+ * </pre>
+ * The balls are sent all over again (BALLS_ALL) when their number changed, and only the ones that moved otherwise.
+ * A new client is sent the delta from an empty state - no balls, no blocks, everything 0 - which is the whole
+ * state.
+ */
+public final class SyncState {
+    /**
+     * The number of fixed point units in a pixel.
+     */
+    public static final int SCALE = 16;
+    static final int PADDLE = 1;
+    static final int BALLS_ALL = 2;
+    static final int BALLS_MOVED = 4;
+    static final int BLOCKS = 8;
+    static final int SCORE = 16;
+    private long tick;
+    private int score;
+    private int paddleX;
+    private int ballCount;
+    private int[] ballX = new int[0];
+    private int[] ballY = new int[0];
+    private long[] blocks = new long[(Game.LEVEL_BLOCKS + Long.SIZE - 1) / Long.SIZE]; // a bit for a block left
+
+    /**
+     * Reads the state of a game.
+     *
+     * @param game the game, between two ticks
+     */
+    public void capture(Game game) {
+        tick = game.getTicks();
+        score = game.getScore();
+        paddleX = fixed(game.getPaddle().getCollisionRectangle().getUpperLeft().getX());
+        List<Ball> balls = game.getBalls();
+        BallSystem multiball = game.getMultiball(false);
+        setBallCount(balls.size() + (multiball == null ? 0 : multiball.size()));
+        for (int i = 0; i < balls.size(); i++) {
+            ballX[i] = fixed(balls.get(i).getX());
+            ballY[i] = fixed(balls.get(i).getY());
+        }
+        for (int i = balls.size(); i < ballCount; i++) {
+            ballX[i] = fixed(multiball.getX(i - balls.size()));
+            ballY[i] = fixed(multiball.getY(i - balls.size()));
+        }
+        Arrays.fill(blocks, 0);
+        List<Block> levelBlocks = game.getLevelBlocks();
+        for (int i = 0; i < levelBlocks.size() && i < Game.LEVEL_BLOCKS; i++) {
+            if (game.contains(levelBlocks.get(i))) {
+                blocks[i / Long.SIZE] |= 1L << (i % Long.SIZE);
+            }
+        }
+    }
+
+    /**
+     * Makes this state the same as another one.
+     *
+     * @param other the state to copy
+     */
+    public void copyFrom(SyncState other) {
+        tick = other.tick;
+        score = other.score;
+        paddleX = other.paddleX;
+        setBallCount(other.ballCount);
+        System.arraycopy(other.ballX, 0, ballX, 0, ballCount);
+        System.arraycopy(other.ballY, 0, ballY, 0, ballCount);
+        System.arraycopy(other.blocks, 0, blocks, 0, blocks.length);
+    }
+
+    /**
+     * Writes what changed from one state to another.
+     *
+     * @param from the state the reader has
+     * @param to   the state the reader should get to
+     * @param out  the buffer to write to, with enough room left
+     */
+    public static void writeDelta(SyncState from, SyncState to, ByteBuffer out) {
+        putVarint(out, (int) (to.tick - from.tick));
+        int flagsAt = out.position();
+        out.put((byte) 0);
+        int flags = 0;
+        if (to.paddleX != from.paddleX) {
+            flags |= PADDLE;
+            putVarint(out, zigzag(to.paddleX - from.paddleX));
+        }
+        if (to.ballCount != from.ballCount) {
+            flags |= BALLS_ALL;
+            putVarint(out, to.ballCount);
+            for (int i = 0; i < to.ballCount; i++) {
+                putVarint(out, zigzag(to.ballX[i]));
+                putVarint(out, zigzag(to.ballY[i]));
+            }
+        } else {
+            int moved = 0;
+            for (int i = 0; i < to.ballCount; i++) {
+                moved += to.ballX[i] != from.ballX[i] || to.ballY[i] != from.ballY[i] ? 1 : 0;
+            }
+            if (moved > 0) {
+                flags |= BALLS_MOVED;
+                putVarint(out, moved);
+                int last = -1;
+                for (int i = 0; i < to.ballCount; i++) {
+                    if (to.ballX[i] != from.ballX[i] || to.ballY[i] != from.ballY[i]) {
+                        putVarint(out, i - last - 1);
+                        putVarint(out, zigzag(to.ballX[i] - from.ballX[i]));
+                        putVarint(out, zigzag(to.ballY[i] - from.ballY[i]));
+                        last = i;
+                    }
+                }
+            }
+        }
+        int toggled = 0;
+        for (int w = 0; w < to.blocks.length; w++) {
+            toggled += Long.bitCount(to.blocks[w] ^ from.blocks[w]);
+        }
+        if (toggled > 0) {
+            flags |= BLOCKS;
+            putVarint(out, toggled);
+            int last = -1;
+            for (int i = 0; i < Game.LEVEL_BLOCKS; i++) {
+                if (((to.blocks[i / Long.SIZE] ^ from.blocks[i / Long.SIZE]) & (1L << (i % Long.SIZE))) != 0) {
+                    putVarint(out, i - last - 1);
+                    last = i;
+                }
+            }
+        }
+        if (to.score != from.score) {
+            flags |= SCORE;
+            putVarint(out, zigzag(to.score - from.score));
+        }
+        out.put(flagsAt, (byte) flags);
+    }
+
+    /**
+     * Returns the most bytes a delta to a state can take, from any state.
+     *
+     * @param to the state the delta gets to
+     * @return the most bytes
+     */
+    static int maxDeltaSize(SyncState to) {
+        int varint = 5;
+        return varint + 1 + varint + 2 * varint + 3 * varint * to.ballCount + varint * (Game.LEVEL_BLOCKS + 1)
+                + varint;
+    }
+
+    /**
+     * Applies a delta written by {@link #writeDelta} from this state.
+     *
+     * @param in the buffer holding the delta, it is read to its end
+     * @throws IllegalArgumentException if the delta doesn't fit this state
+     */
+    public void applyDelta(ByteBuffer in) {
+        tick += getVarint(in);
+        int flags = in.get();
+        if ((flags & PADDLE) != 0) {
+            paddleX += unzigzag(getVarint(in));
+        }
+        if ((flags & BALLS_ALL) != 0) {
+            setBallCount(getVarint(in));
+            for (int i = 0; i < ballCount; i++) {
+                ballX[i] = unzigzag(getVarint(in));
+                ballY[i] = unzigzag(getVarint(in));
+            }
+        }
+        if ((flags & BALLS_MOVED) != 0) {
+            int moved = getVarint(in);
+            int i = -1;
+            for (int k = 0; k < moved; k++) {
+                i += getVarint(in) + 1;
+                if (i >= ballCount) {
+                    throw new IllegalArgumentException("a delta that moves ball " + i + " of " + ballCount);
+                }
+                ballX[i] += unzigzag(getVarint(in));
+                ballY[i] += unzigzag(getVarint(in));
+            }
+        }
+        if ((flags & BLOCKS) != 0) {
+            int toggled = getVarint(in);
+            int i = -1;
+            for (int k = 0; k < toggled; k++) {
+                i += getVarint(in) + 1;
+                if (i >= Game.LEVEL_BLOCKS) {
+                    throw new IllegalArgumentException("a delta that changes block " + i);
+                }
+                blocks[i / Long.SIZE] ^= 1L << (i % Long.SIZE);
+            }
+        }
+        if ((flags & SCORE) != 0) {
+            score += unzigzag(getVarint(in));
+        }
+        if (in.hasRemaining()) {
+            throw new IllegalArgumentException("a delta with " + in.remaining() + " bytes too many");
+        }
+    }
+
+    /**
+     * Checks whether two states are exactly the same.
+     *
+     * @param other the other state
+     * @return true if they are the same
+     */
+    public boolean sameAs(SyncState other) {
+        return tick == other.tick && score == other.score && paddleX == other.paddleX && ballCount == other.ballCount
+                && Arrays.equals(ballX, 0, ballCount, other.ballX, 0, ballCount)
+                && Arrays.equals(ballY, 0, ballCount, other.ballY, 0, ballCount)
+                && Arrays.equals(blocks, other.blocks);
+    }
+
+    /**
+     * Returns the tick of the state.
+     *
+     * @return the number of ticks the game ran
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Returns the score.
+     *
+     * @return the score
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Returns the x value of the left side of the paddle.
+     *
+     * @return the x value, in pixels
+     */
+    public double getPaddleX() {
+        return (double) paddleX / SCALE;
+    }
+
+    /**
+     * Returns the number of balls.
+     *
+     * @return the number of balls
+     */
+    public int getBallCount() {
+        return ballCount;
+    }
+
+    /**
+     * Returns the x value of the center of a ball.
+     *
+     * @param i the index of the ball
+     * @return the x value, in pixels
+     */
+    public double getBallX(int i) {
+        return (double) ballX[i] / SCALE;
+    }
+
+    /**
+     * Returns the y value of the center of a ball.
+     *
+     * @param i the index of the ball
+     * @return the y value, in pixels
+     */
+    public double getBallY(int i) {
+        return (double) ballY[i] / SCALE;
+    }
+
+    /**
+     * Checks whether a block of the level is left.
+     *
+     * @param i the index of the block in the level
+     * @return true if it wasn't hit
+     */
+    public boolean isBlockLeft(int i) {
+        return (blocks[i / Long.SIZE] & (1L << (i % Long.SIZE))) != 0;
+    }
+
+    /**
+     * Sets the number of balls, making the arrays larger if they are too small.
+     *
+     * @param count the number of balls
+     */
+    private void setBallCount(int count) {
+        if (count > ballX.length) {
+            ballX = Arrays.copyOf(ballX, Math.max(count, ballX.length * 2));
+            ballY = Arrays.copyOf(ballY, ballX.length);
+        }
+        ballCount = count;
+    }
+
+    /**
+     * Turns a place in pixels into fixed point.
+     *
+     * @param value the place, in pixels
+     * @return the place, in 1/SCALE of a pixel
+     */
+    private static int fixed(double value) {
+        return (int) Math.round(value * SCALE);
+    }
+
+    /**
+     * Maps a signed int to a non-negative one, small values (of any sign) to small ones.
+     *
+     * @param value the value
+     * @return the mapped value
+     */
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * Reverses {@link #zigzag}.
+     *
+     * @param value the mapped value
+     * @return the value
+     */
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Writes an int in 7 bit groups, low groups first, with the top bit set on all but the last - as an unsigned
+     * int, so a negative one takes 5 bytes.
+     *
+     * @param out   the buffer to write to
+     * @param value the value
+     */
+    static void putVarint(ByteBuffer out, int value) {
+        int v = value;
+        while ((v & ~0x7F) != 0) {
+            out.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.put((byte) v);
+    }
+
+    /**
+     * Reads an int written by {@link #putVarint}.
+     *
+     * @param in the buffer to read from
+     * @return the value
+     * @throws IllegalArgumentException if the varint is too long
+     */
+    static int getVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("a varint that is too long");
+    }
+}
@@ -0,0 +1,338 @@
+// Tamar Rosenzweig
+package game;
+
+import biuoop.KeyboardSensor;
+import geometry_primitives.Rectangle;
+import sprites.Ball;
+import sprites.BallSystem;
+import sprites.Block;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Many independent headless games, stepped together for training paddle agents, in the style of a vectorized
+ * gym environment: {@link #step} takes an action for every game, runs them all (on the threads of the common
+ * fork/join pool), and writes what every game looks like, the reward it got and whether its episode ended into
+ * buffers that are made once and reused by every step.
+ * The reward of a step is the score it added (5 for a block, 100 for clearing the level). An episode ends when
+ * the game is over - no balls or no blocks left - and the game then starts over by itself, so the observation of
+ * a done game is already the first one of its next episode.
+ * An observation is OBSERVATION_SIZE floats: the x value of the center of the paddle, the x, y, dx and dy of
+ * OBSERVED_BALLS balls (zeros for balls the game doesn't have), and 1 or 0 for every block of the level - whether
+ * it is still there. Places are divided by the size of the screen, so they are between 0 and 1.
+ */
+public class VectorizedEnvironment {
+    /**
+     * The action of leaving the paddle where it is.
+     */
+    public static final int STAY = 0;
+    /**
+     * The action of moving the paddle to the left.
+     */
+    public static final int LEFT = 1;
+    /**
+     * The action of moving the paddle to the right.
+     */
+    public static final int RIGHT = 2;
+    /**
+     * The number of balls an observation holds.
+     */
+    public static final int OBSERVED_BALLS = 3;
+    /**
+     * The number of floats in the observation of a game.
+     */
+    public static final int OBSERVATION_SIZE = 1 + OBSERVED_BALLS * 4 + Game.LEVEL_BLOCKS;
+    /**
+     * Games are stepped by one task each, up to this many games a task.
+     */
+    static final int TASK_SIZE = 4;
+    private static final int DEFAULT_GAMES = 64;
+    private static final int DEFAULT_STEPS = 20000;
+    private final Game[] games;
+    private final Controls[] controls;
+    private final int ticksPerStep;
+    private final int extraBalls;
+    private final float[] observations;
+    private final float[] rewards;
+    private final boolean[] dones;
+    private int[] actions;
+    private long steps;
+
+    /**
+     * Constructs the games and puts them at the start of their first episode.
+     *
+     * @param count        the number of games
+     * @param ticksPerStep the ticks a step runs with the same action (frame skipping)
+     * @param extraBalls   the extra balls added to every game (multiball), 0 for none
+     */
+    public VectorizedEnvironment(int count, int ticksPerStep, int extraBalls) {
+        if (count < 1 || ticksPerStep < 1 || extraBalls < 0) {
+            throw new IllegalArgumentException("count and ticks per step must be positive, extra balls not negative");
+        }
+        this.games = new Game[count];
+        this.controls = new Controls[count];
+        this.ticksPerStep = ticksPerStep;
+        this.extraBalls = extraBalls;
+        this.observations = new float[count * OBSERVATION_SIZE];
+        this.rewards = new float[count];
+        this.dones = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            controls[i] = new Controls();
+            startEpisode(i);
+        }
+    }
+
+    /**
+     * Returns the number of games.
+     *
+     * @return the number of games
+     */
+    public int size() {
+        return games.length;
+    }
+
+    /**
+     * Starts a new episode of every game.
+     *
+     * @return the observations of all the games, game i from index i * OBSERVATION_SIZE
+     */
+    public float[] reset() {
+        for (int i = 0; i < games.length; i++) {
+            startEpisode(i);
+            rewards[i] = 0;
+            dones[i] = false;
+        }
+        return observations;
+    }
+
+    /**
+     * Runs a step of every game with its action. Afterwards the buffers hold the new observations, the rewards
+     * and which episodes ended.
+     *
+     * @param stepActions an action for every game: STAY, LEFT or RIGHT
+     */
+    public void step(int[] stepActions) {
+        if (stepActions.length != games.length) {
+            throw new IllegalArgumentException(stepActions.length + " actions for " + games.length + " games");
+        }
+        this.actions = stepActions;
+        if (games.length <= TASK_SIZE) {
+            stepRange(0, games.length);
+        } else {
+            ForkJoinPool.commonPool().invoke(new StepTask(0, games.length));
+        }
+        steps += games.length;
+    }
+
+    /**
+     * Returns the buffer of the observations, game i from index i * OBSERVATION_SIZE. The same buffer is
+     * written by every step.
+     *
+     * @return the observations
+     */
+    public float[] getObservations() {
+        return observations;
+    }
+
+    /**
+     * Returns the buffer of the rewards of the last step, one for every game.
+     *
+     * @return the rewards
+     */
+    public float[] getRewards() {
+        return rewards;
+    }
+
+    /**
+     * Returns the buffer of whether the episode of every game ended in the last step.
+     *
+     * @return the episodes that ended
+     */
+    public boolean[] getDones() {
+        return dones;
+    }
+
+    /**
+     * Returns the number of steps of single games run so far.
+     *
+     * @return the number of steps
+     */
+    public long getSteps() {
+        return steps;
+    }
+
+    /**
+     * Runs a step of a range of the games.
+     *
+     * @param from the first game
+     * @param to   the game after the last
+     */
+    private void stepRange(int from, int to) {
+        for (int i = from; i < to; i++) {
+            Game game = games[i];
+            controls[i].action = actions[i];
+            int before = game.getScore();
+            for (int t = 0; t < ticksPerStep && game.isRunning(); t++) {
+                game.tick();
+            }
+            rewards[i] = game.getScore() - before;
+            dones[i] = !game.isRunning();
+            if (dones[i]) {
+                startEpisode(i);
+            } else {
+                observe(i);
+            }
+        }
+    }
+
+    /**
+     * Starts a new episode of a game, and observes it.
+     *
+     * @param i the game
+     */
+    private void startEpisode(int i) {
+        controls[i].action = STAY;
+        Game game = new Game(controls[i]);
+        game.initialize();
+        if (extraBalls > 0) {
+            game.addMultiball(extraBalls);
+        }
+        games[i] = game;
+        observe(i);
+    }
+
+    /**
+     * Writes the observation of a game into the buffer.
+     *
+     * @param i the game
+     */
+    private void observe(int i) {
+        Game game = games[i];
+        int o = i * OBSERVATION_SIZE;
+        Rectangle paddle = game.getPaddle().getCollisionRectangle();
+        observations[o++] = (float) ((paddle.getUpperLeft().getX() + paddle.getWidth() / 2) / Game.WIDTH);
+        List<Ball> balls = game.getBalls();
+        BallSystem multiball = game.getMultiball(false);
+        int extra = multiball == null ? 0 : multiball.size();
+        for (int k = 0; k < OBSERVED_BALLS; k++) {
+            double x = 0;
+            double y = 0;
+            double dx = 0;
+            double dy = 0;
+            if (k < balls.size()) {
+                Ball ball = balls.get(k);
+                x = ball.getX();
+                y = ball.getY();
+                dx = ball.getVelocity().getDx();
+                dy = ball.getVelocity().getDy();
+            } else if (k - balls.size() < extra) {
+                int j = k - balls.size();
+                x = multiball.getX(j);
+                y = multiball.getY(j);
+                dx = multiball.getDx(j);
+                dy = multiball.getDy(j);
+            }
+            observations[o++] = (float) (x / Game.WIDTH);
+            observations[o++] = (float) (y / Game.HEIGHT);
+            observations[o++] = (float) (dx / Game.WIDTH);
+            observations[o++] = (float) (dy / Game.HEIGHT);
+        }
+        List<Block> blocks = game.getLevelBlocks();
+        for (int k = 0; k < Game.LEVEL_BLOCKS; k++) {
+            observations[o++] = k < blocks.size() && game.contains(blocks.get(k)) ? 1 : 0;
+        }
+    }
+
+    /**
+     * Runs random actions on many games and prints how many steps a minute they take.
+     * The arguments are optional: the number of games, the number of steps of all of them, the ticks per step
+     * and the extra balls of every game.
+     *
+     * @param args the games, the steps, the ticks per step and the extra balls
+     */
+    public static void main(String[] args) {
+        int count = DEFAULT_GAMES;
+        int stepCount = DEFAULT_STEPS;
+        int ticks = 1;
+        int extra = 0;
+        try {
+            count = args.length > 0 ? Integer.parseInt(args[0]) : count;
+            stepCount = args.length > 1 ? Integer.parseInt(args[1]) : stepCount;
+            ticks = args.length > 2 ? Integer.parseInt(args[2]) : ticks;
+            extra = args.length > 3 ? Integer.parseInt(args[3]) : extra;
+        } catch (NumberFormatException e) {
+            System.out.println("Command line argument isn't valid, using the defaults.");
+        }
+        VectorizedEnvironment env = new VectorizedEnvironment(count, ticks, extra);
+        int[] stepActions = new int[count];
+        Random rand = new Random(0);
+        long episodes = 0;
+        double reward = 0;
+        long start = System.nanoTime();
+        for (int s = 0; s < stepCount; s++) {
+            for (int i = 0; i < count; i++) {
+                stepActions[i] = rand.nextInt(3);
+            }
+            env.step(stepActions);
+            for (int i = 0; i < count; i++) {
+                reward += env.getRewards()[i];
+                episodes += env.getDones()[i] ? 1 : 0;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / (double) Game.NANOS_PER_SECOND;
+        System.out.printf("%d games, %d steps of %d ticks: %.1f seconds%n", count, env.getSteps(), ticks, seconds);
+        System.out.printf("%.2f million steps a minute, %d episodes ended, %.0f reward%n",
+                env.getSteps() / seconds * 60 / 1e6, episodes, reward);
+    }
+
+    /**
+     * The keyboard of one game, pressing the keys of the action of the current step.
+     */
+    private static final class Controls implements InputSource {
+        private int action = STAY;
+
+        @Override
+        public void beginTick(long tick) {
+            // the action is set before the step, and holds for all of its ticks
+        }
+
+        @Override
+        public boolean isPressed(String key) {
+            return (action == LEFT && KeyboardSensor.LEFT_KEY.equals(key))
+                    || (action == RIGHT && KeyboardSensor.RIGHT_KEY.equals(key));
+        }
+    }
+
+    /**
+     * Steps a range of the games, splitting it in two while it is larger than TASK_SIZE.
+     */
+    private final class StepTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+
+        /**
+         * Constructs a task for a range of the games.
+         *
+         * @param from the first game
+         * @param to   the game after the last
+         */
+        private StepTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= TASK_SIZE) {
+                stepRange(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new StepTask(from, middle), new StepTask(middle, to));
+        }
+    }
+}
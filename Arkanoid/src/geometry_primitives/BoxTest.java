@@ -0,0 +1,36 @@
+// Tamar Rosenzweig
+package geometry_primitives;
+
+/**
+ * A reusable test of a moving shape against axis-aligned boxes.
+ * The motion is set on the implementing object, then it is tested against as many boxes as needed.
+ * After every test that returns true, {@link #toi()} and {@link #face()} describe that hit.
+ */
+public interface BoxTest {
+
+    /**
+     * Tests the motion against a box.
+     *
+     * @param minX   the left side of the box
+     * @param minY   the top side of the box
+     * @param maxX   the right side of the box
+     * @param maxY   the bottom side of the box
+     * @param maxToi hits after this time of impact are ignored (1 for the whole motion)
+     * @return true if there is a hit at a time of impact in [0, maxToi]
+     */
+    boolean test(double minX, double minY, double maxX, double maxY, double maxToi);
+
+    /**
+     * Returns the time of impact of the last hit, as a fraction of the motion (0 = start, 1 = end).
+     *
+     * @return the time of impact of the last hit
+     */
+    double toi();
+
+    /**
+     * Returns the side of the box that was hit in the last hit.
+     *
+     * @return the side of the last hit
+     */
+    Face face();
+}
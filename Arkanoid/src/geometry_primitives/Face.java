@@ -0,0 +1,61 @@
+// Tamar Rosenzweig
+package geometry_primitives;
+
+/**
+ * The side of an axis-aligned rectangle that a segment crosses.
+ * Every side knows its outward normal, the direction a ball that hits it is pushed back to.
+ */
+public enum Face {
+    /**
+     * No side - there was no hit.
+     */
+    NONE(0, 0),
+    /**
+     * The left side (the smallest x).
+     */
+    LEFT(-1, 0),
+    /**
+     * The right side (the largest x).
+     */
+    RIGHT(1, 0),
+    /**
+     * The top side (the smallest y, the screen's y axis points down).
+     */
+    TOP(0, -1),
+    /**
+     * The bottom side (the largest y).
+     */
+    BOTTOM(0, 1);
+
+    private final double normalX;
+    private final double normalY;
+
+    /**
+     * Constructs a side with its outward normal.
+     *
+     * @param normalX the x value of the outward normal
+     * @param normalY the y value of the outward normal
+     */
+    Face(double normalX, double normalY) {
+        this.normalX = normalX;
+        this.normalY = normalY;
+    }
+
+    /**
+     * Returns the x value of the outward normal of the side (0 for NONE).
+     *
+     * @return the x value of the normal
+     */
+    public double normalX() {
+        return normalX;
+    }
+
+    /**
+     * Returns the y value of the outward normal of the side (0 for NONE).
+     *
+     * @return the y value of the normal
+     */
+    public double normalY() {
+        return normalY;
+    }
+}
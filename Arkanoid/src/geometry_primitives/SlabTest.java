@@ -0,0 +1,151 @@
+// Tamar Rosenzweig
+package geometry_primitives;
+
+/**
+ * A segment versus axis-aligned box intersection test (the "slab" test), that doesn't allocate anything.
+ * The segment is (x, y) + t * (dx, dy), 0 &lt;= t &lt;= 1, and a hit is reported as the time of impact t and the
+ * side of the box that was crossed, instead of a list of points.
+ * The object is reused: set the segment once with {@link #reset}, then test it against as many boxes as needed.
+ * After every test that returns true, {@link #toi()} and {@link #face()} describe that hit.
+ */
+public class SlabTest implements BoxTest {
+    private double x;
+    private double y;
+    private double dx;
+    private double dy;
+    private double invDx;
+    private double invDy;
+    private double toi;
+    private Face face = Face.NONE;
+
+    /**
+     * Sets the segment to test.
+     *
+     * @param startX the x value of the start of the segment
+     * @param startY the y value of the start of the segment
+     * @param deltaX the change in x along the segment
+     * @param deltaY the change in y along the segment
+     */
+    public void reset(double startX, double startY, double deltaX, double deltaY) {
+        this.x = startX;
+        this.y = startY;
+        this.dx = deltaX;
+        this.dy = deltaY;
+        this.invDx = 1 / deltaX;
+        this.invDy = 1 / deltaY;
+        this.toi = 0;
+        this.face = Face.NONE;
+    }
+
+    /**
+     * Tests the segment against a box.
+     * If the segment starts outside the box, the hit is where it enters the box. If it starts inside the box,
+     * the hit is where it leaves it - the same point the edge by edge test of {@link Rectangle} finds.
+     *
+     * @param minX   the left side of the box
+     * @param minY   the top side of the box
+     * @param maxX   the right side of the box
+     * @param maxY   the bottom side of the box
+     * @param maxToi hits after this time of impact are ignored (1 for the whole segment)
+     * @return true if the segment crosses the side of the box at a time of impact in [0, maxToi]
+     */
+    @Override
+    public boolean test(double minX, double minY, double maxX, double maxY, double maxToi) {
+        double enter = Double.NEGATIVE_INFINITY;
+        double exit = Double.POSITIVE_INFINITY;
+        Face enterFace = Face.NONE;
+        Face exitFace = Face.NONE;
+        if (dx == 0) {
+            if (x < minX || x > maxX) {
+                return false;
+            }
+        } else {
+            double tMin = (minX - x) * invDx;
+            double tMax = (maxX - x) * invDx;
+            if (dx > 0) {
+                enter = tMin;
+                exit = tMax;
+                enterFace = Face.LEFT;
+                exitFace = Face.RIGHT;
+            } else {
+                enter = tMax;
+                exit = tMin;
+                enterFace = Face.RIGHT;
+                exitFace = Face.LEFT;
+            }
+        }
+        if (dy == 0) {
+            if (y < minY || y > maxY) {
+                return false;
+            }
+        } else {
+            double tMin = (minY - y) * invDy;
+            double tMax = (maxY - y) * invDy;
+            double near = dy > 0 ? tMin : tMax;
+            double far = dy > 0 ? tMax : tMin;
+            if (near > enter) {
+                enter = near;
+                enterFace = dy > 0 ? Face.TOP : Face.BOTTOM;
+            }
+            if (far < exit) {
+                exit = far;
+                exitFace = dy > 0 ? Face.BOTTOM : Face.TOP;
+            }
+        }
+        if (enter > exit) {
+            return false; // the segment's line misses the box
+        }
+        double t = enter;
+        Face f = enterFace;
+        if (enter < 0) { // the segment starts inside the box
+            t = exit;
+            f = exitFace;
+        }
+        if (t < 0 || t > maxToi || f == Face.NONE) {
+            return false;
+        }
+        this.toi = t;
+        this.face = f;
+        return true;
+    }
+
+    /**
+     * Returns the time of impact of the last hit, as a fraction of the segment (0 = start, 1 = end).
+     *
+     * @return the time of impact of the last hit
+     */
+    @Override
+    public double toi() {
+        return toi;
+    }
+
+    /**
+     * Returns the side of the box that was crossed in the last hit.
+     *
+     * @return the side of the last hit
+     */
+    @Override
+    public Face face() {
+        return face;
+    }
+
+    /**
+     * Returns the x value of the point on the segment at the given time of impact.
+     *
+     * @param t the time of impact
+     * @return the x value of the point
+     */
+    public double xAt(double t) {
+        return x + t * dx;
+    }
+
+    /**
+     * Returns the y value of the point on the segment at the given time of impact.
+     *
+     * @param t the time of impact
+     * @return the y value of the point
+     */
+    public double yAt(double t) {
+        return y + t * dy;
+    }
+}
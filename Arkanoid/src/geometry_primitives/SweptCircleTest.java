@@ -0,0 +1,293 @@
+// Tamar Rosenzweig
+package geometry_primitives;
+
+/**
+ * A moving circle versus axis-aligned box test, that doesn't allocate anything.
+ * The center of the circle moves along (x, y) + t * (dx, dy), 0 &lt;= t &lt;= 1. Instead of moving the circle,
+ * the box is grown by the radius (its Minkowski sum with the circle - a rectangle with round corners) and
+ * the center is tested against it: the two boxes grown along one axis with a {@link SlabTest}, and the four
+ * corners as circles.
+ * Besides the time of impact and the side, a hit reports the contact point on the box and the normal of
+ * the box at that point.
+ */
+public class SweptCircleTest implements BoxTest {
+    private final SlabTest slab = new SlabTest();
+    private double x;
+    private double y;
+    private double dx;
+    private double dy;
+    private double radius;
+    private double toi;
+    private Face face = Face.NONE;
+    private double contactX;
+    private double contactY;
+    private double normalX;
+    private double normalY;
+
+    /**
+     * Sets the motion to test.
+     *
+     * @param startX the x value of the center at the start
+     * @param startY the y value of the center at the start
+     * @param deltaX the change in x along the motion
+     * @param deltaY the change in y along the motion
+     * @param r      the radius of the circle
+     */
+    public void reset(double startX, double startY, double deltaX, double deltaY, double r) {
+        this.x = startX;
+        this.y = startY;
+        this.dx = deltaX;
+        this.dy = deltaY;
+        this.radius = r;
+        this.slab.reset(startX, startY, deltaX, deltaY);
+        this.toi = 0;
+        this.face = Face.NONE;
+    }
+
+    /**
+     * Tests the moving circle against a box.
+     * A circle that already overlaps the box hits it at time 0 if it moves towards it, and doesn't hit it at all
+     * if it moves away - so a circle that got stuck in a box gets out of it instead of passing through.
+     *
+     * @param minX   the left side of the box
+     * @param minY   the top side of the box
+     * @param maxX   the right side of the box
+     * @param maxY   the bottom side of the box
+     * @param maxToi hits after this time of impact are ignored (1 for the whole motion)
+     * @return true if the circle touches the box at a time of impact in [0, maxToi]
+     */
+    @Override
+    public boolean test(double minX, double minY, double maxX, double maxY, double maxToi) {
+        if (overlapsAtStart(minX, minY, maxX, maxY)) {
+            return touchAtStart(minX, minY, maxX, maxY);
+        }
+        double best = Double.POSITIVE_INFINITY;
+        Face sideFace = Face.NONE;
+        // the box grown sideways, then the box grown up and down
+        if (slab.test(minX - radius, minY, maxX + radius, maxY, maxToi)) {
+            best = slab.toi();
+            sideFace = slab.face();
+        }
+        if (slab.test(minX, minY - radius, maxX, maxY + radius, Math.min(best, maxToi))) {
+            best = slab.toi();
+            sideFace = slab.face();
+        }
+        // the round corners
+        double sideToi = best;
+        best = Math.min(best, cornerToi(minX, minY, Math.min(best, maxToi)));
+        best = Math.min(best, cornerToi(maxX, minY, Math.min(best, maxToi)));
+        best = Math.min(best, cornerToi(minX, maxY, Math.min(best, maxToi)));
+        best = Math.min(best, cornerToi(maxX, maxY, Math.min(best, maxToi)));
+        if (best > maxToi) {
+            return false;
+        }
+        double cx = x + best * dx;
+        double cy = y + best * dy;
+        if (best == sideToi) {
+            setSide(clamp(cx, minX, maxX), clamp(cy, minY, maxY), sideFace.normalX(), sideFace.normalY(), sideFace);
+        } else {
+            setContact(clamp(cx, minX, maxX), clamp(cy, minY, maxY), cx, cy);
+        }
+        if (dx * normalX + dy * normalY >= 0) {
+            return false; // only touching the box while moving along it or away from it
+        }
+        this.toi = best;
+        return true;
+    }
+
+    /**
+     * Checks whether the circle overlaps the box at the start of the motion.
+     *
+     * @param minX the left side of the box
+     * @param minY the top side of the box
+     * @param maxX the right side of the box
+     * @param maxY the bottom side of the box
+     * @return true if the distance between the center and the box is less than the radius
+     */
+    private boolean overlapsAtStart(double minX, double minY, double maxX, double maxY) {
+        double ox = x - clamp(x, minX, maxX);
+        double oy = y - clamp(y, minY, maxY);
+        return ox * ox + oy * oy < radius * radius;
+    }
+
+    /**
+     * Reports a hit at time 0 for a circle that overlaps the box, unless it is moving away from it.
+     *
+     * @param minX the left side of the box
+     * @param minY the top side of the box
+     * @param maxX the right side of the box
+     * @param maxY the bottom side of the box
+     * @return true if the circle moves towards the box
+     */
+    private boolean touchAtStart(double minX, double minY, double maxX, double maxY) {
+        double qx = clamp(x, minX, maxX);
+        double qy = clamp(y, minY, maxY);
+        if (qx == x && qy == y) {
+            // the center is inside the box, push it out through the closest side
+            double left = x - minX;
+            double right = maxX - x;
+            double top = y - minY;
+            double bottom = maxY - y;
+            double min = Math.min(Math.min(left, right), Math.min(top, bottom));
+            if (min == top) {
+                setSide(x, minY, 0, -1, Face.TOP);
+            } else if (min == bottom) {
+                setSide(x, maxY, 0, 1, Face.BOTTOM);
+            } else if (min == left) {
+                setSide(minX, y, -1, 0, Face.LEFT);
+            } else {
+                setSide(maxX, y, 1, 0, Face.RIGHT);
+            }
+        } else {
+            setContact(qx, qy, x, y);
+        }
+        if (dx * normalX + dy * normalY >= 0) {
+            return false; // already moving out of the box
+        }
+        this.toi = 0;
+        return true;
+    }
+
+    /**
+     * Returns the time at which the center enters the circle of the given radius around a corner of the box.
+     *
+     * @param cornerX the x value of the corner
+     * @param cornerY the y value of the corner
+     * @param maxToi  the end of the part of the motion to check
+     * @return the time of impact, or positive infinity if the center doesn't enter the circle before maxToi
+     */
+    private double cornerToi(double cornerX, double cornerY, double maxToi) {
+        double mx = x - cornerX;
+        double my = y - cornerY;
+        double a = dx * dx + dy * dy;
+        double b = mx * dx + my * dy;
+        double c = mx * mx + my * my - radius * radius;
+        if (a == 0 || b >= 0) {
+            return Double.POSITIVE_INFINITY; // not moving, or moving away from the corner
+        }
+        double disc = b * b - a * c;
+        if (disc < 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double t = (-b - Math.sqrt(disc)) / a;
+        if (t < 0 || t > maxToi) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return t;
+    }
+
+    /**
+     * Sets the contact point, and the normal and side from the contact point towards the center.
+     *
+     * @param px the x value of the contact point on the box
+     * @param py the y value of the contact point on the box
+     * @param cx the x value of the center at the time of the contact
+     * @param cy the y value of the center at the time of the contact
+     */
+    private void setContact(double px, double py, double cx, double cy) {
+        contactX = px;
+        contactY = py;
+        double nx = cx - px;
+        double ny = cy - py;
+        double length = Math.sqrt(nx * nx + ny * ny);
+        if (length == 0) {
+            normalX = 0;
+            normalY = 0;
+            face = Face.NONE;
+            return;
+        }
+        normalX = nx / length;
+        normalY = ny / length;
+        if (Math.abs(normalX) > Math.abs(normalY)) {
+            face = normalX < 0 ? Face.LEFT : Face.RIGHT;
+        } else {
+            face = normalY < 0 ? Face.TOP : Face.BOTTOM;
+        }
+    }
+
+    /**
+     * Sets the contact point, normal and side of a contact on one of the sides of the box.
+     *
+     * @param px the x value of the contact point
+     * @param py the y value of the contact point
+     * @param nx the x value of the normal of the side
+     * @param ny the y value of the normal of the side
+     * @param f  the side
+     */
+    private void setSide(double px, double py, double nx, double ny, Face f) {
+        contactX = px;
+        contactY = py;
+        normalX = nx;
+        normalY = ny;
+        face = f;
+    }
+
+    /**
+     * Clamps a value into a range.
+     *
+     * @param v   the value
+     * @param min the bottom of the range
+     * @param max the top of the range
+     * @return the closest value to v in [min, max]
+     */
+    private static double clamp(double v, double min, double max) {
+        return Math.max(min, Math.min(max, v));
+    }
+
+    /**
+     * Returns the time of impact of the last hit, as a fraction of the motion (0 = start, 1 = end).
+     *
+     * @return the time of impact of the last hit
+     */
+    @Override
+    public double toi() {
+        return toi;
+    }
+
+    /**
+     * Returns the side of the box that was hit in the last hit. A hit on a round corner is reported as
+     * the side its normal points to the most.
+     *
+     * @return the side of the last hit
+     */
+    @Override
+    public Face face() {
+        return face;
+    }
+
+    /**
+     * Returns the x value of the contact point of the last hit, on the side of the box.
+     *
+     * @return the x value of the contact point
+     */
+    public double contactX() {
+        return contactX;
+    }
+
+    /**
+     * Returns the y value of the contact point of the last hit, on the side of the box.
+     *
+     * @return the y value of the contact point
+     */
+    public double contactY() {
+        return contactY;
+    }
+
+    /**
+     * Returns the x value of the (unit) normal of the box at the contact point of the last hit.
+     *
+     * @return the x value of the normal
+     */
+    public double normalX() {
+        return normalX;
+    }
+
+    /**
+     * Returns the y value of the (unit) normal of the box at the contact point of the last hit.
+     *
+     * @return the y value of the normal
+     */
+    public double normalY() {
+        return normalY;
+    }
+}
@@ -37,4 +37,14 @@ public class BallRemover implements HitListener {
         hitter.removeFromGame(game);
         remainingBalls.decrease(1);
     }
+
+    /**
+     * Describes what hitEvent does: the ball is removed.
+     *
+     * @param effects the effects to add what the listener does to
+     */
+    @Override
+    public void describe(HitEffects effects) {
+        effects.dropBall();
+    }
 }
\ No newline at end of file
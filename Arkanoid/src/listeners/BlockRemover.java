@@ -38,4 +38,14 @@ public class BlockRemover implements HitListener {
         beingHit.removeHitListener(this);
         remainingBlocks.decrease(1);
     }
+
+    /**
+     * Describes what hitEvent does: the block is removed, and the ball takes its color.
+     *
+     * @param effects the effects to add what the listener does to
+     */
+    @Override
+    public void describe(HitEffects effects) {
+        effects.removeBlock();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,63 @@
+// Tamar Rosenzweig
+package listeners;
+
+/**
+ * What the hit listeners of a block do when a ball of another color hits it, as each listener describes it - so
+ * a simulation of the game that has no sprites (a game fork) applies the same rules the listeners do, and not a
+ * copy of them.
+ */
+public class HitEffects {
+    private boolean removesBlock;
+    private boolean dropsBall;
+    private int score;
+
+    /**
+     * Says that the block is removed, and the ball takes its color.
+     */
+    public void removeBlock() {
+        removesBlock = true;
+    }
+
+    /**
+     * Says that the ball is removed.
+     */
+    public void dropBall() {
+        dropsBall = true;
+    }
+
+    /**
+     * Says that the score increases.
+     *
+     * @param points the number of points added
+     */
+    public void addScore(int points) {
+        score += points;
+    }
+
+    /**
+     * Checks whether the block is removed.
+     *
+     * @return true if it is removed
+     */
+    public boolean removesBlock() {
+        return removesBlock;
+    }
+
+    /**
+     * Checks whether the ball is removed.
+     *
+     * @return true if it is removed
+     */
+    public boolean dropsBall() {
+        return dropsBall;
+    }
+
+    /**
+     * Returns the number of points the score increases by.
+     *
+     * @return the number of points
+     */
+    public int getScore() {
+        return score;
+    }
+}
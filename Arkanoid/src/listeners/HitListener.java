@@ -16,4 +16,13 @@ public interface HitListener {
      * @param hitter   the Ball that is doing the hitting
      */
     void hitEvent(Block beingHit, Ball hitter);
+
+    /**
+     * Describes what hitEvent does, for simulations of the game that have no sprites. A listener that changes
+     * nothing a simulation keeps describes nothing.
+     *
+     * @param effects the effects to add what the listener does to
+     */
+    default void describe(HitEffects effects) {
+    }
 }
\ No newline at end of file
@@ -9,6 +9,10 @@ import sprites.Ball;
  * It implements the HitListener interface to update the score when blocks are hit.
  */
 public class ScoreTrackingListener implements HitListener {
+    /**
+     * The points a hit on a block is worth.
+     */
+    public static final int HIT_SCORE = 5;
     private Counter currentScore;
 
     /**
@@ -27,6 +31,16 @@ public class ScoreTrackingListener implements HitListener {
      * @param hitter   the ball that is hitting the block
      */
     public void hitEvent(Block beingHit, Ball hitter) {
-        this.currentScore.increase(5);
+        this.currentScore.increase(HIT_SCORE);
+    }
+
+    /**
+     * Describes what hitEvent does: the score increases.
+     *
+     * @param effects the effects to add what the listener does to
+     */
+    @Override
+    public void describe(HitEffects effects) {
+        effects.addScore(HIT_SCORE);
     }
 }
\ No newline at end of file
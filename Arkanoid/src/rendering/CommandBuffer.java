@@ -0,0 +1,357 @@
+// Tamar Rosenzweig
+package rendering;
+
+import biuoop.DrawSurface;
+
+import java.awt.Color;
+import java.awt.Image;
+import java.awt.Polygon;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A DrawSurface that records what is drawn on it, to draw it all on another surface at once with as few color
+ * changes as it can. The calls are kept in arrays of ints that are reused from frame to frame, so recording a
+ * frame allocates nothing once the arrays are large enough.
+ * {@link #flush} sorts the calls by color and by kind, so all the calls of a color are drawn after one setColor,
+ * but a call is never moved before an earlier call of another color or kind that it overlaps (by the tiles of
+ * their bounding boxes): every call gets a level one higher than the earlier overlapping calls it can't join,
+ * and the calls are drawn level by level. So a frame looks exactly as if it was drawn call by call.
+ */
+public class CommandBuffer implements DrawSurface {
+    private static final int LINE = 0;
+    private static final int DRAW_OVAL = 1;
+    private static final int FILL_OVAL = 2;
+    private static final int DRAW_RECTANGLE = 3;
+    private static final int FILL_RECTANGLE = 4;
+    private static final int IMAGE = 5;
+    private static final int TEXT = 6;
+    private static final int DRAW_POLYGON = 7;
+    private static final int FILL_POLYGON = 8;
+    private static final int KINDS = 16;
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int INDEX_BITS = 24;
+    private static final int KEY_BITS = 24;
+    private static final int TILE = 64;
+    private static final int TEXT_DESCENT = 2;
+    private final int width;
+    private final int height;
+    private final int columns;
+    private final int rows;
+    private final List<Color> palette = new ArrayList<>();
+    private final Map<Color, Integer> colorIndex = new HashMap<>();
+    private final List<Object> objects = new ArrayList<>(); // the strings, images and polygons of the calls
+    private final int[] tileLevel; // the highest level of a call on the tile
+    private final int[] tileKey; // the key of the calls of that level on the tile, -1 if there are more than one
+    private int[] kinds = new int[INITIAL_CAPACITY];
+    private int[] keys = new int[INITIAL_CAPACITY]; // the color and the kind of a call
+    private int[] args = new int[INITIAL_CAPACITY * 4];
+    private long[] order = new long[INITIAL_CAPACITY];
+    private int count;
+    private int color = -1;
+    private int colorChanges;
+
+    /**
+     * Constructs an empty buffer of a surface of the given size.
+     *
+     * @param width  the width of the surface
+     * @param height the height of the surface
+     */
+    public CommandBuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.columns = (width + TILE - 1) / TILE;
+        this.rows = (height + TILE - 1) / TILE;
+        this.tileLevel = new int[columns * rows];
+        this.tileKey = new int[columns * rows];
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public void setColor(Color c) {
+        Integer index = colorIndex.get(c);
+        if (index == null) {
+            index = palette.size();
+            palette.add(c);
+            colorIndex.put(c, index);
+        }
+        color = index;
+    }
+
+    @Override
+    public void drawLine(int x1, int y1, int x2, int y2) {
+        add(LINE, x1, y1, x2, y2, null);
+    }
+
+    @Override
+    public void drawOval(int x, int y, int w, int h) {
+        add(DRAW_OVAL, x, y, w, h, null);
+    }
+
+    @Override
+    public void fillOval(int x, int y, int w, int h) {
+        add(FILL_OVAL, x, y, w, h, null);
+    }
+
+    @Override
+    public void drawRectangle(int x, int y, int w, int h) {
+        add(DRAW_RECTANGLE, x, y, w, h, null);
+    }
+
+    @Override
+    public void fillRectangle(int x, int y, int w, int h) {
+        add(FILL_RECTANGLE, x, y, w, h, null);
+    }
+
+    @Override
+    public void drawImage(int x, int y, Image image) {
+        add(IMAGE, x, y, image.getWidth(null), image.getHeight(null), image);
+    }
+
+    @Override
+    public void drawCircle(int x, int y, int r) {
+        add(DRAW_OVAL, x - r, y - r, 2 * r, 2 * r, null);
+    }
+
+    @Override
+    public void fillCircle(int x, int y, int r) {
+        add(FILL_OVAL, x - r, y - r, 2 * r, 2 * r, null);
+    }
+
+    @Override
+    public void drawText(int x, int y, String s, int size) {
+        add(TEXT, x, y, size, 0, s);
+    }
+
+    @Override
+    public void drawPolygon(Polygon p) {
+        add(DRAW_POLYGON, 0, 0, 0, 0, p);
+    }
+
+    @Override
+    public void fillPolygon(Polygon p) {
+        add(FILL_POLYGON, 0, 0, 0, 0, p);
+    }
+
+    /**
+     * Returns the number of calls recorded since the last flush.
+     *
+     * @return the number of calls
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the number of times the last flush set the color of the target.
+     *
+     * @return the number of color changes
+     */
+    public int getColorChanges() {
+        return colorChanges;
+    }
+
+    /**
+     * Draws all the recorded calls on a surface, sorted by level, color and kind, and empties the buffer.
+     *
+     * @param target the surface to draw on
+     */
+    public void flush(DrawSurface target) {
+        sort();
+        colorChanges = 0;
+        int current = -1;
+        for (int k = 0; k < count; k++) {
+            int i = (int) (order[k] & ((1L << INDEX_BITS) - 1));
+            int callColor = keys[i] / KINDS;
+            if (callColor != current && callColor < palette.size()) {
+                target.setColor(palette.get(callColor));
+                current = callColor;
+                colorChanges++;
+            }
+            draw(target, i);
+        }
+        count = 0;
+        objects.clear();
+    }
+
+    /**
+     * Gives every call a level and sorts the calls by level, key and order.
+     */
+    private void sort() {
+        Arrays.fill(tileLevel, -1);
+        for (int i = 0; i < count; i++) {
+            int e = i * 4;
+            int x1;
+            int y1;
+            int x2;
+            int y2;
+            switch (kinds[i]) {
+                case LINE:
+                    x1 = Math.min(args[e], args[e + 2]);
+                    y1 = Math.min(args[e + 1], args[e + 3]);
+                    x2 = Math.max(args[e], args[e + 2]);
+                    y2 = Math.max(args[e + 1], args[e + 3]);
+                    break;
+                case TEXT:
+                    // the width of the text isn't known without a font, so it is taken to the right end
+                    x1 = args[e] - args[e + 2] / TEXT_DESCENT;
+                    y1 = args[e + 1] - args[e + 2];
+                    x2 = width;
+                    y2 = args[e + 1] + args[e + 2] / TEXT_DESCENT;
+                    break;
+                case IMAGE:
+                    // the last argument is the index of the image, so the size is the image's
+                    Image image = (Image) objects.get(args[e + 3]);
+                    x1 = args[e];
+                    y1 = args[e + 1];
+                    x2 = args[e] + image.getWidth(null);
+                    y2 = args[e + 1] + image.getHeight(null);
+                    break;
+                case DRAW_POLYGON:
+                case FILL_POLYGON:
+                    java.awt.Rectangle bounds = ((Polygon) objects.get(args[e])).getBounds();
+                    x1 = bounds.x;
+                    y1 = bounds.y;
+                    x2 = bounds.x + bounds.width;
+                    y2 = bounds.y + bounds.height;
+                    break;
+                default:
+                    x1 = args[e];
+                    y1 = args[e + 1];
+                    x2 = args[e] + args[e + 2];
+                    y2 = args[e + 1] + args[e + 3];
+                    break;
+            }
+            int level = levelOf(keys[i], x1, y1, x2, y2);
+            order[i] = ((long) level << (KEY_BITS + INDEX_BITS)) | ((long) keys[i] << INDEX_BITS) | i;
+        }
+        Arrays.sort(order, 0, count);
+    }
+
+    /**
+     * Finds the level of a call and records it on the tiles of its bounding box: the lowest level that is after
+     * every overlapping call of another key, and not before any overlapping call of the same key.
+     *
+     * @param key the key of the call
+     * @param x1  the left side of the bounding box
+     * @param y1  the top of the bounding box
+     * @param x2  the right side of the bounding box
+     * @param y2  the bottom of the bounding box
+     * @return the level
+     */
+    private int levelOf(int key, int x1, int y1, int x2, int y2) {
+        int firstColumn = Math.max(0, Math.floorDiv(x1, TILE));
+        int lastColumn = Math.min(columns - 1, Math.floorDiv(x2, TILE));
+        int firstRow = Math.max(0, Math.floorDiv(y1, TILE));
+        int lastRow = Math.min(rows - 1, Math.floorDiv(y2, TILE));
+        int level = 0;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int t = row * columns + column;
+                if (tileLevel[t] >= 0) {
+                    level = Math.max(level, tileKey[t] == key ? tileLevel[t] : tileLevel[t] + 1);
+                }
+            }
+        }
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int t = row * columns + column;
+                if (level > tileLevel[t]) {
+                    tileLevel[t] = level;
+                    tileKey[t] = key;
+                } else if (level == tileLevel[t] && tileKey[t] != key) {
+                    tileKey[t] = -1;
+                }
+            }
+        }
+        return level;
+    }
+
+    /**
+     * Draws one recorded call.
+     *
+     * @param target the surface to draw on
+     * @param i      the index of the call
+     */
+    private void draw(DrawSurface target, int i) {
+        int e = i * 4;
+        switch (kinds[i]) {
+            case LINE:
+                target.drawLine(args[e], args[e + 1], args[e + 2], args[e + 3]);
+                break;
+            case DRAW_OVAL:
+                target.drawOval(args[e], args[e + 1], args[e + 2], args[e + 3]);
+                break;
+            case FILL_OVAL:
+                target.fillOval(args[e], args[e + 1], args[e + 2], args[e + 3]);
+                break;
+            case DRAW_RECTANGLE:
+                target.drawRectangle(args[e], args[e + 1], args[e + 2], args[e + 3]);
+                break;
+            case FILL_RECTANGLE:
+                target.fillRectangle(args[e], args[e + 1], args[e + 2], args[e + 3]);
+                break;
+            case IMAGE:
+                target.drawImage(args[e], args[e + 1], (Image) objects.get(args[e + 3]));
+                break;
+            case TEXT:
+                target.drawText(args[e], args[e + 1], (String) objects.get(args[e + 3]), args[e + 2]);
+                break;
+            case DRAW_POLYGON:
+                target.drawPolygon((Polygon) objects.get(args[e]));
+                break;
+            default:
+                target.fillPolygon((Polygon) objects.get(args[e]));
+                break;
+        }
+    }
+
+    /**
+     * Records a call. A call with an object keeps the object's index in the last argument (the first for a
+     * polygon, that has no other arguments).
+     *
+     * @param kind   the kind of the call
+     * @param a      the first argument
+     * @param b      the second argument
+     * @param c      the third argument
+     * @param d      the fourth argument
+     * @param object the string, image or polygon of the call, null for none
+     */
+    private void add(int kind, int a, int b, int c, int d, Object object) {
+        if (count == kinds.length) {
+            int capacity = count * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            args = Arrays.copyOf(args, capacity * 4);
+            order = new long[capacity];
+        }
+        if (count >= 1 << INDEX_BITS) {
+            throw new IllegalStateException("more than " + (1 << INDEX_BITS) + " calls in a frame");
+        }
+        int e = count * 4;
+        args[e] = a;
+        args[e + 1] = b;
+        args[e + 2] = c;
+        args[e + 3] = d;
+        if (object != null) {
+            args[kind == DRAW_POLYGON || kind == FILL_POLYGON ? e : e + 3] = objects.size();
+            objects.add(object);
+        }
+        kinds[count] = kind;
+        // a call before any color gets the color past the palette, and never sets one
+        keys[count] = (color < 0 ? (1 << (KEY_BITS - 5)) - 1 : color) * KINDS + kind;
+        count++;
+    }
+}
@@ -0,0 +1,168 @@
+// Tamar Rosenzweig
+package rendering;
+
+import biuoop.DrawSurface;
+
+import java.awt.Color;
+import java.awt.Polygon;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Checks that a {@link CommandBuffer} draws exactly what its calls draw one by one: frames of random calls of
+ * every kind - lines, ovals, circles, rectangles, text, polygons and images, some with transparent pixels and one
+ * as large as the surface - in a few colors, are drawn on one surface straight and on another through the
+ * buffer, and the two must have the same pixels. The same buffer records all the frames, so reusing its arrays is
+ * checked too.
+ */
+public class CommandBufferCheck {
+    static final int WIDTH = 800;
+    static final int HEIGHT = 600;
+    static final int FRAMES = 50;
+    static final int CALLS = 3000;
+    static final int KINDS = 14;
+    static final int MARGIN = 20; // how far out of the surface a call may start
+    static final int MAX_SIZE = 120;
+    static final long SEED = 1;
+    private static final Color[] COLORS = {Color.RED, Color.WHITE, Color.BLACK, Color.GREEN, Color.BLUE,
+            new Color(222, 49, 99), Color.GRAY};
+    private final Random random = new Random(SEED);
+    private final BufferedImage[] images;
+
+    /**
+     * Constructs a check, with its images.
+     */
+    public CommandBufferCheck() {
+        images = new BufferedImage[]{image(30, 20), image(64, 64), image(WIDTH, HEIGHT)};
+    }
+
+    /**
+     * Makes an image of random pixels, half of them transparent.
+     *
+     * @param w the width of the image
+     * @param h the height of the image
+     * @return the image
+     */
+    private BufferedImage image(int w, int h) {
+        BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                if (random.nextBoolean()) {
+                    image.setRGB(x, y, 0xFF000000 | random.nextInt(1 << 24));
+                }
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Makes the same random call on two surfaces.
+     *
+     * @param first  a surface
+     * @param second the other surface
+     */
+    private void call(DrawSurface first, DrawSurface second) {
+        Color color = COLORS[random.nextInt(COLORS.length)];
+        first.setColor(color);
+        second.setColor(color);
+        int x = random.nextInt(WIDTH + 2 * MARGIN) - MARGIN;
+        int y = random.nextInt(HEIGHT + 2 * MARGIN) - MARGIN;
+        int w = random.nextInt(MAX_SIZE);
+        int h = random.nextInt(MAX_SIZE);
+        int kind = random.nextInt(KINDS);
+        for (DrawSurface d : new DrawSurface[]{first, second}) {
+            switch (kind) {
+                case 0:
+                case 1:
+                    d.fillCircle(x, y, w / 10);
+                    break;
+                case 2:
+                case 3:
+                    d.drawCircle(x, y, w / 10);
+                    break;
+                case 4:
+                    d.drawLine(x, y, x + w - MAX_SIZE / 2, y + h - MAX_SIZE / 2);
+                    break;
+                case 5:
+                    d.fillRectangle(x, y, w, h / 4);
+                    break;
+                case 6:
+                    d.drawRectangle(x, y, w, h / 4);
+                    break;
+                case 7:
+                    d.fillOval(x, y, w, h);
+                    break;
+                case 8:
+                    d.drawOval(x, y, w, h);
+                    break;
+                case 9:
+                    d.drawText(x, y, "Score: " + w, 10 + h / 10);
+                    break;
+                case 10:
+                    d.fillPolygon(new Polygon(new int[]{x, x + w, x}, new int[]{y, y, y + h}, 3));
+                    break;
+                case 11:
+                    d.drawPolygon(new Polygon(new int[]{x, x + w, x + w / 2}, new int[]{y, y + h / 2, y + h}, 3));
+                    break;
+                case 12:
+                    d.drawImage(x, y, images[w % 2]);
+                    break;
+                default:
+                    if (w % 10 == 0) {
+                        d.drawImage(0, 0, images[2]);
+                    } else {
+                        d.drawImage(x, y, images[w % 2]);
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Draws the frames both ways and compares them.
+     *
+     * @return true if all the frames were the same
+     */
+    boolean run() {
+        RasterSurface expected = new RasterSurface(WIDTH, HEIGHT);
+        RasterSurface actual = new RasterSurface(WIDTH, HEIGHT);
+        CommandBuffer commands = new CommandBuffer(WIDTH, HEIGHT);
+        int differentFrames = 0;
+        int mostDifferences = 0;
+        long calls = 0;
+        long colorChanges = 0;
+        for (int frame = 0; frame < FRAMES; frame++) {
+            expected.clear(Color.BLACK);
+            actual.clear(Color.BLACK);
+            int n = 1 + random.nextInt(CALLS);
+            for (int i = 0; i < n; i++) {
+                call(expected, commands);
+            }
+            calls += commands.size();
+            commands.flush(actual);
+            colorChanges += commands.getColorChanges();
+            int differences = expected.countDifferences(actual);
+            if (differences > 0) {
+                differentFrames++;
+                mostDifferences = Math.max(mostDifferences, differences);
+            }
+        }
+        System.out.printf("%d frames, %d calls, %d color changes, %d frames different (at most %d pixels): %s%n",
+                FRAMES, calls, colorChanges, differentFrames, mostDifferences,
+                differentFrames == 0 ? "MATCH" : "MISMATCH");
+        return differentFrames == 0;
+    }
+
+    /**
+     * Runs the check, and exits with status 1 if it failed.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) {
+        boolean passed = new CommandBufferCheck().run();
+        System.out.println(passed ? "PASSED" : "FAILED");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+// Tamar Rosenzweig
+package rendering;
+
+import java.util.Arrays;
+
+/**
+ * The screen divided into square tiles, with a mark on the tiles that have to be drawn again. Marking an area
+ * marks every tile it touches, so an area is redrawn a little larger than it is - in whole tiles - but keeping
+ * the marks costs one boolean a tile, whatever was drawn.
+ */
+public class DirtyTiles {
+    /**
+     * The size of a tile, in pixels.
+     */
+    public static final int TILE = 32;
+    private final int columns;
+    private final int rows;
+    private final boolean[] marks;
+    private int count;
+
+    /**
+     * Constructs the tiles of a screen, none of them marked.
+     *
+     * @param width  the width of the screen
+     * @param height the height of the screen
+     */
+    public DirtyTiles(int width, int height) {
+        this.columns = (width + TILE - 1) / TILE;
+        this.rows = (height + TILE - 1) / TILE;
+        this.marks = new boolean[columns * rows];
+    }
+
+    /**
+     * Marks the tiles an area touches. The parts of the area outside the screen are ignored.
+     *
+     * @param x      the x value of the left side of the area
+     * @param y      the y value of the top of the area
+     * @param width  the width of the area
+     * @param height the height of the area
+     */
+    public void mark(int x, int y, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        int firstColumn = Math.max(0, Math.floorDiv(x, TILE));
+        int lastColumn = Math.min(columns - 1, Math.floorDiv(x + width - 1, TILE));
+        int firstRow = Math.max(0, Math.floorDiv(y, TILE));
+        int lastRow = Math.min(rows - 1, Math.floorDiv(y + height - 1, TILE));
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int i = row * columns + column;
+                if (!marks[i]) {
+                    marks[i] = true;
+                    count++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks every tile.
+     */
+    public void markAll() {
+        Arrays.fill(marks, true);
+        count = marks.length;
+    }
+
+    /**
+     * Marks the tiles that are marked in other tiles of the same screen too.
+     *
+     * @param other the other tiles
+     */
+    public void add(DirtyTiles other) {
+        for (int i = 0; i < marks.length; i++) {
+            if (other.marks[i] && !marks[i]) {
+                marks[i] = true;
+                count++;
+            }
+        }
+    }
+
+    /**
+     * Removes all the marks.
+     */
+    public void clear() {
+        if (count > 0) {
+            Arrays.fill(marks, false);
+            count = 0;
+        }
+    }
+
+    /**
+     * Checks whether a tile is marked.
+     *
+     * @param column the column of the tile
+     * @param row    the row of the tile
+     * @return true if it is marked
+     */
+    public boolean isMarked(int column, int row) {
+        return marks[row * columns + column];
+    }
+
+    /**
+     * Returns the number of marked tiles.
+     *
+     * @return the number of tiles
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Returns the number of tiles.
+     *
+     * @return the number of tiles
+     */
+    public int size() {
+        return marks.length;
+    }
+
+    /**
+     * Returns the number of columns of tiles.
+     *
+     * @return the number of columns
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Returns the number of rows of tiles.
+     *
+     * @return the number of rows
+     */
+    public int getRows() {
+        return rows;
+    }
+}
@@ -0,0 +1,25 @@
+// Tamar Rosenzweig
+package rendering;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Where the frames of a headless run go, one after the other - files to look at, or a stream to make a video of.
+ */
+public interface FrameSink extends Closeable {
+    /**
+     * Writes a frame.
+     *
+     * @param frame the surface the frame was drawn on
+     * @throws IOException if writing fails
+     */
+    void write(RasterSurface frame) throws IOException;
+
+    /**
+     * Returns the number of frames written.
+     *
+     * @return the number of frames
+     */
+    long getFrameCount();
+}
@@ -0,0 +1,161 @@
+// Tamar Rosenzweig
+package rendering;
+
+import biuoop.DrawSurface;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Image;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+
+/**
+ * A DrawSurface that draws straight on a java.awt.Graphics - of an image, for example - the way the surface of a
+ * biuoop window draws when it is shown, so a sprite looks the same on both. It can also mark the tiles every
+ * call draws on, to know what has to be drawn again in the next frame.
+ */
+public class GraphicsSurface implements DrawSurface {
+    private static final int TEXT_DESCENT = 2; // parts of letters below the line, in a part of the font size
+    private final Graphics graphics;
+    private final int width;
+    private final int height;
+    private DirtyTiles marks;
+    private Font font;
+    private int fontSize;
+
+    /**
+     * Constructs a surface of a Graphics.
+     *
+     * @param graphics the graphics to draw with
+     * @param width    the width the surface reports
+     * @param height   the height the surface reports
+     */
+    public GraphicsSurface(Graphics graphics, int width, int height) {
+        this.graphics = graphics;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Sets the tiles to mark the drawing on.
+     *
+     * @param tiles the tiles, null to mark nothing
+     */
+    public void setMarks(DirtyTiles tiles) {
+        this.marks = tiles;
+    }
+
+    /**
+     * Returns the Graphics the surface draws with.
+     *
+     * @return the graphics
+     */
+    public Graphics getGraphics() {
+        return graphics;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public void setColor(Color color) {
+        graphics.setColor(color);
+    }
+
+    @Override
+    public void drawLine(int x1, int y1, int x2, int y2) {
+        mark(Math.min(x1, x2), Math.min(y1, y2), Math.abs(x2 - x1) + 1, Math.abs(y2 - y1) + 1);
+        graphics.drawLine(x1, y1, x2, y2);
+    }
+
+    @Override
+    public void drawOval(int x, int y, int w, int h) {
+        mark(x, y, w + 1, h + 1);
+        graphics.drawOval(x, y, w, h);
+    }
+
+    @Override
+    public void fillOval(int x, int y, int w, int h) {
+        mark(x, y, w, h);
+        graphics.fillOval(x, y, w, h);
+    }
+
+    @Override
+    public void drawRectangle(int x, int y, int w, int h) {
+        mark(x, y, w + 1, h + 1);
+        graphics.drawRect(x, y, w, h);
+    }
+
+    @Override
+    public void fillRectangle(int x, int y, int w, int h) {
+        mark(x, y, w, h);
+        graphics.fillRect(x, y, w, h);
+    }
+
+    @Override
+    public void drawImage(int x, int y, Image image) {
+        mark(x, y, image.getWidth(null), image.getHeight(null));
+        graphics.drawImage(image, x, y, null);
+    }
+
+    @Override
+    public void drawCircle(int x, int y, int r) {
+        drawOval(x - r, y - r, 2 * r, 2 * r);
+    }
+
+    @Override
+    public void fillCircle(int x, int y, int r) {
+        fillOval(x - r, y - r, 2 * r, 2 * r);
+    }
+
+    @Override
+    public void drawText(int x, int y, String s, int size) {
+        if (font == null || fontSize != size) {
+            Font current = graphics.getFont();
+            font = new Font(current.getFontName(), current.getStyle(), size);
+            fontSize = size;
+        }
+        graphics.setFont(font);
+        if (marks != null) {
+            int textWidth = graphics.getFontMetrics().stringWidth(s);
+            mark(x, y - size, textWidth + 1, size + size / TEXT_DESCENT);
+        }
+        graphics.drawString(s, x, y);
+    }
+
+    @Override
+    public void drawPolygon(Polygon p) {
+        Rectangle bounds = p.getBounds();
+        mark(bounds.x, bounds.y, bounds.width + 1, bounds.height + 1);
+        graphics.drawPolygon(p);
+    }
+
+    @Override
+    public void fillPolygon(Polygon p) {
+        Rectangle bounds = p.getBounds();
+        mark(bounds.x, bounds.y, bounds.width, bounds.height);
+        graphics.fillPolygon(p);
+    }
+
+    /**
+     * Marks the tiles an area touches, if the surface marks.
+     *
+     * @param x the x value of the left side of the area
+     * @param y the y value of the top of the area
+     * @param w the width of the area
+     * @param h the height of the area
+     */
+    private void mark(int x, int y, int w, int h) {
+        if (marks != null) {
+            marks.mark(x, y, w, h);
+        }
+    }
+}
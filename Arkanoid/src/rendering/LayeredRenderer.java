@@ -0,0 +1,217 @@
+// Tamar Rosenzweig
+package rendering;
+
+import biuoop.DrawSurface;
+
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Draws frames in two layers, so a frame costs what moved and not the whole screen. What doesn't move (the
+ * background, the borders and the blocks) is drawn once into a static layer image. Frames are drawn in images
+ * that are kept from one frame to the next: in a frame image only the tiles that what moves was drawn on the last
+ * time are copied back from the static layer, and what moves is drawn again - marking the tiles it is drawn on for
+ * the next time. The frame is then drawn on the target surface as one image.
+ * There are two frame images, used in turns, since a window may still be painting the last frame while the next
+ * one is drawn.
+ * When an area of the static layer changes (a block that was hit), only that area is drawn again, clipped, and
+ * its tiles are copied to the frame images.
+ * What moves is recorded in a {@link CommandBuffer} first, and drawn from it with a color change for every color
+ * and not for every call.
+ */
+public class LayeredRenderer {
+    private final int width;
+    private final int height;
+    private final Consumer<DrawSurface> staticLayerDrawer;
+    private final List<Rectangle> changedAreas = new ArrayList<>();
+    private final BufferedImage staticLayer;
+    private final GraphicsSurface staticSurface;
+    private final FrameBuffer[] buffers = new FrameBuffer[2];
+    private final CommandBuffer commands;
+    private int next; // the frame buffer of the next frame
+    private boolean built;
+    private int restoredTiles;
+    private int drawCalls;
+
+    /**
+     * Constructs a renderer of a screen.
+     *
+     * @param width             the width of the screen
+     * @param height            the height of the screen
+     * @param staticLayerDrawer draws the whole static layer, the background included, on the surface it is given -
+     *                          called again, clipped, whenever an area of it changes
+     */
+    public LayeredRenderer(int width, int height, Consumer<DrawSurface> staticLayerDrawer) {
+        this.width = width;
+        this.height = height;
+        this.staticLayerDrawer = staticLayerDrawer;
+        this.staticLayer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        this.staticSurface = new GraphicsSurface(staticLayer.createGraphics(), width, height);
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = new FrameBuffer(width, height);
+        }
+        this.commands = new CommandBuffer(width, height);
+    }
+
+    /**
+     * Tells the renderer that an area of the static layer changed, so it is drawn again in the next frame.
+     *
+     * @param x the x value of the left side of the area
+     * @param y the y value of the top of the area
+     * @param w the width of the area
+     * @param h the height of the area
+     */
+    public void invalidate(int x, int y, int w, int h) {
+        if (built && w > 0 && h > 0) {
+            changedAreas.add(new Rectangle(x, y, w, h));
+        }
+    }
+
+    /**
+     * Draws a frame on a surface.
+     *
+     * @param target the surface to draw on
+     * @param moving draws what moves on the surface it is given, over the static layer
+     */
+    public void render(DrawSurface target, Consumer<DrawSurface> moving) {
+        if (!built) {
+            build();
+        }
+        for (Rectangle area : changedAreas) {
+            redrawStatic(area);
+            for (FrameBuffer buffer : buffers) {
+                buffer.restore.mark(area.x, area.y, area.width, area.height);
+            }
+        }
+        changedAreas.clear();
+        FrameBuffer buffer = buffers[next];
+        next = (next + 1) % buffers.length;
+        buffer.restore.add(buffer.drawn);
+        restoredTiles = buffer.restore.count();
+        copyTiles(buffer);
+        buffer.restore.clear();
+        buffer.drawn.clear();
+        moving.accept(commands);
+        drawCalls = commands.size();
+        buffer.surface.setMarks(buffer.drawn);
+        commands.flush(buffer.surface);
+        buffer.surface.setMarks(null);
+        target.drawImage(0, 0, buffer.image);
+    }
+
+    /**
+     * Returns the number of tiles copied from the static layer in the last frame - a measure of what it cost.
+     *
+     * @return the number of tiles
+     */
+    public int getRestoredTiles() {
+        return restoredTiles;
+    }
+
+    /**
+     * Returns the number of calls the moving sprites made to draw the last frame.
+     *
+     * @return the number of calls
+     */
+    public int getDrawCalls() {
+        return drawCalls;
+    }
+
+    /**
+     * Returns the number of times the color was changed to draw the moving sprites of the last frame.
+     *
+     * @return the number of color changes
+     */
+    public int getColorChanges() {
+        return commands.getColorChanges();
+    }
+
+    /**
+     * Returns the number of tiles of the screen.
+     *
+     * @return the number of tiles
+     */
+    public int getTileCount() {
+        return buffers[0].restore.size();
+    }
+
+    /**
+     * Draws the static layer, and marks all the tiles of the frame images to be copied from it.
+     */
+    private void build() {
+        staticLayerDrawer.accept(staticSurface);
+        for (FrameBuffer buffer : buffers) {
+            buffer.restore.markAll();
+        }
+        built = true;
+    }
+
+    /**
+     * Draws an area of the static layer again, clipped to the area.
+     *
+     * @param area the area
+     */
+    private void redrawStatic(Rectangle area) {
+        Graphics g = staticSurface.getGraphics();
+        g.setClip(area.x, area.y, area.width, area.height);
+        staticLayerDrawer.accept(staticSurface);
+        g.setClip(null);
+    }
+
+    /**
+     * Copies the tiles a frame buffer has to restore from the static layer, a run of marked tiles in a row at a
+     * time.
+     *
+     * @param buffer the frame buffer
+     */
+    private void copyTiles(FrameBuffer buffer) {
+        DirtyTiles tiles = buffer.restore;
+        Graphics g = buffer.surface.getGraphics();
+        int tile = DirtyTiles.TILE;
+        for (int row = 0; row < tiles.getRows(); row++) {
+            int column = 0;
+            while (column < tiles.getColumns()) {
+                if (!tiles.isMarked(column, row)) {
+                    column++;
+                    continue;
+                }
+                int first = column;
+                while (column < tiles.getColumns() && tiles.isMarked(column, row)) {
+                    column++;
+                }
+                int x1 = first * tile;
+                int y1 = row * tile;
+                int x2 = Math.min(width, column * tile);
+                int y2 = Math.min(height, (row + 1) * tile);
+                g.drawImage(staticLayer, x1, y1, x2, y2, x1, y1, x2, y2, null);
+            }
+        }
+    }
+
+    /**
+     * A frame image, with the tiles it has to restore before the next frame is drawn on it.
+     */
+    private static final class FrameBuffer {
+        private final BufferedImage image;
+        private final GraphicsSurface surface;
+        private final DirtyTiles restore; // the tiles to copy from the static layer before the next frame
+        private final DirtyTiles drawn; // the tiles the moving sprites were drawn on the last time
+
+        /**
+         * Constructs a frame buffer.
+         *
+         * @param width  the width of the screen
+         * @param height the height of the screen
+         */
+        private FrameBuffer(int width, int height) {
+            this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            this.surface = new GraphicsSurface(image.createGraphics(), width, height);
+            this.restore = new DirtyTiles(width, height);
+            this.drawn = new DirtyTiles(width, height);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+// Tamar Rosenzweig
+package rendering;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import javax.imageio.ImageIO;
+
+/**
+ * Writes every frame to a PNG file of its own in a directory, named by its number - frame-000000.png,
+ * frame-000001.png and so on - to look at frames one by one, or to keep them as golden images to compare later
+ * runs with.
+ */
+public class PngSequenceSink implements FrameSink {
+    private final Path directory;
+    private long frameCount;
+
+    /**
+     * Constructs a sink that writes to a directory, made if it doesn't exist.
+     *
+     * @param directory the path of the directory
+     * @throws IOException if the directory can't be made
+     */
+    public PngSequenceSink(String directory) throws IOException {
+        this.directory = Files.createDirectories(Paths.get(directory));
+    }
+
+    /**
+     * Returns the path of the file of a frame.
+     *
+     * @param frame the number of the frame, from 0
+     * @return the path
+     */
+    public Path pathOf(long frame) {
+        return directory.resolve(String.format("frame-%06d.png", frame));
+    }
+
+    @Override
+    public void write(RasterSurface frame) throws IOException {
+        if (!ImageIO.write(frame.getImage(), "png", pathOf(frameCount).toFile())) {
+            throw new IOException("no PNG writer");
+        }
+        frameCount++;
+    }
+
+    @Override
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,112 @@
+// Tamar Rosenzweig
+package rendering;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.zip.CRC32;
+
+/**
+ * A DrawSurface that draws into an image in memory, without a window - to draw frames on a server, to compare
+ * them with frames drawn before, or to save them. The pixels of the image are an array of ints, 0xRRGGBB each,
+ * row after row, that can be read straight with {@link #getPixels()}.
+ * It draws the way a {@link GraphicsSurface} does, so a frame looks the same as it would in a window.
+ */
+public class RasterSurface extends GraphicsSurface {
+    private final BufferedImage image;
+    private final int[] pixels;
+    private final CRC32 crc = new CRC32();
+    private final byte[] row; // a row of pixels as bytes - red, green and blue - for the checksum
+
+    /**
+     * Constructs a surface of an image of the given size, all black.
+     *
+     * @param width  the width of the image
+     * @param height the height of the image
+     */
+    public RasterSurface(int width, int height) {
+        this(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB));
+    }
+
+    /**
+     * Constructs a surface of an image.
+     *
+     * @param image the image, of TYPE_INT_RGB
+     */
+    private RasterSurface(BufferedImage image) {
+        super(image.createGraphics(), image.getWidth(), image.getHeight());
+        this.image = image;
+        this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        this.row = new byte[image.getWidth() * 3];
+    }
+
+    /**
+     * Returns the image drawn on.
+     *
+     * @return the image
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * Returns the pixels of the image, 0xRRGGBB each, row after row. The array is the image's own, so it changes
+     * with every drawing.
+     *
+     * @return the pixels
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * Fills the whole image with a color.
+     *
+     * @param color the color
+     */
+    public void clear(Color color) {
+        setColor(color);
+        fillRectangle(0, 0, getWidth(), getHeight());
+    }
+
+    /**
+     * Returns a CRC-32 of the pixels, that is the same for the same frame on any machine - to compare a frame with
+     * a frame drawn before without keeping the whole frame.
+     *
+     * @return the checksum
+     */
+    public long checksum() {
+        crc.reset();
+        int width = getWidth();
+        for (int y = 0; y < getHeight(); y++) {
+            for (int x = 0; x < width; x++) {
+                int p = pixels[y * width + x];
+                row[x * 3] = (byte) (p >> 16);
+                row[x * 3 + 1] = (byte) (p >> 8);
+                row[x * 3 + 2] = (byte) p;
+            }
+            crc.update(row, 0, width * 3);
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Counts the pixels that are different in another surface of the same size.
+     *
+     * @param other the other surface
+     * @return the number of pixels that are different
+     * @throws IllegalArgumentException if the surfaces have different sizes
+     */
+    public int countDifferences(RasterSurface other) {
+        if (other.getWidth() != getWidth() || other.getHeight() != getHeight()) {
+            throw new IllegalArgumentException("the surfaces have different sizes");
+        }
+        int count = 0;
+        for (int i = 0; i < pixels.length; i++) {
+            if ((pixels[i] & 0xFFFFFF) != (other.pixels[i] & 0xFFFFFF)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
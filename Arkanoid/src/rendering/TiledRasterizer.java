@@ -0,0 +1,334 @@
+// Tamar Rosenzweig
+package rendering;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Draws very many circles - filled, with a black outline, the way a ball is drawn - into an image of its own, in
+ * parallel, so they are drawn on a surface at once with one drawImage and not with two calls a circle.
+ * The image is divided into square tiles, and every circle is put in the bin of every tile its bounding box
+ * touches (the bins are one array, sorted by tile with a counting sort). Then the tiles are drawn by the threads
+ * of the common ForkJoinPool, every tile by one thread, straight into the pixels of the image - no two threads
+ * write the same pixel, so they need no locks. In a tile the circles are drawn in the order they were added, all
+ * the fills and then all the outlines, like a BallSystem draws its balls.
+ * The pixels around the circles are left transparent. Circles smaller than MIN_OUTLINE_RADIUS aren't outlined:
+ * at a pixel or two the outline would hide the fill, and costs as much as it.
+ * There are two images used in turns, since a surface may still be drawing the last one when the next one is
+ * drawn.
+ */
+public class TiledRasterizer {
+    /**
+     * The smallest radius of a circle that gets an outline.
+     */
+    public static final int MIN_OUTLINE_RADIUS = 2;
+    /**
+     * The fewest circles worth drawing with a rasterizer - with fewer, drawing them one by one costs less than
+     * clearing and drawing a whole image.
+     */
+    public static final int THRESHOLD = 2000;
+    static final int TILE = 32;
+    static final int TASK_SIZE = 4; // tiles drawn by a task without splitting it
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int OUTLINE = 0xFF000000; // black
+    private final int width;
+    private final int height;
+    private final int columns;
+    private final int rows;
+    private final BufferedImage[] images = new BufferedImage[2];
+    private final int[][] pixels = new int[2][];
+    private final int[] binStart; // where the bin of every tile starts in binned, and where the last one ends
+    private final int[] binEnd; // the end of every bin while it is filled
+    private int[] binned = new int[INITIAL_CAPACITY]; // the indexes of the circles of every tile, tile after tile
+    private int[] x = new int[INITIAL_CAPACITY];
+    private int[] y = new int[INITIAL_CAPACITY];
+    private int[] radius = new int[INITIAL_CAPACITY];
+    private int[] argb = new int[INITIAL_CAPACITY];
+    private int count;
+    private int next; // the image of the next frame
+
+    /**
+     * Constructs a rasterizer of images of the given size.
+     *
+     * @param width  the width of the images
+     * @param height the height of the images
+     */
+    public TiledRasterizer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.columns = (width + TILE - 1) / TILE;
+        this.rows = (height + TILE - 1) / TILE;
+        this.binStart = new int[columns * rows + 1];
+        this.binEnd = new int[columns * rows];
+        for (int i = 0; i < images.length; i++) {
+            images[i] = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            pixels[i] = ((DataBufferInt) images[i].getRaster().getDataBuffer()).getData();
+        }
+    }
+
+    /**
+     * Returns the width of the images.
+     *
+     * @return the width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the images.
+     *
+     * @return the height
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the number of circles added since the last render.
+     *
+     * @return the number of circles
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Adds a circle to draw in the next render.
+     *
+     * @param centerX the x value of the center
+     * @param centerY the y value of the center
+     * @param r       the radius
+     * @param color   the color of the fill, as an ARGB value
+     */
+    public void addCircle(int centerX, int centerY, int r, int color) {
+        if (count == x.length) {
+            int capacity = count * 2;
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            radius = Arrays.copyOf(radius, capacity);
+            argb = Arrays.copyOf(argb, capacity);
+        }
+        x[count] = centerX;
+        y[count] = centerY;
+        radius[count] = r;
+        argb[count] = color;
+        count++;
+    }
+
+    /**
+     * Draws all the circles added since the last render into the next image, and empties the rasterizer.
+     *
+     * @return the image, valid until the render after the next one
+     */
+    public BufferedImage render() {
+        bin();
+        int[] frame = pixels[next];
+        int tiles = columns * rows;
+        if (tiles <= TASK_SIZE) {
+            drawTiles(frame, 0, tiles);
+        } else {
+            ForkJoinPool.commonPool().invoke(new TileTask(frame, 0, tiles));
+        }
+        BufferedImage image = images[next];
+        next = (next + 1) % images.length;
+        count = 0;
+        return image;
+    }
+
+    /**
+     * Puts every circle in the bins of the tiles it touches, in the order the circles were added.
+     */
+    private void bin() {
+        Arrays.fill(binEnd, 0);
+        for (int i = 0; i < count; i++) {
+            int r = radius[i] + 1;
+            int firstColumn = Math.max(0, Math.floorDiv(x[i] - r, TILE));
+            int lastColumn = Math.min(columns - 1, Math.floorDiv(x[i] + r, TILE));
+            int firstRow = Math.max(0, Math.floorDiv(y[i] - r, TILE));
+            int lastRow = Math.min(rows - 1, Math.floorDiv(y[i] + r, TILE));
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    binEnd[row * columns + column]++;
+                }
+            }
+        }
+        int total = 0;
+        for (int t = 0; t < binEnd.length; t++) {
+            binStart[t] = total;
+            total += binEnd[t];
+            binEnd[t] = binStart[t];
+        }
+        binStart[binEnd.length] = total;
+        if (binned.length < total) {
+            binned = new int[Math.max(total, binned.length * 2)];
+        }
+        for (int i = 0; i < count; i++) {
+            int r = radius[i] + 1;
+            int firstColumn = Math.max(0, Math.floorDiv(x[i] - r, TILE));
+            int lastColumn = Math.min(columns - 1, Math.floorDiv(x[i] + r, TILE));
+            int firstRow = Math.max(0, Math.floorDiv(y[i] - r, TILE));
+            int lastRow = Math.min(rows - 1, Math.floorDiv(y[i] + r, TILE));
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    binned[binEnd[row * columns + column]++] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Draws a range of tiles: clears them, and draws the fills and then the outlines of their circles.
+     *
+     * @param frame the pixels to draw into
+     * @param from  the first tile of the range
+     * @param to    the end of the range (not included)
+     */
+    private void drawTiles(int[] frame, int from, int to) {
+        for (int t = from; t < to; t++) {
+            int left = (t % columns) * TILE;
+            int top = (t / columns) * TILE;
+            int right = Math.min(width, left + TILE);
+            int bottom = Math.min(height, top + TILE);
+            for (int row = top; row < bottom; row++) {
+                Arrays.fill(frame, row * width + left, row * width + right, 0);
+            }
+            for (int k = binStart[t]; k < binStart[t + 1]; k++) {
+                int i = binned[k];
+                fill(frame, i, left, top, right, bottom);
+            }
+            for (int k = binStart[t]; k < binStart[t + 1]; k++) {
+                int i = binned[k];
+                if (radius[i] >= MIN_OUTLINE_RADIUS) {
+                    outline(frame, i, left, top, right, bottom);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills the part of a circle inside a tile. Java2D draws shapes on the pixels whose centers are closest to the
+     * outline, half a pixel right of and below it, so the circle is taken around the center of the pixel at its
+     * center, like the pixels of a window surface are.
+     *
+     * @param frame  the pixels to draw into
+     * @param i      the index of the circle
+     * @param left   the x value of the left side of the tile
+     * @param top    the y value of the top of the tile
+     * @param right  the x value of the right side of the tile (not included)
+     * @param bottom the y value of the bottom of the tile (not included)
+     */
+    private void fill(int[] frame, int i, int left, int top, int right, int bottom) {
+        int r = radius[i];
+        int first = Math.max(top, y[i] - r);
+        int last = Math.min(bottom - 1, y[i] + r);
+        for (int row = first; row <= last; row++) {
+            double dy = row - y[i];
+            double half = (double) r * r - dy * dy;
+            if (half < 0) {
+                continue;
+            }
+            half = Math.sqrt(half);
+            int from = Math.max(left, (int) Math.ceil(x[i] - half));
+            int to = Math.min(right - 1, (int) Math.floor(x[i] + half));
+            if (from <= to) {
+                Arrays.fill(frame, row * width + from, row * width + to + 1, argb[i]);
+            }
+        }
+    }
+
+    /**
+     * Draws the part of the outline of a circle inside a tile: the pixels whose centers are within half a pixel
+     * of the circle around the center of the pixel at its center.
+     *
+     * @param frame  the pixels to draw into
+     * @param i      the index of the circle
+     * @param left   the x value of the left side of the tile
+     * @param top    the y value of the top of the tile
+     * @param right  the x value of the right side of the tile (not included)
+     * @param bottom the y value of the bottom of the tile (not included)
+     */
+    private void outline(int[] frame, int i, int left, int top, int right, int bottom) {
+        double outer = radius[i] + 0.5;
+        double inner = radius[i] - 0.5;
+        int first = Math.max(top, y[i] - radius[i] - 1);
+        int last = Math.min(bottom - 1, y[i] + radius[i] + 1);
+        for (int row = first; row <= last; row++) {
+            double dy = row - y[i];
+            double outerHalf = outer * outer - dy * dy;
+            if (outerHalf < 0) {
+                continue;
+            }
+            outerHalf = Math.sqrt(outerHalf);
+            int from = (int) Math.ceil(x[i] - outerHalf);
+            int to = (int) Math.floor(x[i] + outerHalf);
+            double innerHalf = inner * inner - dy * dy;
+            if (innerHalf < 0) {
+                span(frame, row, from, to, left, right);
+                continue;
+            }
+            innerHalf = Math.sqrt(innerHalf);
+            int innerFrom = (int) Math.ceil(x[i] - innerHalf);
+            int innerTo = (int) Math.floor(x[i] + innerHalf);
+            span(frame, row, from, Math.max(from, innerFrom - 1), left, right);
+            span(frame, row, Math.min(to, innerTo + 1), to, left, right);
+        }
+    }
+
+    /**
+     * Draws a run of outline pixels in a row, clipped to a tile.
+     *
+     * @param frame the pixels to draw into
+     * @param row   the row
+     * @param from  the first x value of the run
+     * @param to    the last x value of the run (included)
+     * @param left  the x value of the left side of the tile
+     * @param right the x value of the right side of the tile (not included)
+     */
+    private void span(int[] frame, int row, int from, int to, int left, int right) {
+        from = Math.max(left, from);
+        to = Math.min(right - 1, to);
+        if (from <= to) {
+            Arrays.fill(frame, row * width + from, row * width + to + 1, OUTLINE);
+        }
+    }
+
+    /**
+     * Draws a range of tiles, splitting it in two while it is larger than TASK_SIZE.
+     */
+    private final class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int[] frame;
+        private final int from;
+        private final int to;
+
+        /**
+         * Constructs a task for the tiles in [from, to).
+         *
+         * @param frame the pixels to draw into
+         * @param from  the first tile of the range
+         * @param to    the end of the range (not included)
+         */
+        private TileTask(int[] frame, int from, int to) {
+            this.frame = frame;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Draws the range, or splits it.
+         */
+        @Override
+        protected void compute() {
+            if (to - from <= TASK_SIZE) {
+                drawTiles(frame, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new TileTask(frame, from, middle), new TileTask(frame, middle, to));
+        }
+    }
+}
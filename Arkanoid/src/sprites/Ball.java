@@ -5,6 +5,9 @@ package sprites;
 import geometry_primitives.Point;
 import geometry_primitives.Line;
 import geometry_primitives.Velocity;
+import collision_detection.Collidable;
+import collision_detection.CollisionQuery;
+import collision_detection.ImpactCache;
 import collision_detection.GameEnvironment;
 import collision_detection.CollisionInfo;
 import game.Game;
@@ -17,6 +20,14 @@ import biuoop.DrawSurface;
  * Class Ball represents a ball with size (radius), color, and location.
  */
 public class Ball implements Sprite {
+    /**
+     * The most bounces resolved in one step of continuous collision, the rest of the step is dropped after it.
+     */
+    public static final int MAX_BOUNCES = 4;
+    /**
+     * In continuous collision, the ball stops this distance before the contact, so it never starts inside a block.
+     */
+    public static final double SKIN = 0.01;
     // Balls have size (radius), color, and location (a Point)
     private int size;
     private Color color;
@@ -24,6 +35,13 @@ public class Ball implements Sprite {
     private Velocity velocity;
     private boolean insideRec; // whether the ball is within the lines of a rectangle.
     private GameEnvironment gameEnvironment;
+    private boolean continuousCollision; // whether the ball is moved as a circle and not as a point
+    // made when the ball starts using continuous collision, so a ball that never does (like the handle of a
+    // BallSystem) doesn't carry them
+    private CollisionQuery query; // reused by every step, to avoid allocating
+    private ImpactCache impactCache; // when the ball hits the static world next
+    private double previousX = Double.NaN; // the center before the last tick, NaN if it can't be interpolated
+    private double previousY = Double.NaN;
 
     /**
      * Constructs a Ball with a given center, radius, and color.
@@ -85,6 +103,7 @@ public class Ball implements Sprite {
         this.color = other.color;
         this.velocity = new Velocity(other.velocity.getDx(), other.velocity.getDy());
         this.insideRec = other.insideRec;
+        this.setContinuousCollision(other.continuousCollision);
     }
     // accessors
 
@@ -115,6 +134,24 @@ public class Ball implements Sprite {
         return this.point.getY();
     }
 
+    /**
+     * Returns the x value of the center before the last tick.
+     *
+     * @return the x value, NaN if the ball jumped since and isn't drawn between the two
+     */
+    public double getPreviousX() {
+        return this.previousX;
+    }
+
+    /**
+     * Returns the y value of the center before the last tick.
+     *
+     * @return the y value, meaningless if {@link #getPreviousX()} is NaN
+     */
+    public double getPreviousY() {
+        return this.previousY;
+    }
+
     /**
      * method getSize returns the size of the ball.
      *
@@ -158,6 +195,7 @@ public class Ball implements Sprite {
      */
     public void setX(double x) {
         this.point.setX(x);
+        this.previousX = Double.NaN; // a jump, not a motion to interpolate
     }
 
     /**
@@ -167,6 +205,7 @@ public class Ball implements Sprite {
      */
     public void setY(double y) {
         this.point.setY(y);
+        this.previousX = Double.NaN; // a jump, not a motion to interpolate
     }
 
     /**
@@ -175,6 +214,7 @@ public class Ball implements Sprite {
      * @param p is the value to change to
      */
     public void setPoint(Point p) {
+        this.previousX = Double.NaN; // a jump, not a motion to interpolate
         if (this.point == null) {
             this.point = new Point(p.getX(), p.getY());
             return;
@@ -207,6 +247,9 @@ public class Ball implements Sprite {
      * @param v is the velocity to change to
      */
     public void setVelocity(Velocity v) {
+        if (this.impactCache != null) {
+            this.impactCache.invalidate();
+        }
         if (this.velocity == null) {
             this.velocity = new Velocity(v.getDx(), v.getDy());
             return;
@@ -222,6 +265,9 @@ public class Ball implements Sprite {
      * @param dy is the dy value to change to
      */
     public void setVelocity(double dx, double dy) {
+        if (this.impactCache != null) {
+            this.impactCache.invalidate();
+        }
         if (this.velocity == null) {
             this.velocity = new Velocity(dx, dy);
             return;
@@ -249,16 +295,102 @@ public class Ball implements Sprite {
         this.gameEnvironment = ge;
     }
 
+    /**
+     * method setContinuousCollision chooses how the ball collides.
+     * With continuous collision the whole circle is swept along the velocity, and several bounces are resolved
+     * in one step, so a fast ball doesn't pass through thin blocks. Without it, the center of the ball is tested
+     * and it bounces at most once per step.
+     *
+     * @param continuous true for continuous collision
+     */
+    public void setContinuousCollision(boolean continuous) {
+        this.continuousCollision = continuous;
+        if (continuous && this.query == null) {
+            this.query = new CollisionQuery();
+            this.impactCache = new ImpactCache();
+        }
+    }
+
+    /**
+     * method isContinuousCollision returns whether the ball uses continuous collision.
+     *
+     * @return true if the ball uses continuous collision
+     */
+    public boolean isContinuousCollision() {
+        return continuousCollision;
+    }
+
+    /**
+     * method prepareQuery sets the collision query of the ball's next step, so it can be answered ahead of time
+     * in a batch with the queries of the other balls. The step uses the answer if it still holds when it runs.
+     *
+     * @return the query of the next step, or null if the ball doesn't use continuous collision
+     */
+    public CollisionQuery prepareQuery() {
+        return prepareQuery(1);
+    }
+
+    /**
+     * method prepareQuery sets the collision query of the ball's next step of the given time, see
+     * {@link #prepareQuery()}.
+     *
+     * @param dt the time of the next step, in frames of 1/60 second
+     * @return the query of the next step, or null if the ball doesn't use continuous collision
+     */
+    public CollisionQuery prepareQuery(double dt) {
+        if (!this.continuousCollision || this.gameEnvironment == null || this.velocity == null) {
+            return null;
+        }
+        double stepDx = this.velocity.getDx() * dt;
+        double stepDy = this.velocity.getDy() * dt;
+        if (this.impactCache.isFreeStep(this.gameEnvironment, this.getX(), this.getY(), stepDx, stepDy, this.size)) {
+            return null; // the step can't touch anything, no query needed
+        }
+        this.query.set(this.getX(), this.getY(), stepDx, stepDy, this.size);
+        return this.query;
+    }
+
     /**
      * method drawOn draws the ball on the given DrawSurface.
      *
      * @param surface is the surface to draw on
      */
     public void drawOn(DrawSurface surface) {
-        surface.setColor(color);
-        surface.fillCircle((int) this.getX(), (int) this.getY(), size);
+        draw(surface, (int) this.getX(), (int) this.getY(), size, color);
+    }
+
+    /**
+     * method drawOn draws the ball on the given DrawSurface, part of the way between its center before the last
+     * tick and its center now.
+     *
+     * @param surface is the surface to draw on
+     * @param alpha   the part of the way, from 0 (before the last tick) to 1 (now)
+     */
+    @Override
+    public void drawOn(DrawSurface surface, double alpha) {
+        if (Double.isNaN(this.previousX)) {
+            drawOn(surface);
+            return;
+        }
+        int x = (int) (this.previousX + (this.getX() - this.previousX) * alpha);
+        int y = (int) (this.previousY + (this.getY() - this.previousY) * alpha);
+        draw(surface, x, y, size, color);
+    }
+
+    /**
+     * Draws a ball the way a Ball draws itself - filled with its color, with a black outline.
+     *
+     * @param surface is the surface to draw on
+     * @param x       the x value of the center
+     * @param y       the y value of the center
+     * @param r       the radius
+     * @param c       the color
+     */
+    public static void draw(DrawSurface surface, int x, int y, int r, Color c) {
+        surface.setColor(c);
+        surface.fillCircle(x, y, r);
         surface.setColor(Color.BLACK);
-        surface.drawCircle((int) this.getX(), (int) this.getY(), size);
+        surface.drawCircle(x, y, r);
     }
 
     /**
@@ -271,17 +403,84 @@ public class Ball implements Sprite {
         return new Line(this.point, this.getVelocity().applyToPoint(this.point));
     }
 
+    /**
+     * Creates a new line representing the trajectory of the ball in the given time.
+     *
+     * @param dt the time, in frames of 1/60 second
+     * @return a Line object from the center to where the velocity takes it in that time
+     */
+    private Line trajectoryLine(double dt) {
+        return new Line(this.point, new Point(this.getX() + this.velocity.getDx() * dt,
+                this.getY() + this.velocity.getDy() * dt));
+    }
+
     /**
      * Moves the ball one step based on the border-lines.
      */
     public void moveOneStep() {
-        CollisionInfo colInfo = this.gameEnvironment.getClosestCollision(this.trajectoryLine());
+        moveOneStep(1);
+    }
+
+    /**
+     * Moves the ball by its velocity times the given time, based on the game environment.
+     *
+     * @param dt the time of the step, in frames of 1/60 second
+     */
+    public void moveOneStep(double dt) {
+        if (this.continuousCollision) {
+            moveOneStepContinuous(dt);
+            return;
+        }
+        CollisionInfo colInfo = this.gameEnvironment.getClosestCollision(this.trajectoryLine(dt));
         if (colInfo != null) { // a collision occurs next step
-            this.setVelocity(colInfo.collisionObject().hit(this, colInfo.collisionPoint(), this.getVelocity()));
-            Line almostHit = new Line(this.point, trajectoryLine().middle());
+            this.setVelocity(colInfo.collisionObject().hit(this, colInfo, this.getVelocity()));
+            Line almostHit = new Line(this.point, trajectoryLine(dt).middle());
             this.point = almostHit.middle(); // move up to 75% of the trajectory line
         } else {
-            this.point = this.getVelocity().applyToPoint(this.point);
+            this.point = new Point(this.getX() + this.velocity.getDx() * dt, this.getY() + this.velocity.getDy() * dt);
+        }
+    }
+
+    /**
+     * Moves the ball one step, sweeping its circle through the game environment.
+     * The ball moves up to the first collidable it touches, bounces, and goes on with the rest of the step
+     * in the new direction, until the step is used up or MAX_BOUNCES bounces were resolved.
+     * Steps that the impact cache knows are free of collisions are taken without any query.
+     *
+     * @param dt the time of the step, in frames of 1/60 second
+     */
+    private void moveOneStepContinuous(double dt) {
+        double stepDx = this.velocity.getDx() * dt;
+        double stepDy = this.velocity.getDy() * dt;
+        if (this.impactCache.isFreeStep(this.gameEnvironment, this.getX(), this.getY(), stepDx, stepDy, this.size)) {
+            this.point = new Point(this.getX() + stepDx, this.getY() + stepDy);
+            this.impactCache.stepTaken(this.getX(), this.getY());
+            return;
+        }
+        double remaining = dt; // the part of the step that is left, in frames
+        for (int i = 0; i < MAX_BOUNCES && remaining > 0; i++) {
+            double dx = this.velocity.getDx() * remaining;
+            double dy = this.velocity.getDy() * remaining;
+            this.query.set(this.getX(), this.getY(), dx, dy, this.size); // keeps an answer prepared for this motion
+            if (!this.gameEnvironment.isAnswerCurrent(this.query)) {
+                this.gameEnvironment.query(this.query);
+            }
+            Collidable target = this.query.result();
+            if (target == null) {
+                this.point = new Point(this.getX() + dx, this.getY() + dy);
+                return;
+            }
+            CollisionInfo collision = this.query.info();
+            double toi = collision.toi();
+            double advance = Math.max(0, toi - SKIN / Math.sqrt(dx * dx + dy * dy));
+            this.point = new Point(this.getX() + dx * advance, this.getY() + dy * advance);
+            Velocity v = target.hit(this, collision, this.getVelocity());
+            // the collidable decides how the ball bounces, but it must not send the ball into it
+            if (v.getDx() * collision.normalX() + v.getDy() * collision.normalY() < 0) {
+                v = collision.reflect(v);
+            }
+            this.setVelocity(v);
+            remaining *= 1 - advance; // the skin left before the collidable is still to be moved, after the bounce
         }
     }
 
@@ -478,7 +677,19 @@ public class Ball implements Sprite {
      */
     @Override
     public void timePassed() {
-        moveOneStep();
+        timePassed(1);
+    }
+
+    /**
+     * Notifies the ball that the given time has passed, so it moves by its velocity times that time.
+     *
+     * @param dt the time that has passed, in frames of 1/60 second
+     */
+    @Override
+    public void timePassed(double dt) {
+        this.previousX = this.getX();
+        this.previousY = this.getY();
+        moveOneStep(dt);
     }
 
     /**
@@ -489,6 +700,7 @@ public class Ball implements Sprite {
     @Override
     public void addToGame(Game g) {
         g.addSprite(this);
+        g.addBall(this);
     }
 
     /**
@@ -498,5 +710,6 @@ public class Ball implements Sprite {
      */
     public void removeFromGame(Game game) {
         game.removeSprite(this);
+        game.removeBall(this);
     }
 }
\ No newline at end of file
@@ -0,0 +1,37 @@
+// Tamar Rosenzweig
+package sprites;
+
+/**
+ * Moves whole arrays of balls at once, the pure arithmetic part of a step: adding the velocities to the
+ * centers, and reflecting the velocities of the balls that reach a wall of an axis-aligned box.
+ * The arrays are the ones of {@link BallSystem}, one entry per ball. Every implementation gives exactly the
+ * same results, see {@link BallIntegrators#best()} for how one is picked.
+ */
+public interface BallIntegrator {
+
+    /**
+     * Moves every ball by its velocity times its scale: x[i] += dx[i] * scale[i], and the same for y.
+     *
+     * @param x     the x values of the centers
+     * @param y     the y values of the centers
+     * @param dx    the changes in x per step
+     * @param dy    the changes in y per step
+     * @param scale the part of the step every ball takes (0 for a ball that doesn't move)
+     * @param count the number of balls, from the start of the arrays
+     */
+    void advance(double[] x, double[] y, double[] dx, double[] dy, double[] scale, int count);
+
+    /**
+     * Moves every ball one step inside a box. A ball whose circle would cross a wall of the box in the step,
+     * while moving towards that wall, first turns back from it (the velocity is reflected), then moves.
+     *
+     * @param x      the x values of the centers
+     * @param y      the y values of the centers
+     * @param dx     the changes in x per step
+     * @param dy     the changes in y per step
+     * @param radius the radii
+     * @param count  the number of balls, from the start of the arrays
+     * @param box    the walls, as {minX, minY, maxX, maxY}
+     */
+    void stepInBox(double[] x, double[] y, double[] dx, double[] dy, double[] radius, int count, double[] box);
+}
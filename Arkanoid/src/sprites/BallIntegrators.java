@@ -0,0 +1,36 @@
+// Tamar Rosenzweig
+package sprites;
+
+/**
+ * Picks the {@link BallIntegrator} to use.
+ */
+public final class BallIntegrators {
+    private static final String VECTOR_INTEGRATOR = "sprites.VectorBallIntegrator";
+    private static BallIntegrator best;
+
+    /**
+     * No instances, only the static method.
+     */
+    private BallIntegrators() {
+    }
+
+    /**
+     * Returns the fastest integrator this JVM can run: the Vector API one when the jdk.incubator.vector module
+     * is available (run with --add-modules jdk.incubator.vector), and the scalar one otherwise.
+     * The vector class is in src-vector, that is compiled on its own with the module (see build.xml), and is
+     * loaded by name - so a JVM without the module never links it, and a build without src-vector (like the IDE
+     * project's) gets the scalar one.
+     *
+     * @return the integrator
+     */
+    public static synchronized BallIntegrator best() {
+        if (best == null) {
+            try {
+                best = (BallIntegrator) Class.forName(VECTOR_INTEGRATOR).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                best = new ScalarBallIntegrator(); // the module or the class isn't there
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,695 @@
+// Tamar Rosenzweig
+package sprites;
+
+import biuoop.DrawSurface;
+import collision_detection.Collidable;
+import collision_detection.CollisionInfo;
+import collision_detection.CollisionQuery;
+import collision_detection.GameEnvironment;
+import collision_detection.ImpactCache;
+import game.Game;
+import geometry_primitives.Point;
+import geometry_primitives.SweptCircleTest;
+import geometry_primitives.Velocity;
+import rendering.TiledRasterizer;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Many balls, kept as one sprite: the places, velocities, radii and colors of all the balls are stored in
+ * primitive arrays (one entry per ball) instead of a Ball object with its own Point and Velocity per ball.
+ * A step moves all the balls with continuous collision, the way {@link Ball} does, without allocating anything
+ * for a ball that doesn't hit something:
+ * <ul>
+ * <li>every ball remembers how many more steps it can take before it may touch the static world, like
+ * {@link ImpactCache} does for a Ball;</li>
+ * <li>the balls that may touch something are moved with a swept query and bounce, one after another;</li>
+ * <li>all the other balls are then moved at once by a {@link BallIntegrator}, with SIMD when it can.</li>
+ * </ul>
+ * A collidable that is hit, and its hit listeners, see the ball through a Ball "handle" that reads and writes
+ * the arrays, so removing the ball or changing its color from a listener works as it does for a Ball.
+ */
+public class BallSystem implements Sprite {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int UNKNOWN = -1; // the free steps of a ball that must be looked up again
+    private double[] x;
+    private double[] y;
+    private double[] previousX; // the centers before the last step, to draw the balls between the two
+    private double[] previousY;
+    private double[] dx;
+    private double[] dy;
+    private double[] radius;
+    private int[] color; // an index into the palette
+    private int[] freeSteps; // the steps left before the ball may touch a static collidable, or UNKNOWN
+    private double[] advance; // the step time, in frames, for a ball that takes a free step in it, 0 for the others
+    private boolean[] removed;
+    private int count;
+    private int removedCount;
+    private boolean stepping;
+    private final ArrayList<Color> palette = new ArrayList<>();
+    private GameEnvironment gameEnvironment;
+    private long staticVersion;
+    private double dt = 1; // the time of the step, in frames of 1/60 second
+    private final SweptCircleTest sweep = new SweptCircleTest(); // reused by the look ups of the free steps
+    private final CollisionQuery query = new CollisionQuery(); // reused by every bounce
+    private final Velocity velocity = new Velocity(0, 0); // the velocity given to a collidable that is hit
+    private final Handle handle = new Handle();
+    private BallIntegrator integrator = BallIntegrators.best();
+    private final double[] box = new double[4]; // the walls given to the integrator
+    private TiledRasterizer rasterizer; // draws very many balls, made the first time there are
+
+    /**
+     * Constructs an empty system.
+     */
+    public BallSystem() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty system with room for the given number of balls.
+     *
+     * @param capacity the number of balls to make room for
+     */
+    public BallSystem(int capacity) {
+        int c = Math.max(1, capacity);
+        x = new double[c];
+        y = new double[c];
+        previousX = new double[c];
+        previousY = new double[c];
+        dx = new double[c];
+        dy = new double[c];
+        radius = new double[c];
+        color = new int[c];
+        freeSteps = new int[c];
+        advance = new double[c];
+        removed = new boolean[c];
+    }
+
+    /**
+     * Adds a ball to the system.
+     *
+     * @param centerX the x value of the center
+     * @param centerY the y value of the center
+     * @param r       the radius
+     * @param c       the color
+     * @param vx      the change in x per step
+     * @param vy      the change in y per step
+     * @return the index of the new ball
+     */
+    public int add(double centerX, double centerY, double r, Color c, double vx, double vy) {
+        if (count == x.length) {
+            grow(count * 2);
+        }
+        int i = count++;
+        x[i] = centerX;
+        y[i] = centerY;
+        previousX[i] = centerX;
+        previousY[i] = centerY;
+        radius[i] = r;
+        color[i] = colorIndex(c);
+        dx[i] = vx;
+        dy[i] = vy;
+        freeSteps[i] = UNKNOWN;
+        removed[i] = false;
+        return i;
+    }
+
+    /**
+     * Adds a copy of a ball to the system - its center, radius, color and velocity.
+     *
+     * @param ball the ball to copy
+     * @return the index of the new ball
+     */
+    public int add(Ball ball) {
+        Velocity v = ball.getVelocity();
+        return add(ball.getX(), ball.getY(), ball.getSize(), ball.getColor(), v.getDx(), v.getDy());
+    }
+
+    /**
+     * Removes a ball. The balls after it move one index back (during a step, only when the step ends).
+     *
+     * @param i the index of the ball
+     */
+    public void remove(int i) {
+        if (removed[i]) {
+            return;
+        }
+        removed[i] = true;
+        removedCount++;
+        if (!stepping) {
+            compact();
+        }
+    }
+
+    /**
+     * Returns the number of balls.
+     *
+     * @return the number of balls
+     */
+    public int size() {
+        return count - removedCount;
+    }
+
+    /**
+     * Returns the x value of the center of a ball.
+     *
+     * @param i the index of the ball
+     * @return the x value of the center
+     */
+    public double getX(int i) {
+        return x[i];
+    }
+
+    /**
+     * Returns the y value of the center of a ball.
+     *
+     * @param i the index of the ball
+     * @return the y value of the center
+     */
+    public double getY(int i) {
+        return y[i];
+    }
+
+    /**
+     * Returns the x value of the center of a ball before the last step.
+     *
+     * @param i the index of the ball
+     * @return the x value of the center
+     */
+    public double getPreviousX(int i) {
+        return previousX[i];
+    }
+
+    /**
+     * Returns the y value of the center of a ball before the last step.
+     *
+     * @param i the index of the ball
+     * @return the y value of the center
+     */
+    public double getPreviousY(int i) {
+        return previousY[i];
+    }
+
+    /**
+     * Returns the change in x per step of a ball.
+     *
+     * @param i the index of the ball
+     * @return the change in x
+     */
+    public double getDx(int i) {
+        return dx[i];
+    }
+
+    /**
+     * Returns the change in y per step of a ball.
+     *
+     * @param i the index of the ball
+     * @return the change in y
+     */
+    public double getDy(int i) {
+        return dy[i];
+    }
+
+    /**
+     * Returns the radius of a ball.
+     *
+     * @param i the index of the ball
+     * @return the radius
+     */
+    public double getRadius(int i) {
+        return radius[i];
+    }
+
+    /**
+     * Returns the color of a ball.
+     *
+     * @param i the index of the ball
+     * @return the color
+     */
+    public Color getColor(int i) {
+        return palette.get(color[i]);
+    }
+
+    /**
+     * Sets the color of a ball.
+     *
+     * @param i the index of the ball
+     * @param c the color
+     */
+    public void setColor(int i, Color c) {
+        color[i] = colorIndex(c);
+    }
+
+    /**
+     * Sets the velocity of a ball.
+     *
+     * @param i  the index of the ball
+     * @param vx the change in x per step
+     * @param vy the change in y per step
+     */
+    public void setVelocity(int i, double vx, double vy) {
+        dx[i] = vx;
+        dy[i] = vy;
+        freeSteps[i] = UNKNOWN;
+    }
+
+    /**
+     * Moves a ball to a new center.
+     *
+     * @param i       the index of the ball
+     * @param centerX the x value of the new center
+     * @param centerY the y value of the new center
+     */
+    public void setCenter(int i, double centerX, double centerY) {
+        x[i] = centerX;
+        y[i] = centerY;
+        previousX[i] = centerX; // a jump, not a motion to interpolate
+        previousY[i] = centerY;
+        freeSteps[i] = UNKNOWN;
+    }
+
+    /**
+     * method setGameEnvironment sets the environment the balls move in.
+     *
+     * @param ge the environment
+     */
+    public void setGameEnvironment(GameEnvironment ge) {
+        //setting a reference
+        this.gameEnvironment = ge;
+        Arrays.fill(freeSteps, 0, count, UNKNOWN);
+    }
+
+    /**
+     * Moves all the balls one step. Without an environment, the balls just move by their velocities.
+     */
+    public void step() {
+        step(1);
+    }
+
+    /**
+     * Moves all the balls by their velocities times the given time, see {@link #step()}.
+     *
+     * @param time the time of the step, in frames of 1/60 second
+     */
+    public void step(double time) {
+        System.arraycopy(x, 0, previousX, 0, count);
+        System.arraycopy(y, 0, previousY, 0, count);
+        if (time != dt) {
+            dt = time;
+            Arrays.fill(freeSteps, 0, count, UNKNOWN); // the free steps were counted in steps of another time
+        }
+        if (gameEnvironment == null) {
+            Arrays.fill(advance, 0, count, dt);
+        } else {
+            stepping = true;
+            for (int i = 0; i < count; i++) {
+                if (gameEnvironment.staticVersion() != staticVersion) {
+                    // a static collidable was added or started moving, every free step must be looked up again
+                    staticVersion = gameEnvironment.staticVersion();
+                    Arrays.fill(freeSteps, 0, count, UNKNOWN);
+                }
+                if (removed[i]) {
+                    advance[i] = 0;
+                    continue;
+                }
+                if (freeSteps[i] == UNKNOWN) {
+                    lookUpFreeSteps(i);
+                }
+                if (freeSteps[i] > 0 && !isNearDynamic(i)) {
+                    advance[i] = dt;
+                    freeSteps[i]--;
+                } else {
+                    advance[i] = 0;
+                    if (resolve(i) || freeSteps[i] == 0) {
+                        freeSteps[i] = UNKNOWN; // the ball bounced, or the static hit is close
+                    } else {
+                        freeSteps[i]--; // the ball only passed near a dynamic collidable
+                    }
+                }
+            }
+            stepping = false;
+        }
+        integrator.advance(x, y, dx, dy, advance, count); // the free steps, all at once
+        if (removedCount > 0) {
+            compact();
+        }
+    }
+
+    /**
+     * Moves all the balls one step inside a box, bouncing off its walls, without a game environment - the
+     * bouncing balls animations. All the balls must be inside the box.
+     *
+     * @param minX the left wall
+     * @param minY the top wall
+     * @param maxX the right wall
+     * @param maxY the bottom wall
+     */
+    public void stepInBox(double minX, double minY, double maxX, double maxY) {
+        box[0] = minX;
+        box[1] = minY;
+        box[2] = maxX;
+        box[3] = maxY;
+        System.arraycopy(x, 0, previousX, 0, count);
+        System.arraycopy(y, 0, previousY, 0, count);
+        integrator.stepInBox(x, y, dx, dy, radius, count, box);
+        Arrays.fill(freeSteps, 0, count, UNKNOWN);
+    }
+
+    /**
+     * Sets the integrator that moves the balls, instead of {@link BallIntegrators#best()}.
+     *
+     * @param i the integrator
+     */
+    public void setIntegrator(BallIntegrator i) {
+        this.integrator = i;
+    }
+
+    /**
+     * Draws all the balls on the given DrawSurface, the way a Ball is drawn.
+     *
+     * @param surface is the surface to draw on
+     */
+    @Override
+    public void drawOn(DrawSurface surface) {
+        drawOn(surface, 1);
+    }
+
+    /**
+     * Draws all the balls part of the way between their centers before the last step and their centers now.
+     *
+     * @param surface is the surface to draw on
+     * @param alpha   the part of the way, from 0 (before the last step) to 1 (now)
+     */
+    @Override
+    public void drawOn(DrawSurface surface, double alpha) {
+        if (count >= TiledRasterizer.THRESHOLD) {
+            drawRasterized(surface, alpha);
+            return;
+        }
+        int current = -1;
+        for (int i = 0; i < count; i++) {
+            if (color[i] != current) { // the color is set only when it changes
+                current = color[i];
+                surface.setColor(palette.get(current));
+            }
+            surface.fillCircle(drawX(i, alpha), drawY(i, alpha), (int) radius[i]);
+        }
+        surface.setColor(Color.BLACK);
+        for (int i = 0; i < count; i++) {
+            surface.drawCircle(drawX(i, alpha), drawY(i, alpha), (int) radius[i]);
+        }
+    }
+
+    /**
+     * Notifies the system that time has passed, so all the balls move one step.
+     */
+    @Override
+    public void timePassed() {
+        step();
+    }
+
+    /**
+     * Notifies the system that the given time has passed, so all the balls move by it.
+     *
+     * @param time the time that has passed, in frames of 1/60 second
+     */
+    @Override
+    public void timePassed(double time) {
+        step(time);
+    }
+
+    /**
+     * Adds the system to the specified game, as one sprite.
+     *
+     * @param g the game to add the system to
+     */
+    @Override
+    public void addToGame(Game g) {
+        g.addSprite(this);
+    }
+
+    /**
+     * Removes the system from the specified game.
+     *
+     * @param g the game to remove the system from
+     */
+    public void removeFromGame(Game g) {
+        g.removeSprite(this);
+    }
+
+    /**
+     * Draws all the balls with a {@link TiledRasterizer}, in parallel, into an image that is drawn on the surface
+     * at once - with two calls a ball, drawing the balls one by one on the surface costs more than the image once
+     * there are thousands of them.
+     *
+     * @param surface is the surface to draw on
+     * @param alpha   the part of the way, from 0 (before the last step) to 1 (now)
+     */
+    private void drawRasterized(DrawSurface surface, double alpha) {
+        if (rasterizer == null || rasterizer.getWidth() != surface.getWidth()
+                || rasterizer.getHeight() != surface.getHeight()) {
+            rasterizer = new TiledRasterizer(surface.getWidth(), surface.getHeight());
+        }
+        int current = -1;
+        int rgb = 0;
+        for (int i = 0; i < count; i++) {
+            if (color[i] != current) {
+                current = color[i];
+                rgb = palette.get(current).getRGB();
+            }
+            rasterizer.addCircle(drawX(i, alpha), drawY(i, alpha), (int) radius[i], rgb);
+        }
+        surface.drawImage(0, 0, rasterizer.render());
+    }
+
+    /**
+     * Returns the x value to draw a ball at.
+     *
+     * @param i     the index of the ball
+     * @param alpha the part of the way from the center before the last step to the center now
+     * @return the x value, in pixels
+     */
+    private int drawX(int i, double alpha) {
+        if (alpha == 1) {
+            return (int) x[i];
+        }
+        return (int) (previousX[i] + (x[i] - previousX[i]) * alpha);
+    }
+
+    /**
+     * Returns the y value to draw a ball at.
+     *
+     * @param i     the index of the ball
+     * @param alpha the part of the way from the center before the last step to the center now
+     * @return the y value, in pixels
+     */
+    private int drawY(int i, double alpha) {
+        if (alpha == 1) {
+            return (int) y[i];
+        }
+        return (int) (previousY[i] + (y[i] - previousY[i]) * alpha);
+    }
+
+    /**
+     * Looks up how many steps a ball can take, in a straight line, before it may touch a static collidable -
+     * one long static query, like {@link ImpactCache} makes for a Ball.
+     *
+     * @param i the index of the ball
+     */
+    private void lookUpFreeSteps(int i) {
+        double horizonX = dx[i] * dt * ImpactCache.HORIZON;
+        double horizonY = dy[i] * dt * ImpactCache.HORIZON;
+        Collidable target = gameEnvironment.getClosestStaticCollidable(x[i], y[i], horizonX, horizonY,
+                radius[i] + ImpactCache.MARGIN, sweep);
+        if (target == null) {
+            freeSteps[i] = ImpactCache.HORIZON;
+        } else {
+            freeSteps[i] = (int) Math.floor(sweep.toi() * ImpactCache.HORIZON);
+        }
+    }
+
+    /**
+     * Checks whether the next step of a ball passes near a dynamic collidable (the paddle).
+     *
+     * @param i the index of the ball
+     * @return true if the swept box of the step overlaps a dynamic collidable
+     */
+    private boolean isNearDynamic(int i) {
+        double r = radius[i] + ImpactCache.MARGIN;
+        double endX = x[i] + dx[i] * dt;
+        double endY = y[i] + dy[i] * dt;
+        return gameEnvironment.isNearDynamic(Math.min(x[i], endX) - r, Math.min(y[i], endY) - r,
+                Math.max(x[i], endX) + r, Math.max(y[i], endY) + r);
+    }
+
+    /**
+     * Moves a ball one step, sweeping its circle through the environment and bouncing off what it touches,
+     * as Ball does with continuous collision.
+     *
+     * @param i the index of the ball
+     * @return true if the ball touched something
+     */
+    private boolean resolve(int i) {
+        double remaining = dt; // the part of the step that is left, in frames
+        for (int bounce = 0; bounce < Ball.MAX_BOUNCES && remaining > 0 && !removed[i]; bounce++) {
+            double stepX = dx[i] * remaining;
+            double stepY = dy[i] * remaining;
+            query.set(x[i], y[i], stepX, stepY, radius[i]);
+            Collidable target = gameEnvironment.query(query);
+            if (target == null) {
+                x[i] += stepX;
+                y[i] += stepY;
+                return bounce > 0;
+            }
+            CollisionInfo collision = query.info();
+            double toi = collision.toi();
+            double part = Math.max(0, toi - Ball.SKIN / Math.sqrt(stepX * stepX + stepY * stepY));
+            x[i] += stepX * part;
+            y[i] += stepY * part;
+            velocity.setDx(dx[i]);
+            velocity.setDy(dy[i]);
+            handle.index = i;
+            Velocity v = target.hit(handle, collision, velocity);
+            // the collidable decides how the ball bounces, but it must not send the ball into it
+            if (v.getDx() * collision.normalX() + v.getDy() * collision.normalY() < 0) {
+                v = collision.reflect(v);
+            }
+            dx[i] = v.getDx();
+            dy[i] = v.getDy();
+            remaining *= 1 - part; // as a Ball does, the skin is moved after the bounce
+        }
+        return true;
+    }
+
+    /**
+     * Drops the removed balls from the arrays, keeping the order of the others.
+     */
+    private void compact() {
+        int j = 0;
+        for (int i = 0; i < count; i++) {
+            if (removed[i]) {
+                continue;
+            }
+            x[j] = x[i];
+            y[j] = y[i];
+            previousX[j] = previousX[i];
+            previousY[j] = previousY[i];
+            dx[j] = dx[i];
+            dy[j] = dy[i];
+            radius[j] = radius[i];
+            color[j] = color[i];
+            freeSteps[j] = freeSteps[i];
+            j++;
+        }
+        Arrays.fill(removed, 0, count, false);
+        count = j;
+        removedCount = 0;
+    }
+
+    /**
+     * Makes the arrays bigger.
+     *
+     * @param capacity the new number of balls the arrays can hold
+     */
+    private void grow(int capacity) {
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        previousX = Arrays.copyOf(previousX, capacity);
+        previousY = Arrays.copyOf(previousY, capacity);
+        dx = Arrays.copyOf(dx, capacity);
+        dy = Arrays.copyOf(dy, capacity);
+        radius = Arrays.copyOf(radius, capacity);
+        color = Arrays.copyOf(color, capacity);
+        freeSteps = Arrays.copyOf(freeSteps, capacity);
+        advance = Arrays.copyOf(advance, capacity);
+        removed = Arrays.copyOf(removed, capacity);
+    }
+
+    /**
+     * Returns the index of a color in the palette, adding it if it isn't there yet.
+     * A game uses few colors, so the palette is searched one by one.
+     *
+     * @param c the color
+     * @return the index of the color
+     */
+    private int colorIndex(Color c) {
+        int index = palette.indexOf(c);
+        if (index < 0) {
+            palette.add(c);
+            index = palette.size() - 1;
+        }
+        return index;
+    }
+
+    /**
+     * The ball that a collidable and its hit listeners see when a ball of the system hits it.
+     * It is one object, pointed at the ball that hits before every hit, and it reads and writes the arrays.
+     */
+    private final class Handle extends Ball {
+        private int index;
+
+        /**
+         * Constructs the handle.
+         */
+        Handle() {
+            super(new Point(0, 0), 0, Color.BLACK);
+        }
+
+        @Override
+        public Point getPoint() {
+            return new Point(x[index], y[index]);
+        }
+
+        @Override
+        public double getX() {
+            return x[index];
+        }
+
+        @Override
+        public double getY() {
+            return y[index];
+        }
+
+        @Override
+        public int getSize() {
+            return (int) radius[index];
+        }
+
+        @Override
+        public Color getColor() {
+            return palette.get(color[index]);
+        }
+
+        @Override
+        public void setColor(Color c) {
+            color[index] = colorIndex(c);
+        }
+
+        @Override
+        public Velocity getVelocity() {
+            return new Velocity(dx[index], dy[index]);
+        }
+
+        @Override
+        public void setVelocity(Velocity v) {
+            BallSystem.this.setVelocity(index, v.getDx(), v.getDy());
+        }
+
+        @Override
+        public void setVelocity(double vx, double vy) {
+            BallSystem.this.setVelocity(index, vx, vy);
+        }
+
+        @Override
+        public void addToGame(Game g) {
+            // the ball is already in the game, as a part of the system
+        }
+
+        @Override
+        public void removeFromGame(Game game) {
+            remove(index);
+        }
+    }
+}
@@ -2,16 +2,16 @@
 package sprites;
 
 import listeners.HitListener;
-import geometry_primitives.Point;
-import geometry_primitives.Line;
 import geometry_primitives.Rectangle;
 import geometry_primitives.Velocity;
 import collision_detection.Collidable;
+import collision_detection.CollisionInfo;
 import game.Game;
 import java.util.List;
 import java.util.ArrayList;
 import biuoop.DrawSurface;
 import listeners.HitNotifier;
+import listeners.HitEffects;
 import java.awt.Color;
 
 /**
@@ -20,7 +20,6 @@ import java.awt.Color;
 public class Block implements Collidable, Sprite, HitNotifier {
     private Rectangle rect;
     private List<HitListener> hitListeners = new ArrayList<>();
-    static final double HIT_THRESHOLD = 0.00001; // used to signal the ball is this distance away from hitting
 
     /**
      * Constructs a new Block object with the specified collision rectangle.
@@ -60,41 +59,17 @@ public class Block implements Collidable, Sprite, HitNotifier {
     }
 
     /**
-     * Determines the new velocity of the block after a collision.
+     * Determines the new velocity of the ball after a collision with the block.
+     * The ball is reflected off the surface it hit, by the normal of the collision.
      *
-     * @param collisionPoint  the point at which the collision occurred
+     * @param hitter          is the ball that hits the block
+     * @param collision       the collision, as found by the collision test
      * @param currentVelocity the current velocity of the colliding object
-     * @return the new velocity of the block after the collision
+     * @return the new velocity of the ball after the collision
      */
     @Override
-    public Velocity hit(Ball hitter, Point collisionPoint, Velocity currentVelocity) {
-        Velocity newVelocity = new Velocity(currentVelocity);
-        Point collCopy = currentVelocity.applyToPoint(new Point(collisionPoint));
-        Line[] lines = new Line[4];
-        lines[0] = new Line(rect.getUpperLeft().getX() + rect.getWidth(), rect.getUpperLeft().getY(),
-                rect.getUpperLeft().getX() + rect.getWidth(), rect.getUpperLeft().getY() + rect.getHeight()); // right
-        lines[1] = new Line(rect.getUpperLeft().getX(), rect.getUpperLeft().getY(), rect.getUpperLeft().getX(),
-                rect.getUpperLeft().getY() + rect.getHeight()); // left
-        lines[2] = new Line(rect.getUpperLeft().getX(), rect.getUpperLeft().getY(),
-                rect.getUpperLeft().getX() + rect.getWidth(), rect.getUpperLeft().getY()); // top
-        lines[3] = new Line(rect.getUpperLeft().getX(), rect.getUpperLeft().getY() + rect.getHeight(),
-                rect.getUpperLeft().getX() + rect.getWidth(),
-                rect.getUpperLeft().getY() + rect.getHeight()); // bottom
-        // if smaller than threshold, there's a hit
-        if (Math.abs(collisionPoint.getY() - lines[2].start().getY()) <= HIT_THRESHOLD
-                || Math.abs(collisionPoint.getY() - lines[3].start().getY()) <= HIT_THRESHOLD) {
-            newVelocity.setDy(newVelocity.getDy() * -1);
-            if (!ballColorMatch(hitter)) {
-                this.notifyHit(hitter);
-            }
-            return newVelocity;
-            // if a collision happened on the y coordinates, change only the y -
-            // used to treat edge hits, in which case only the y direction will change
-        }
-        if (Math.abs(collisionPoint.getX() - lines[0].start().getX()) <= HIT_THRESHOLD
-                || Math.abs(collisionPoint.getX() - lines[1].start().getX()) <= HIT_THRESHOLD) {
-            newVelocity.setDx(newVelocity.getDx() * -1);
-        }
+    public Velocity hit(Ball hitter, CollisionInfo collision, Velocity currentVelocity) {
+        Velocity newVelocity = collision.reflect(currentVelocity);
         if (!ballColorMatch(hitter)) {
             this.notifyHit(hitter);
         }
@@ -107,12 +82,25 @@ public class Block implements Collidable, Sprite, HitNotifier {
      * @param surface is the surface to draw on
      */
     public void drawOn(DrawSurface surface) {
-        surface.setColor(this.rect.getColor());
-        surface.fillRectangle((int) this.rect.getUpperLeft().getX(), (int) this.rect.getUpperLeft().getY(),
-                (int) this.rect.getWidth(), (int) this.rect.getHeight());
+        draw(surface, (int) this.rect.getUpperLeft().getX(), (int) this.rect.getUpperLeft().getY(),
+                (int) this.rect.getWidth(), (int) this.rect.getHeight(), this.rect.getColor());
+    }
+
+    /**
+     * Draws a block the way a Block draws itself - filled with its color, with a black outline.
+     *
+     * @param surface is the surface to draw on
+     * @param x       the x value of the left side
+     * @param y       the y value of the top
+     * @param width   the width
+     * @param height  the height
+     * @param color   the color
+     */
+    public static void draw(DrawSurface surface, int x, int y, int width, int height, Color color) {
+        surface.setColor(color);
+        surface.fillRectangle(x, y, width, height);
         surface.setColor(Color.BLACK);
-        surface.drawRectangle((int) this.rect.getUpperLeft().getX(), (int) this.rect.getUpperLeft().getY(),
-                (int) this.rect.getWidth(), (int) this.rect.getHeight());
+        surface.drawRectangle(x, y, width, height);
     }
 
     /**
@@ -140,7 +128,29 @@ public class Block implements Collidable, Sprite, HitNotifier {
      * @return true if the color of the Ball matches the color of the rectangle, false otherwise
      */
     public boolean ballColorMatch(Ball ball) {
-        return (ball.getColor()).equals(rect.getColor());
+        return colorMatch(ball.getColor().getRGB());
+    }
+
+    /**
+     * Checks if a color matches the color of this object's rectangle - a ball of that color doesn't notify the
+     * hit listeners when it hits the block.
+     *
+     * @param rgb the color, as an RGB value with alpha
+     * @return true if the color matches the color of the rectangle, false otherwise
+     */
+    public boolean colorMatch(int rgb) {
+        return rect.getColor().getRGB() == rgb;
+    }
+
+    /**
+     * Adds what the hit listeners of the block do, when a ball of another color hits it, to the given effects.
+     *
+     * @param effects the effects
+     */
+    public void describeHit(HitEffects effects) {
+        for (HitListener hl : hitListeners) {
+            hl.describe(effects);
+        }
     }
 
     /**
@@ -1,9 +1,12 @@
 // Tamar Rosenzweig
 package sprites;
+import geometry_primitives.Face;
 import geometry_primitives.Point;
 import geometry_primitives.Rectangle;
 import geometry_primitives.Velocity;
 import collision_detection.Collidable;
+import collision_detection.CollisionInfo;
+import collision_detection.GameEnvironment;
 import game.Game;
 import biuoop.DrawSurface;
 import biuoop.KeyboardSensor;
@@ -16,8 +19,12 @@ import java.awt.Color;
 public class Paddle implements Sprite, Collidable {
     private biuoop.KeyboardSensor keyboard;
     private Block paddle;
-    static final double HIT_RIGHT_WALL = 780;
-    static final double HIT_LEFT_WALL = 20;
+    private GameEnvironment gameEnvironment;
+    public static final double HIT_RIGHT_WALL = 780;
+    public static final double HIT_LEFT_WALL = 20;
+    public static final double SPEED = 5; // the units the paddle moves in a frame of 1/60 second
+    private static final Color COLOR = new Color(222, 49, 99);
+    private double previousX = Double.NaN; // the x value before the last tick, NaN if it can't be interpolated
 
     /**
      * Constructs a Paddle object with the specified keyboard sensor.
@@ -47,29 +54,81 @@ public class Paddle implements Sprite, Collidable {
      * Moves the paddle to the left.
      */
     public void moveLeft() {
+        moveLeft(1);
+    }
+
+    /**
+     * Moves the paddle to the left, as far as it moves in the given time.
+     *
+     * @param dt the time, in frames of 1/60 second
+     */
+    public void moveLeft(double dt) {
         if (this.paddle.getRect().getUpperLeft().getX() <= HIT_LEFT_WALL) {
             this.paddle.setRect(new Rectangle(new Point(HIT_RIGHT_WALL - this.paddle.getRect().getWidth(),
                     this.paddle.getRect().getUpperLeft().getY()), this.paddle.getRect().getWidth(),
                     this.paddle.getRect().getHeight()));
+            this.previousX = Double.NaN; // a jump to the other side, not a motion to interpolate
         }
-        Point newUpperLeft = new Point(this.paddle.getRect().getUpperLeft().getX() - 5,
+        Point newUpperLeft = new Point(this.paddle.getRect().getUpperLeft().getX() - SPEED * dt,
                 this.paddle.getRect().getUpperLeft().getY());
-        // moves the x coordinate 5 units to the left
+        // moves the x coordinate SPEED units per frame to the left
         this.paddle.getRect().setUpperLeft(newUpperLeft);
+        moved();
     }
 
     /**
      * Moves the paddle to the right.
      */
     public void moveRight() {
+        moveRight(1);
+    }
+
+    /**
+     * Moves the paddle to the right, as far as it moves in the given time.
+     *
+     * @param dt the time, in frames of 1/60 second
+     */
+    public void moveRight(double dt) {
         if (this.paddle.getRect().getUpperLeft().getX() + this.paddle.getRect().getWidth() >= HIT_RIGHT_WALL) {
             this.paddle.setRect(new Rectangle(new Point(HIT_LEFT_WALL, this.paddle.getRect().getUpperLeft().getY()),
                     this.paddle.getRect().getWidth(), this.paddle.getRect().getHeight()));
+            this.previousX = Double.NaN; // a jump to the other side, not a motion to interpolate
         }
-        Point newUpperLeft = new Point(this.paddle.getRect().getUpperLeft().getX() + 5,
+        Point newUpperLeft = new Point(this.paddle.getRect().getUpperLeft().getX() + SPEED * dt,
                 this.paddle.getRect().getUpperLeft().getY());
-        // moves the x coordinate 5 units to the right
+        // moves the x coordinate SPEED units per frame to the right
         this.paddle.getRect().setUpperLeft(newUpperLeft);
+        moved();
+    }
+
+    /**
+     * Places the paddle at the given rectangle. This is a jump and not a motion, so it isn't interpolated.
+     *
+     * @param rect the new rectangle of the paddle
+     */
+    public void setRect(Rectangle rect) {
+        this.paddle.setRect(rect);
+        this.previousX = Double.NaN;
+        moved();
+    }
+
+    /**
+     * Sets the game environment the paddle is in, so it can tell the environment when it moves.
+     *
+     * @param ge the game environment
+     */
+    public void setGameEnvironment(GameEnvironment ge) {
+        //setting a reference
+        this.gameEnvironment = ge;
+    }
+
+    /**
+     * Lets the game environment know the collision rectangle of the paddle has changed.
+     */
+    private void moved() {
+        if (this.gameEnvironment != null) {
+            this.gameEnvironment.updateCollidable(this);
+        }
     }
 
     /**
@@ -77,11 +136,22 @@ public class Paddle implements Sprite, Collidable {
      */
     @Override
     public void timePassed() {
+        timePassed(1);
+    }
+
+    /**
+     * Notifies the paddle that the given time has passed, so it moves as far as it moves in that time.
+     *
+     * @param dt the time that has passed, in frames of 1/60 second
+     */
+    @Override
+    public void timePassed(double dt) {
+        this.previousX = this.paddle.getRect().getUpperLeft().getX();
         if (keyboard.isPressed(KeyboardSensor.LEFT_KEY)) {
-            moveLeft();
+            moveLeft(dt);
         }
         if (keyboard.isPressed(KeyboardSensor.RIGHT_KEY)) {
-            moveRight();
+            moveRight(dt);
         }
     }
 
@@ -92,14 +162,58 @@ public class Paddle implements Sprite, Collidable {
      */
     @Override
     public void drawOn(DrawSurface d) {
-        d.setColor(new Color(222, 49, 99));
-        d.fillRectangle((int) this.paddle.getRect().getUpperLeft().getX(),
-                (int) this.paddle.getRect().getUpperLeft().getY(), (int) this.paddle.getRect().getWidth(),
+        drawAt(d, this.paddle.getRect().getUpperLeft().getX());
+    }
+
+    /**
+     * Draws the paddle part of the way between its place before the last tick and its place now.
+     *
+     * @param d     the drawing surface on which to draw the paddle
+     * @param alpha the part of the way, from 0 (before the last tick) to 1 (now)
+     */
+    @Override
+    public void drawOn(DrawSurface d, double alpha) {
+        double x = this.paddle.getRect().getUpperLeft().getX();
+        if (!Double.isNaN(this.previousX)) {
+            x = this.previousX + (x - this.previousX) * alpha;
+        }
+        drawAt(d, x);
+    }
+
+    /**
+     * Draws the paddle with its left side at the given x value.
+     *
+     * @param d the drawing surface on which to draw the paddle
+     * @param x the x value of the left side
+     */
+    private void drawAt(DrawSurface d, double x) {
+        draw(d, (int) x, (int) this.paddle.getRect().getUpperLeft().getY(), (int) this.paddle.getRect().getWidth(),
                 (int) this.paddle.getRect().getHeight());
+    }
+
+    /**
+     * Draws a paddle the way a Paddle draws itself.
+     *
+     * @param d      the drawing surface on which to draw the paddle
+     * @param x      the x value of the left side
+     * @param y      the y value of the top
+     * @param width  the width
+     * @param height the height
+     */
+    public static void draw(DrawSurface d, int x, int y, int width, int height) {
+        d.setColor(COLOR);
+        d.fillRectangle(x, y, width, height);
         d.setColor(Color.BLACK);
-        d.drawRectangle((int) this.paddle.getRect().getUpperLeft().getX(),
-                (int) this.paddle.getRect().getUpperLeft().getY(), (int) this.paddle.getRect().getWidth(),
-                (int) this.paddle.getRect().getHeight());
+        d.drawRectangle(x, y, width, height);
+    }
+
+    /**
+     * Returns the x value of the left side of the paddle before the last tick.
+     *
+     * @return the x value, NaN if the paddle jumped since and isn't drawn between the two
+     */
+    public double getPreviousX() {
+        return this.previousX;
     }
 
     /**
@@ -114,17 +228,23 @@ public class Paddle implements Sprite, Collidable {
 
     /**
      * Notifies the paddle of a collision and calculates the new velocity after the hit.
+     * A hit on the top of the paddle sends the ball up at an angle that depends on the region that was hit,
+     * a hit on its sides or bottom reflects the ball by the normal of the collision.
      *
-     * @param collisionPoint  the point at which the collision occurred
+     * @param hitter          is the ball that hits the paddle
+     * @param collision       the collision, as found by the collision test
      * @param currentVelocity the current velocity before the hit
      * @return the new velocity after the hit
      */
     @Override
-    public Velocity hit(Ball hitter, Point collisionPoint, Velocity currentVelocity) {
+    public Velocity hit(Ball hitter, CollisionInfo collision, Velocity currentVelocity) {
+        if (collision.face() != Face.TOP) {
+            return collision.reflect(currentVelocity);
+        }
         // different reaction to hitting, based on region of hitting
         Velocity vel; // default value
         double regionLength = paddle.getRect().getWidth() / 5;
-        int xVal = (int) (collisionPoint.getX() - paddle.getRect().getUpperLeft().getX());
+        int xVal = (int) (collision.pointX() - paddle.getRect().getUpperLeft().getX());
         double speed = Math.sqrt(Math.pow(currentVelocity.getDx(), 2) + Math.pow(currentVelocity.getDy(), 2));
         // if the speed direction is negative. This measurement is lost when using the math.pow. ->
         if ((currentVelocity.getDx() < 0 && currentVelocity.getDy() > 0) || currentVelocity.getDx() > 0
@@ -143,8 +263,7 @@ public class Paddle implements Sprite, Collidable {
             return vel;
         }
         if (xVal >= regionLength * 2 && xVal <= regionLength * 3) { // region 3, middle section
-            vel = new Velocity(currentVelocity.getDx(), currentVelocity.getDy() * -1);
-            return vel;
+            return collision.reflect(currentVelocity);
         }
         if (xVal >= regionLength * 3 && xVal <= regionLength * 4) { // region 4
             vel = Velocity.fromAngleAndSpeed(30, speed);
@@ -156,8 +275,7 @@ public class Paddle implements Sprite, Collidable {
             vel.setDy(-1 * Math.abs(vel.getDy()));
             return vel;
         }
-        vel = new Velocity(currentVelocity.getDx(), currentVelocity.getDy() * -1);
-        return vel;
+        return collision.reflect(currentVelocity);
     }
 
     /**
@@ -167,6 +285,6 @@ public class Paddle implements Sprite, Collidable {
      */
     public void addToGame(Game g) {
         g.addSprite(this);
-        g.addCollidable(this);
+        g.addDynamicCollidable(this);
     }
 }
\ No newline at end of file
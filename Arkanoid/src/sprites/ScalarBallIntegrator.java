@@ -0,0 +1,51 @@
+// Tamar Rosenzweig
+package sprites;
+
+/**
+ * A {@link BallIntegrator} that moves the balls one by one, in plain Java - it runs on any JVM.
+ */
+public class ScalarBallIntegrator implements BallIntegrator {
+
+    @Override
+    public void advance(double[] x, double[] y, double[] dx, double[] dy, double[] scale, int count) {
+        for (int i = 0; i < count; i++) {
+            x[i] += dx[i] * scale[i];
+            y[i] += dy[i] * scale[i];
+        }
+    }
+
+    @Override
+    public void stepInBox(double[] x, double[] y, double[] dx, double[] dy, double[] radius, int count,
+                          double[] box) {
+        for (int i = 0; i < count; i++) {
+            stepOneInBox(x, y, dx, dy, radius, i, box);
+        }
+    }
+
+    /**
+     * Moves one ball one step inside a box, see {@link #stepInBox(double[], double[], double[], double[],
+     * double[], int, double[])}. Also used for the last balls of the Vector API integrator, that don't fill
+     * a whole vector.
+     *
+     * @param x      the x values of the centers
+     * @param y      the y values of the centers
+     * @param dx     the changes in x per step
+     * @param dy     the changes in y per step
+     * @param radius the radii
+     * @param i      the index of the ball
+     * @param box    the walls, as {minX, minY, maxX, maxY}
+     */
+    static void stepOneInBox(double[] x, double[] y, double[] dx, double[] dy, double[] radius, int i,
+                             double[] box) {
+        double nextX = x[i] + dx[i];
+        double nextY = y[i] + dy[i];
+        if ((dx[i] > 0 && nextX + radius[i] > box[2]) || (dx[i] < 0 && nextX - radius[i] < box[0])) {
+            dx[i] = -dx[i];
+        }
+        if ((dy[i] > 0 && nextY + radius[i] > box[3]) || (dy[i] < 0 && nextY - radius[i] < box[1])) {
+            dy[i] = -dy[i];
+        }
+        x[i] += dx[i];
+        y[i] += dy[i];
+    }
+}
@@ -31,9 +31,19 @@ public class ScoreIndicator implements Sprite {
     @Override
     public void drawOn(DrawSurface d) {
         //white.addToGame(this);
+        draw(d, this.currentScore.getValue());
+    }
+
+    /**
+     * Draws a score the way a ScoreIndicator draws it.
+     *
+     * @param d     the DrawSurface on which the score will be drawn
+     * @param score the score
+     */
+    public static void draw(DrawSurface d, int score) {
         d.setColor(Color.WHITE);
         d.fillRectangle(0, 0, 800, 30);
-        String curScore = "Score: " + this.currentScore.getValue();
+        String curScore = "Score: " + score;
         d.setColor(Color.BLACK);
         d.drawText(350, 22, curScore, 20);
     }
@@ -19,6 +19,29 @@ public interface Sprite {
      */
     void timePassed();
 
+    /**
+     * Notifies the sprite that the given time has passed. Speeds in the game are given per frame of 1/60 second,
+     * so dt is in those frames: 1 is a frame at 60 ticks per second, 0.5 a tick at 120 ticks per second.
+     * A sprite that doesn't move can keep this default, which calls {@link #timePassed()}.
+     *
+     * @param dt the time that has passed, in frames of 1/60 second
+     */
+    default void timePassed(double dt) {
+        timePassed();
+    }
+
+    /**
+     * Draws the sprite as it was part of the way between the last two ticks, so the motion looks smooth when
+     * the frames are drawn at a different rate than the ticks.
+     * A sprite that doesn't move can keep this default, which calls {@link #drawOn(DrawSurface)}.
+     *
+     * @param d     the DrawSurface on which to draw the sprite
+     * @param alpha the part of the way from the place before the last tick (0) to the place after it (1)
+     */
+    default void drawOn(DrawSurface d, double alpha) {
+        drawOn(d);
+    }
+
     /**
      * Adds this sprite object to the specified game.
      *
@@ -9,6 +9,7 @@ import java.util.ArrayList;
  */
 public class SpriteCollection {
     private ArrayList<Sprite> spCollection = new ArrayList<>();
+    private Sprite[] notified = new Sprite[0]; // reused by every notifyAllTimePassed(dt)
     /**
      * Constructs an empty SpriteCollection.
      */
@@ -49,6 +50,22 @@ public class SpriteCollection {
         }
     }
 
+    /**
+     * Calls timePassed(dt) on all sprites in the collection. Like notifyAllTimePassed(), it goes over a copy of
+     * the collection, so sprites can be added and removed meanwhile - but the copy is made into the same array
+     * every time, since this is called every tick.
+     *
+     * @param dt the time that has passed, in frames of 1/60 second
+     */
+    public void notifyAllTimePassed(double dt) {
+        int count = spCollection.size();
+        Sprite[] copy = spCollection.toArray(notified);
+        notified = copy;
+        for (int i = 0; i < count; i++) {
+            copy[i].timePassed(dt);
+        }
+    }
+
     /**
      * Calls drawOn(DrawSurface d) on all sprites in the collection.
      *
@@ -60,6 +77,18 @@ public class SpriteCollection {
         }
     }
 
+    /**
+     * Calls drawOn(DrawSurface d, double alpha) on all sprites in the collection.
+     *
+     * @param d     the DrawSurface on which to draw all sprites
+     * @param alpha the part of the way between the last two ticks to draw the sprites at
+     */
+    public void drawAllOn(DrawSurface d, double alpha) {
+        for (Sprite s : spCollection) {
+            s.drawOn(d, alpha);
+        }
+    }
+
     /**
      * Removes the specified Sprite object from the collection of sprites.
      *